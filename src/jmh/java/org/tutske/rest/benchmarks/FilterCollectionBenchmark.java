@@ -0,0 +1,69 @@
+package org.tutske.rest.benchmarks;
+
+import static org.tutske.rest.HttpRequest.Method;
+
+import org.openjdk.jmh.annotations.*;
+import org.tutske.rest.Filter;
+import org.tutske.rest.RequestPath;
+import org.tutske.rest.UrlRoute;
+import org.tutske.rest.UrlRoute.SimpleRoute;
+import org.tutske.rest.UrlRouter;
+import org.tutske.rest.internals.Chain;
+import org.tutske.rest.internals.FilterCollection;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Filters on one in ten of the route prefixes, a filter on everything below `/api` and
+ * one filter on all urls. The size is the number of routes, so the number of filters
+ * grows along with it.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class FilterCollectionBenchmark {
+
+	@Param ({ "10", "100", "1000", "10000" })
+	public int size;
+
+	private FilterCollection<String, String> filters;
+	private RequestPath [] paths;
+	private UrlRoute<String> [] routes;
+
+	@Setup
+	public void setup () {
+		Filter<String, String> filter = (request, chain) -> chain.call (request);
+
+		filters = new FilterCollection<> ();
+		filters.add (new SimpleRoute<> ("all", "/::rest", filter));
+		filters.add (new SimpleRoute<> ("api", "/api/::rest", filter));
+		for ( int i = 0; i < size; i += 10 ) {
+			filters.add (new SimpleRoute<> ("filter " + i, "/api/r" + i + "/::rest", filter));
+		}
+
+		List<UrlRoute<String>> created = Routes.create (size);
+		UrlRouter<String> router = new UrlRouter<String> ().add (created.toArray (new UrlRoute [created.size ()]));
+		paths = Routes.paths (size);
+		routes = new UrlRoute [paths.length];
+		for ( int i = 0; i < paths.length; i++ ) {
+			routes[i] = router.route (Method.GET, paths[i]);
+		}
+	}
+
+	@Benchmark
+	public Chain<String, String> createChainForUrl (UrlRouterBenchmark.Cursor cursor) {
+		return filters.createChain (paths[cursor.next ()], (request) -> request);
+	}
+
+	@Benchmark
+	public Chain<String, String> createChainForRoute (UrlRouterBenchmark.Cursor cursor) {
+		int next = cursor.next ();
+		return filters.createChain (Method.GET, routes[next], paths[next], (request) -> request);
+	}
+
+}
@@ -0,0 +1,46 @@
+package org.tutske.rest.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.tutske.rest.UrlRoute;
+import org.tutske.rest.UrlRoute.SimpleRoute;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+@State (Scope.Thread)
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class LinkToBenchmark {
+
+	private final UrlRoute<String> route = new SimpleRoute<> ("item", "/api/users/:id/items/:item", null);
+	private final Map<String, String> params = new HashMap<> ();
+	private final StringBuilder builder = new StringBuilder ();
+
+	@Setup
+	public void setup () {
+		params.put ("id", "12345");
+		params.put ("item", "name with spaces");
+	}
+
+	@Benchmark
+	public String linkWithMap () {
+		return route.linkTo (params);
+	}
+
+	@Benchmark
+	public String linkWithValues () {
+		return route.linkTo ("12345", "name with spaces");
+	}
+
+	@Benchmark
+	public StringBuilder linkIntoBuilder () {
+		builder.setLength (0);
+		return route.linkTo (builder, "12345", "name with spaces");
+	}
+
+}
@@ -0,0 +1,68 @@
+package org.tutske.rest.benchmarks;
+
+import static org.tutske.rest.HttpRequest.Method;
+
+import org.tutske.rest.RequestPath;
+import org.tutske.rest.UrlRoute;
+import org.tutske.rest.UrlRoute.SimpleRoute;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Route tables for the benchmarks. The routes cycle through a static listing, a route
+ * with one parameter, a nested route with two parameters, a route that only accepts
+ * posts and a route with a tail, which is roughly the mix of a rest api that also
+ * serves some files.
+ */
+public class Routes {
+
+	public static final int URLS = 1024;
+
+	public static List<UrlRoute<String>> create (int size) {
+		List<UrlRoute<String>> routes = new ArrayList<> (size);
+		for ( int i = 0; i < size; i++ ) {
+			routes.add (route (i));
+		}
+		return routes;
+	}
+
+	private static UrlRoute<String> route (int i) {
+		String name = "route " + i;
+		switch ( i % 5 ) {
+			case 0: return new SimpleRoute<> (name, "/api/r" + i, name);
+			case 1: return new SimpleRoute<> (name, "/api/r" + i + "/:id", name);
+			case 2: return new SimpleRoute<> (name, "/api/r" + i + "/:id/items/:item", name);
+			case 3: return new SimpleRoute<> (name, "/api/r" + i + "/:id", EnumSet.of (Method.POST), name);
+			default: return new SimpleRoute<> (name, "/static/r" + i + "/::path", name);
+		}
+	}
+
+	/**
+	 * Concrete urls for randomly picked routes of a table of the given size, every url
+	 * is routed to the route it was made for.
+	 */
+	public static RequestPath [] paths (int size) {
+		Random random = new Random (size);
+		RequestPath [] paths = new RequestPath [URLS];
+		for ( int n = 0; n < URLS; n++ ) {
+			int i = random.nextInt (size);
+			if ( i % 5 == 3 ) { i -= 2; }
+			paths[n] = new RequestPath (url (i, random));
+		}
+		return paths;
+	}
+
+	private static String url (int i, Random random) {
+		switch ( i % 5 ) {
+			case 0: return "/api/r" + i;
+			case 1: return "/api/r" + i + "/" + random.nextInt (100000);
+			case 2: return "/api/r" + i + "/" + random.nextInt (100000) + "/items/" + random.nextInt (100);
+			default: return "/static/r" + i + "/css/site-" + random.nextInt (10) + ".css";
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package org.tutske.rest.benchmarks;
+
+import static org.tutske.rest.HttpRequest.Method;
+
+import org.openjdk.jmh.annotations.*;
+import org.tutske.rest.ParameterBag;
+import org.tutske.rest.RequestPath;
+import org.tutske.rest.UrlRoute;
+import org.tutske.rest.UrlRouter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class UrlRouterBenchmark {
+
+	@State (Scope.Thread)
+	public static class Cursor {
+		private int next = 0;
+
+		public int next () {
+			next = (next + 1) & (Routes.URLS - 1);
+			return next;
+		}
+	}
+
+	@Param ({ "10", "100", "1000", "10000" })
+	public int size;
+
+	private UrlRouter<String> router;
+	private RequestPath [] paths;
+	private String [] urls;
+	private UrlRoute<String> [] routes;
+
+	@Setup
+	public void setup () {
+		List<UrlRoute<String>> created = Routes.create (size);
+		router = new UrlRouter<String> ().add (created.toArray (new UrlRoute [created.size ()]));
+		paths = Routes.paths (size);
+		urls = new String [paths.length];
+		routes = new UrlRoute [paths.length];
+		for ( int i = 0; i < paths.length; i++ ) {
+			urls[i] = paths[i].getPath ();
+			routes[i] = router.route (Method.GET, paths[i]);
+		}
+	}
+
+	@Benchmark
+	public UrlRoute<String> route (Cursor cursor) {
+		return router.route (Method.GET, new RequestPath (urls[cursor.next ()]));
+	}
+
+	@Benchmark
+	public UrlRoute<String> routeTokenized (Cursor cursor) {
+		return router.route (Method.GET, paths[cursor.next ()]);
+	}
+
+	@Benchmark
+	public UrlRouter.Match<String> match (Cursor cursor) {
+		return router.match (Method.GET, new RequestPath (urls[cursor.next ()]));
+	}
+
+	@Benchmark
+	public String extractMatches (Cursor cursor) {
+		int next = cursor.next ();
+		ParameterBag params = routes[next].extractMatches (paths[next]);
+		return (String) params.get ("id");
+	}
+
+}
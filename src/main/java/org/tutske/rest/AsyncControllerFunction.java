@@ -0,0 +1,36 @@
+package org.tutske.rest;
+
+import org.tutske.rest.data.RestObject;
+import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.internals.CompletionStages;
+
+import java.util.concurrent.CompletionStage;
+
+
+/**
+ * Controller that answers with a stage instead of waiting for its result. The rest
+ * handler releases the thread of the request while the stage is not yet complete, and
+ * writes the response when it completes.
+ */
+@FunctionalInterface
+public interface AsyncControllerFunction extends ControllerFunction {
+
+	CompletionStage<RestStructure> applyAsync (HttpRequest request) throws Exception;
+
+	/**
+	 * Waits for the stage, for callers that can only handle synchronous controllers. Those
+	 * callers only take objects, so a stage that completes with anything else fails.
+	 */
+	@Override
+	default RestObject apply (HttpRequest request) throws Exception {
+		RestStructure result = CompletionStages.await (applyAsync (request));
+		if ( result != null && ! (result instanceof RestObject) ) {
+			throw new RuntimeException (
+				"Synchronous callers of an async controller can only handle a RestObject, got " +
+				result.getClass ().getSimpleName ()
+			);
+		}
+		return (RestObject) result;
+	}
+
+}
@@ -0,0 +1,28 @@
+package org.tutske.rest;
+
+import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.internals.Chain;
+import org.tutske.rest.internals.CompletionStages;
+
+import java.util.concurrent.CompletionStage;
+
+
+/**
+ * Filter that can take part in the handling of asynchronous controllers without waiting
+ * for them. When the controller of a route is synchronous the filter is called through
+ * `call`, which hands it a chain that completes right away.
+ */
+public interface AsyncRestFilter extends RestFilter {
+
+	CompletionStage<RestStructure> callAsync (HttpRequest source, Chain<HttpRequest, CompletionStage<RestStructure>> chain)
+	throws Exception;
+
+	@Override
+	default RestStructure call (HttpRequest source, Chain<HttpRequest, RestStructure> chain) throws Exception {
+		Chain<HttpRequest, CompletionStage<RestStructure>> async = new Chain<> (
+			(request) -> CompletionStages.completed (chain.call (request))
+		);
+		return CompletionStages.await (callAsync (source, async));
+	}
+
+}
@@ -0,0 +1,48 @@
+package org.tutske.rest;
+
+import org.tutske.rest.exceptions.GatewayTimeoutException;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Moment by which the handling of a request should be done. Filters and controllers can
+ * ask how much time is left, or `check` the deadline between steps to stop working on a
+ * request that will only be answered with a timeout.
+ */
+public class Deadline {
+
+	public static Deadline after (long duration, TimeUnit unit) {
+		return new Deadline (System.nanoTime () + Math.min (unit.toNanos (duration), Long.MAX_VALUE / 2));
+	}
+
+	private final long nanos;
+
+	private Deadline (long nanos) {
+		this.nanos = nanos;
+	}
+
+	public long remaining (TimeUnit unit) {
+		return unit.convert (Math.max (0, nanos - System.nanoTime ()), TimeUnit.NANOSECONDS);
+	}
+
+	public boolean isExpired () {
+		return nanos - System.nanoTime () <= 0;
+	}
+
+	public void check () {
+		if ( isExpired () ) {
+			throw new GatewayTimeoutException ("The request did not complete before its deadline");
+		}
+	}
+
+	public Deadline earliest (Deadline other) {
+		return other == null || nanos - other.nanos <= 0 ? this : other;
+	}
+
+	@Override
+	public String toString () {
+		return "Deadline in " + remaining (TimeUnit.MILLISECONDS) + "ms";
+	}
+
+}
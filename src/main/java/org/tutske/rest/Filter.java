@@ -2,18 +2,53 @@ package org.tutske.rest;
 
 import org.tutske.rest.internals.Chain;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 
 @FunctionalInterface
 public interface Filter<S, T> {
 
+	/**
+	 * Chains over a list of filters and the chains of a filter collection take the filters
+	 * of a combination in its place, so calling them costs nothing extra. Only a combined
+	 * filter that is called directly creates a chain for its filters on every call.
+	 */
 	public static <S, T> Filter<S, T> combine (Filter<S, T> ... filters) {
-		return (source, c) -> {
-			return new Chain<> (c::call, Arrays.asList (filters)).call (source);
-		};
+		return new Combined<> (filters);
 	}
 
 	T call (S source, Chain<S, T> chain) throws Exception;
 
+	public static final class Combined<S, T> implements Filter<S, T> {
+		private final Filter<S, T> [] filters;
+
+		private Combined (Filter<S, T> [] filters) {
+			List<Filter<S, T>> spread = new ArrayList<> ();
+			for ( Filter<S, T> filter : filters ) {
+				spread.addAll (spread (filter));
+			}
+			this.filters = spread.toArray (new Filter [spread.size ()]);
+		}
+
+		/**
+		 * The filters that a filter stands for, the filters it combines or else just the
+		 * filter itself.
+		 */
+		public static <S, T> List<Filter<S, T>> spread (Filter<S, T> filter) {
+			if ( ! (filter instanceof Combined) ) {
+				return Collections.singletonList (filter);
+			}
+			List<Filter<S, T>> filters = new ArrayList<> ();
+			Collections.addAll (filters, ((Combined<S, T>) filter).filters);
+			return filters;
+		}
+
+		@Override
+		public T call (S source, Chain<S, T> chain) throws Exception {
+			return new Chain<> (chain::call, filters).call (source);
+		}
+	}
+
 }
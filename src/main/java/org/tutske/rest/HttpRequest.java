@@ -20,6 +20,7 @@ public class HttpRequest {
 	private final HttpServletResponse response;
 	private final ParameterBag<String> path;
 	private final ParameterBag<String> queryParams;
+	private Deadline deadline = null;
 
 	public HttpRequest (HttpServletRequest request, HttpServletResponse response, ParameterBag<String> path) {
 		this.request = request;
@@ -63,6 +64,27 @@ public class HttpRequest {
 		return this.context;
 	}
 
+	/**
+	 * The deadline of the request, or null when it has none. It is also in the context
+	 * under `deadline`.
+	 */
+	public Deadline getDeadline () {
+		return deadline;
+	}
+
+	public void setDeadline (Deadline deadline) {
+		this.deadline = deadline;
+		context.clear ("deadline");
+		if ( deadline != null ) { context.put ("deadline", deadline); }
+	}
+
+	/**
+	 * Fail with a gateway timeout when the deadline of the request passed.
+	 */
+	public void checkDeadline () {
+		if ( deadline != null ) { deadline.check (); }
+	}
+
 	public String getBody () {
 		try {
 			StringBuilder builder = new StringBuilder ();
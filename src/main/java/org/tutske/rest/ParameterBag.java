@@ -12,7 +12,28 @@ import java.util.function.Function;
 
 public class ParameterBag<T> implements Map<String, T> {
 
-	private final Map<String, List<T>> data = new LinkedHashMap<> ();
+	private final Map<String, List<T>> data;
+	private volatile boolean locked = false;
+
+	public ParameterBag () {
+		this (new LinkedHashMap<> ());
+	}
+
+	protected ParameterBag (Map<String, List<T>> data) {
+		this.data = data;
+	}
+
+	/**
+	 * Refuse any further changes, so the bag can be handed to several requests at once.
+	 */
+	public ParameterBag<T> lock () {
+		locked = true;
+		return this;
+	}
+
+	public boolean isLocked () {
+		return locked;
+	}
 
 	@Override
 	public int size () {
@@ -47,6 +68,7 @@ public class ParameterBag<T> implements Map<String, T> {
 	}
 
 	public ParameterBag addAll (String key, Collection<? extends T> values) {
+		assureUnlocked ();
 		List<T> retrieved = data.get (key);
 		if ( retrieved == null ) {
 			retrieved = new LinkedList<T> ();
@@ -61,11 +83,12 @@ public class ParameterBag<T> implements Map<String, T> {
 	}
 
 	public void addAll (ParameterBag<? extends T> bag) {
-		bag.data.forEach (this::addAll);
+		bag.forEach ((key, value) -> addAll (key, Collections.singletonList (value)));
 	}
 
 	@Override
 	public boolean replace (String key, T oldValue, T newValue) {
+		assureUnlocked ();
 		List<T> values = data.get (key);
 		if ( values == null || values.isEmpty () ) {
 			return false;
@@ -92,25 +115,41 @@ public class ParameterBag<T> implements Map<String, T> {
 	}
 
 	public <S> S converted (Object key, Class<S> clazz) {
-		List<T> values = data.get (key);
+		T value = get (key);
 
-		if ( values == null || values.isEmpty () ) {
+		if ( value == null ) {
 			return null;
 		}
 
 		try {
-			return PrimitivesParser.parse (values.get (0).toString (), clazz);
-		} catch ( NumberFormatException excetion ) {
+			return PrimitivesParser.parse (value.toString (), clazz);
+		} catch ( IllegalArgumentException excetion ) {
 			throw new WrongValueException (
 				"The value is not of the right type.",
 				new RestObject () {{
-					v ("value", values.get (0));
+					v ("value", value);
 					v ("type", clazz.getName ());
 				}}
 			);
 		}
 	}
 
+	public Integer getInt (Object key) {
+		return converted (key, Integer.class);
+	}
+
+	public Long getLong (Object key) {
+		return converted (key, Long.class);
+	}
+
+	public Boolean getBoolean (Object key) {
+		return converted (key, Boolean.class);
+	}
+
+	public UUID getUuid (Object key) {
+		return converted (key, UUID.class);
+	}
+
 	public Set<T> getAll (Object key) {
 		List<T> values = data.get (key);
 		if ( values == null ) {
@@ -128,6 +167,7 @@ public class ParameterBag<T> implements Map<String, T> {
 
 	@Override
 	public T put (String key, T value) {
+		assureUnlocked ();
 		if ( ! containsKey (key) ) {
 			add (key, value);
 			return null;
@@ -146,15 +186,18 @@ public class ParameterBag<T> implements Map<String, T> {
 
 	@Override
 	public void clear () {
+		assureUnlocked ();
 		data.clear ();
 	}
 
 	public void clear (String key) {
+		assureUnlocked ();
 		data.remove (key);
 	}
 
 	@Override
 	public T remove (Object key) {
+		assureUnlocked ();
 		List<T> values = data.get (key);
 		if ( values == null || values.isEmpty () ) {
 			return null;
@@ -168,6 +211,7 @@ public class ParameterBag<T> implements Map<String, T> {
 
 	@Override
 	public boolean remove (Object key, Object value) {
+		assureUnlocked ();
 		List<T> values = data.get (key);
 		if ( values == null || values.isEmpty () ) {
 			return false;
@@ -181,7 +225,7 @@ public class ParameterBag<T> implements Map<String, T> {
 
 	@Override
 	public Set<String> keySet () {
-		return data.keySet ();
+		return isLocked () ? Collections.unmodifiableSet (data.keySet ()) : data.keySet ();
 	}
 
 	@Override
@@ -213,6 +257,7 @@ public class ParameterBag<T> implements Map<String, T> {
 				}
 
 				@Override public T setValue (T value) {
+					assureUnlocked ();
 					T current = data.get (key).get (0);
 					data.get (key).add (0, value);
 					return current;
@@ -241,6 +286,7 @@ public class ParameterBag<T> implements Map<String, T> {
 
 	@Override
 	public void replaceAll (BiFunction<? super String, ? super T, ? extends T> function) {
+		assureUnlocked ();
 		data.forEach ((key, values) -> {
 			values.replaceAll ((value) -> {
 				return function.apply (key, value);
@@ -277,6 +323,12 @@ public class ParameterBag<T> implements Map<String, T> {
 		return null;
 	}
 
+	private void assureUnlocked () {
+		if ( isLocked () ) {
+			throw new RuntimeException ("Parameter bag is locked");
+		}
+	}
+
 	@Override
 	public String toString () {
 		StringBuilder builder = new StringBuilder ();
@@ -0,0 +1,161 @@
+package org.tutske.rest;
+
+import org.tutske.rest.internals.ParamType;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+
+/**
+ * Read only view on the parameters of a simple route, straight on top of the request
+ * path. The route hands over the names of its parameters and the parts of the url they
+ * sit in, the values are only cut out of the url when they are asked for.
+ */
+public class PathParams extends ParameterBag<String> {
+
+	private final String [] names;
+	private final int [] positions;
+	private final ParamType [] types;
+	private final boolean tail;
+	private final RequestPath path;
+	private final String [] values;
+	private Object [] converted;
+
+	/**
+	 * The parameter `names[i]` is the part of the url at `positions[i]`, which the route
+	 * already checked to be of type `types[i]` when that is not null. When `tail` is set the
+	 * last parameter is the remainder of the url from its position on.
+	 */
+	public PathParams (String [] names, int [] positions, ParamType [] types, boolean tail, RequestPath path) {
+		super (Collections.emptyMap ());
+		this.names = names;
+		this.positions = positions;
+		this.types = types;
+		this.tail = tail;
+		this.path = path;
+		this.values = new String [names.length];
+	}
+
+	@Override
+	public boolean isLocked () {
+		return true;
+	}
+
+	@Override
+	public int size () {
+		return keySet ().size ();
+	}
+
+	@Override
+	public boolean isEmpty () {
+		return names.length == 0;
+	}
+
+	@Override
+	public boolean containsKey (Object key) {
+		return indexOf (key) >= 0;
+	}
+
+	@Override
+	public boolean containsValue (Object value) {
+		for ( int i = 0; i < names.length; i++ ) {
+			if ( value (i).equals (value) ) { return true; }
+		}
+		return false;
+	}
+
+	@Override
+	public String get (Object key) {
+		int index = indexOf (key);
+		return index < 0 ? null : value (index);
+	}
+
+	/**
+	 * Parameters with a type in the descriptor are converted once, without checking
+	 * them again.
+	 */
+	@Override
+	public <S> S converted (Object key, Class<S> clazz) {
+		int index = indexOf (key);
+		if ( index < 0 || types[index] == null || types[index].getType () != clazz ) {
+			return super.converted (key, clazz);
+		}
+
+		if ( converted == null ) { converted = new Object [names.length]; }
+		if ( converted[index] == null ) { converted[index] = types[index].convert (value (index)); }
+		return (S) converted[index];
+	}
+
+	@Override
+	public Set<String> getAll (Object key) {
+		Set<String> all = new HashSet<> ();
+		for ( int i = 0; i < names.length; i++ ) {
+			if ( names[i].equals (key) ) { all.add (value (i)); }
+		}
+		return all;
+	}
+
+	@Override
+	public Set<String> keySet () {
+		Set<String> keys = new LinkedHashSet<> ();
+		Collections.addAll (keys, names);
+		return Collections.unmodifiableSet (keys);
+	}
+
+	@Override
+	public Collection<String> values () {
+		Set<String> values = new HashSet<> ();
+		for ( String key : keySet () ) {
+			values.add (get (key));
+		}
+		return values;
+	}
+
+	@Override
+	public Set<Entry<String, String>> entrySet () {
+		Set<Entry<String, String>> entries = new HashSet<> ();
+		for ( String key : keySet () ) {
+			entries.add (new AbstractMap.SimpleImmutableEntry<> (key, get (key)));
+		}
+		return entries;
+	}
+
+	@Override
+	public void forEach (BiConsumer<? super String, ? super String> action) {
+		for ( String key : keySet () ) {
+			for ( int i = 0; i < names.length; i++ ) {
+				if ( names[i].equals (key) ) { action.accept (key, value (i)); }
+			}
+		}
+	}
+
+	@Override
+	public String toString () {
+		if ( names.length == 0 ) { return "{  }"; }
+
+		StringBuilder builder = new StringBuilder ("{ ");
+		for ( String key : keySet () ) {
+			builder.append ("\"").append (key).append ("\": \"").append (get (key)).append ("\", ");
+		}
+		builder.replace (builder.length () - 2, builder.length (), " }");
+		return builder.toString ();
+	}
+
+	private int indexOf (Object key) {
+		for ( int i = 0; i < names.length; i++ ) {
+			if ( names[i].equals (key) ) { return i; }
+		}
+		return -1;
+	}
+
+	private String value (int index) {
+		String value = values[index];
+		if ( value == null ) {
+			boolean last = tail && index == names.length - 1;
+			value = last ? path.tail (positions[index]) : path.segment (positions[index]);
+			values[index] = value;
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,115 @@
+package org.tutske.rest;
+
+
+/**
+ * A url path split into its parts once, by recording where every part starts and ends
+ * in the original string. The parts are the same as those of
+ * `url.substring (1).split ("/")`, but they are only turned into strings when asked for.
+ */
+public class RequestPath {
+
+	private final String path;
+	private final int [] bounds;
+	private final int size;
+	private String [] segments = null;
+
+	public RequestPath (String path) {
+		this.path = path;
+
+		int begin = Math.min (1, path.length ());
+		int count = 1;
+		for ( int i = begin; i < path.length (); i++ ) {
+			if ( path.charAt (i) == '/' ) { count++; }
+		}
+
+		int [] bounds = new int [count * 2];
+		int index = 0;
+		int start = begin;
+		for ( int i = begin; i <= path.length (); i++ ) {
+			if ( i == path.length () || path.charAt (i) == '/' ) {
+				bounds[index++] = start;
+				bounds[index++] = i;
+				start = i + 1;
+			}
+		}
+
+		int size = count;
+		if ( path.length () > begin ) {
+			while ( size > 0 && bounds[size * 2 - 2] == bounds[size * 2 - 1] ) { size--; }
+		}
+
+		this.bounds = bounds;
+		this.size = size;
+	}
+
+	public String getPath () {
+		return path;
+	}
+
+	public int size () {
+		return size;
+	}
+
+	public int start (int index) {
+		return bounds[index * 2];
+	}
+
+	public int end (int index) {
+		return bounds[index * 2 + 1];
+	}
+
+	public int length (int index) {
+		return end (index) - start (index);
+	}
+
+	public char charAt (int index, int offset) {
+		return path.charAt (start (index) + offset);
+	}
+
+	public String segment (int index) {
+		return path.substring (start (index), end (index));
+	}
+
+	public boolean segmentEquals (int index, String value) {
+		int start = start (index);
+		int length = end (index) - start;
+		return length == value.length () && path.regionMatches (start, value, 0, length);
+	}
+
+	/**
+	 * The same hash as `segment (index).hashCode ()` without creating the string.
+	 */
+	public int segmentHash (int index) {
+		int hash = 0;
+		for ( int i = start (index); i < end (index); i++ ) {
+			hash = 31 * hash + path.charAt (i);
+		}
+		return hash;
+	}
+
+	/**
+	 * The remainder of the path starting at the part with the given index, including the
+	 * slash in front of it. The empty string when there are no parts from that index on.
+	 */
+	public String tail (int index) {
+		if ( index >= size ) { return ""; }
+		return path.substring (start (index) - 1, end (size - 1));
+	}
+
+	public String [] segments () {
+		if ( segments == null ) {
+			String [] segments = new String [size];
+			for ( int i = 0; i < size; i++ ) {
+				segments[i] = segment (i);
+			}
+			this.segments = segments;
+		}
+		return segments;
+	}
+
+	@Override
+	public String toString () {
+		return path;
+	}
+
+}
@@ -18,6 +18,7 @@ import org.tutske.rest.internals.*;
 import java.security.KeyStore;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 
 public class Server {
@@ -33,6 +34,9 @@ public class Server {
 	private Map<String, Serializer> serializers = null;
 	private String defaultSerializer = null;
 	private Gson gson = new Gson ();
+	private Long asyncTimeout = null;
+	private Execution execution = Execution.direct ();
+	private Compression compression = Compression.none ();
 
 	public Server (String baseurl, int port) {
 		this.server = new org.eclipse.jetty.server.Server (port);
@@ -101,6 +105,36 @@ public class Server {
 		return this;
 	}
 
+	/**
+	 * Where requests to synchronous controllers are handled, for instance on virtual
+	 * threads with `Execution.virtualThreads ()`, optionally `bounded` to a number of
+	 * requests at a time. These requests are not timed out unless `configureAsyncTimeout`
+	 * is called as well.
+	 */
+	public Server configureExecution (Execution execution) {
+		this.execution = execution;
+		return this;
+	}
+
+	/**
+	 * Compression of the responses, for instance `new Compression ()` to gzip json, xml
+	 * and javascript responses of at least a kilobyte.
+	 */
+	public Server configureCompression (Compression compression) {
+		this.compression = compression;
+		return this;
+	}
+
+	/**
+	 * How long requests to asynchronous controllers, and to synchronous controllers on an
+	 * execution, may take before they are answered with a gateway timeout. Without it
+	 * asynchronous controllers get 30 seconds.
+	 */
+	public Server configureAsyncTimeout (long timeout, TimeUnit unit) {
+		this.asyncTimeout = unit.toMillis (timeout);
+		return this;
+	}
+
 	public void start () throws Exception {
 		startAsync ();
 		server.join ();
@@ -122,20 +156,27 @@ public class Server {
 			handlers.addHandler (resources);
 		}
 		if ( router != null && filters != null ) {
-			handlers.addHandler (new RestHandler (router, filters, serializer));
+			handlers.addHandler (configure (new RestHandler (router, filters, serializer)));
 		}
 		if ( router != null && filters == null ) {
-			handlers.addHandler (new RestHandler (router, serializer));
+			handlers.addHandler (configure (new RestHandler (router, serializer)));
 		}
 		if ( sockets != null ) {
 			handlers.addHandler (sockets);
 		}
-		handlers.addHandler (new NotFoundHandler (serializers));
+		handlers.addHandler (new NotFoundHandler (serializers, compression));
 
 		server.setHandler (handlers);
 		server.start ();
 	}
 
+	private RestHandler configure (RestHandler handler) {
+		if ( asyncTimeout != null ) {
+			handler.setAsyncTimeout (asyncTimeout, TimeUnit.MILLISECONDS);
+		}
+		return handler.setExecution (execution).setCompression (compression);
+	}
+
 	public void stop () throws Exception {
 		server.stop ();
 	}
@@ -2,8 +2,16 @@ package org.tutske.rest;
 
 import static org.tutske.rest.HttpRequest.Method;
 
+import org.tutske.rest.internals.LinkTemplate;
+import org.tutske.rest.internals.ParamType;
+import org.tutske.rest.internals.RoutePatterns;
+
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 /**
@@ -12,14 +20,18 @@ import java.util.Map;
  * matching should be very fast, if the split string is passed instead of the plain url
  * this should not have a noticble impact on performance.
  *
- * have a separate class that can do more fancy matchings such as globbing more than
- * one part of the url. This could still be done with a bit more fancy matching
- * algorithm.
+ * Variable parts can be given a type, as in `/users/:id<long>`. Urls with a part that is
+ * not of that type do not match the route. The types are `string`, `int`, `long`,
+ * `boolean` and `uuid`.
  *
- * Have a separate class that can do plain old regex matchings.
+ * Glob routes can do more fancy matchings such as globbing more than one part of the
+ * url, `/static/**.css` or `/:lang/{docs,guides}/*`. Regex routes do plain old regex
+ * matchings against the whole url, with named groups for the parameters. The router
+ * combines all glob and regex routes into a single pattern.
  *
  * Advice people to use the first type of routes whenever they can, and to put the
- * more expensive routes towards the end. unless they are used very often.
+ * more expensive routes towards the end. unless they are used very often. The router
+ * can also keep track of that itself, see `UrlRouter.enableAdaptiveOrdering`.
  *
  * When designing the routes and the application, you can do further processing of
  * the url within the controller. Not all possible scenarios have to be handed by the
@@ -31,15 +43,24 @@ public abstract class UrlRoute<T> {
 		protected final String identifier;
 		protected final T handler;
 		protected final EnumSet<Method> methods;
+		protected final boolean methodScoped;
 		protected final String [] descriptor;
 		protected final boolean [] shouldMatch;
 		protected final boolean allowTail;
+		protected final LinkTemplate link;
+		protected final String [] names;
+		protected final int [] positions;
+		protected final ParamType [] types;
 
 		public BaseRoute (String identifier, String descriptor, T handler) {
-			this (identifier, descriptor, EnumSet.of (Method.GET), handler);
+			this (identifier, descriptor, EnumSet.of (Method.GET), false, handler);
 		}
 
 		public BaseRoute (String identifier, String descriptor, EnumSet<Method> methods, T handler) {
+			this (identifier, descriptor, methods, true, handler);
+		}
+
+		private BaseRoute (String identifier, String descriptor, EnumSet<Method> methods, boolean scoped, T handler) {
 			if ( ! descriptor.startsWith ("/") ) {
 				throw new RuntimeException ("invalid descriptor: " + descriptor);
 			}
@@ -47,11 +68,43 @@ public abstract class UrlRoute<T> {
 			this.identifier = identifier;
 			this.handler = handler;
 			this.methods = methods;
+			this.methodScoped = scoped;
 			this.descriptor = descriptor.substring (1).split ("/");
 			this.shouldMatch = new boolean [this.descriptor.length];
 			this.allowTail = this.descriptor[this.descriptor.length - 1].startsWith ("::");
+			this.link = new LinkTemplate (descriptor);
 
 			processDescriptor ();
+
+			int count = 0;
+			for ( boolean match : shouldMatch ) { if ( ! match ) { count++; } }
+			this.names = new String [count];
+			this.positions = new int [count];
+			this.types = new ParamType [count];
+			for ( int i = 0, j = 0; i < this.descriptor.length; i++ ) {
+				if ( shouldMatch[i] ) { continue; }
+				ParamType type = ParamType.of (this.descriptor[i]);
+				if ( type != null && allowTail && i == this.descriptor.length - 1 ) {
+					throw new RuntimeException ("Tails can not have a type: " + descriptor);
+				}
+				names[j] = ParamType.nameOf (this.descriptor[i]);
+				types[j] = type == ParamType.STRING ? null : type;
+				positions[j++] = i;
+			}
+		}
+
+		protected boolean typesAccept (RequestPath path) {
+			for ( int i = 0; i < types.length; i++ ) {
+				if ( types[i] != null && ! types[i].accepts (path, positions[i]) ) { return false; }
+			}
+			return true;
+		}
+
+		protected boolean typesAccept (String [] parts) {
+			for ( int i = 0; i < types.length; i++ ) {
+				if ( types[i] != null && ! types[i].accepts (parts[positions[i]]) ) { return false; }
+			}
+			return true;
 		}
 
 		@Override public String getIdentifier () {
@@ -63,16 +116,31 @@ public abstract class UrlRoute<T> {
 		}
 
 		@Override public boolean matches (Method method, String url) {
-			return matches (method, url, url.substring (1).split ("/"));
+			return matches (method, new RequestPath (url));
+		}
+
+		@Override public String [] getDescriptor () {
+			return descriptor.clone ();
+		}
+
+		@Override public EnumSet<Method> getMethods () {
+			return EnumSet.copyOf (methods);
+		}
+
+		@Override public boolean isMethodScoped () {
+			return methodScoped;
 		}
 
 		@Override public String linkTo (Map<String, String> params) {
-			String [] constructed = new String [descriptor.length];
-			for ( int i = 0; i < descriptor.length; i++ ) {
-				String part = descriptor[i];
-				constructed[i] = part.startsWith (":") ? params.get (part.substring (1)) : part;
-			}
-			return "/" + String.join ("/", constructed);
+			return link.appendTo (new StringBuilder (), params).toString ();
+		}
+
+		@Override public StringBuilder linkTo (StringBuilder builder, Map<String, String> params) {
+			return link.appendTo (builder, params);
+		}
+
+		@Override public StringBuilder linkTo (StringBuilder builder, String ... values) {
+			return link.appendTo (builder, values);
 		}
 
 		private void processDescriptor () {
@@ -84,16 +152,24 @@ public abstract class UrlRoute<T> {
 
 	public static class RootRoute<T> extends BaseRoute<T> {
 		public RootRoute (T handler) {
-			super ("root", "ROOT", handler);
+			super ("root", "/", handler);
 		}
 
 		@Override public boolean matches (Method method, String url, String [] parts) {
-			return parts.length == 1 && "".equals (parts[1]);
+			return methods.contains (method) && parts.length == 1 && "".equals (parts[0]);
+		}
+
+		@Override public boolean matches (Method method, RequestPath path) {
+			return methods.contains (method) && path.size () == 1 && path.length (0) == 0;
 		}
 
 		@Override public ParameterBag extractMatches (String url, String [] parts) {
 			return new ParameterBag ();
 		}
+
+		@Override public ParameterBag extractMatches (RequestPath path) {
+			return new ParameterBag ();
+		}
 	}
 
 	public static class ControllerRoute extends SimpleRoute<ControllerFunction> {
@@ -144,6 +220,7 @@ public abstract class UrlRoute<T> {
 		@Override public boolean matches (Method method, String url, String [] parts) {
 			if ( ! methods.contains (method) ) { return false; }
 			if ( ! this.allowTail && parts.length != this.descriptor.length ) { return false; }
+			if ( this.allowTail && parts.length < this.descriptor.length - 1 ) { return false; }
 
 			for ( int i = 0; i < descriptor.length; i++ ) {
 				if ( shouldMatch[i] && ! descriptor[i].equals (parts[i]) ) {
@@ -151,18 +228,36 @@ public abstract class UrlRoute<T> {
 				}
 			}
 
-			return true;
+			return typesAccept (parts);
+		}
+
+		@Override public boolean matches (Method method, RequestPath path) {
+			int size = path.size ();
+			if ( ! methods.contains (method) ) { return false; }
+			if ( ! this.allowTail && size != this.descriptor.length ) { return false; }
+			if ( this.allowTail && size < this.descriptor.length - 1 ) { return false; }
+
+			for ( int i = 0; i < descriptor.length; i++ ) {
+				if ( shouldMatch[i] && ! path.segmentEquals (i, descriptor[i]) ) {
+					return false;
+				}
+			}
+
+			return typesAccept (path);
+		}
+
+		@Override public ParameterBag extractMatches (RequestPath path) {
+			return new PathParams (names, positions, types, allowTail, path);
 		}
 
 		@Override public ParameterBag extractMatches (String url, String [] parts) {
 			ParameterBag extracted = new ParameterBag ();
-			int last = descriptor.length - 1;
-			for ( int i = 0; i < descriptor.length; i++ ) {
-				if ( shouldMatch [i] ) { continue; }
-				if ( i == last && descriptor[i].startsWith ("::") ) {
-					extracted.add (descriptor[i].substring (2), join (parts, i));
+			int last = names.length - 1;
+			for ( int i = 0; i < names.length; i++ ) {
+				if ( i == last && allowTail ) {
+					extracted.add (names[i], join (parts, positions[i]));
 				} else {
-					extracted.add (descriptor[i].substring (1), parts[i]);
+					extracted.add (names[i], parts[positions[i]]);
 				}
 			}
 			return extracted;
@@ -177,6 +272,190 @@ public abstract class UrlRoute<T> {
 		}
 	}
 
+	private abstract static class PatternRoute<T> extends UrlRoute<T> {
+		protected final String identifier;
+		protected final T handler;
+		protected final EnumSet<Method> methods;
+		protected final boolean methodScoped;
+		protected final Pattern pattern;
+		protected final String [] names;
+		protected final ParamType [] types;
+		protected final boolean combinable;
+		protected final String prefix;
+
+		public PatternRoute (String identifier, String regex, List<String> names, List<ParamType> types,
+			boolean combinable, EnumSet<Method> methods, boolean scoped, T handler
+		) {
+			this.identifier = identifier;
+			this.handler = handler;
+			this.methods = methods;
+			this.methodScoped = scoped;
+			this.pattern = Pattern.compile (regex);
+			this.names = names.toArray (new String [names.size ()]);
+			this.types = types.toArray (new ParamType [types.size ()]);
+			this.combinable = combinable;
+			this.prefix = RoutePatterns.literalPrefix (regex);
+		}
+
+		@Override public String getIdentifier () {
+			return identifier;
+		}
+
+		@Override public T getHandler () {
+			return handler;
+		}
+
+		@Override public Pattern getPattern () {
+			return combinable ? pattern : null;
+		}
+
+		@Override public String getPrefix () {
+			return prefix;
+		}
+
+		@Override public EnumSet<Method> getMethods () {
+			return EnumSet.copyOf (methods);
+		}
+
+		@Override public boolean isMethodScoped () {
+			return methodScoped;
+		}
+
+		@Override public boolean matches (Method method, String url) {
+			if ( ! methods.contains (method) ) { return false; }
+
+			Matcher matcher = pattern.matcher (url);
+			if ( ! matcher.matches () ) { return false; }
+
+			for ( int i = 0; i < types.length; i++ ) {
+				if ( types[i] == null || matcher.start (i + 1) < 0 ) { continue; }
+				if ( ! types[i].accepts (url, matcher.start (i + 1), matcher.end (i + 1)) ) { return false; }
+			}
+			return true;
+		}
+
+		@Override public boolean matches (Method method, String url, String [] parts) {
+			return matches (method, url);
+		}
+
+		@Override public boolean matches (Method method, RequestPath path) {
+			return matches (method, path.getPath ());
+		}
+
+		@Override public ParameterBag extractMatches (String url, String [] parts) {
+			ParameterBag extracted = new ParameterBag ();
+			Matcher matcher = pattern.matcher (url);
+			if ( ! matcher.matches () ) { return extracted; }
+
+			for ( int i = 0; i < names.length; i++ ) {
+				if ( names[i] == null ) { continue; }
+				String value = matcher.group (i + 1);
+				extracted.add (names[i], value == null ? "" : value);
+			}
+			return extracted;
+		}
+
+		@Override public ParameterBag extractMatches (RequestPath path) {
+			return extractMatches (path.getPath (), null);
+		}
+	}
+
+	/**
+	 * Matches the whole url against a regex, the values of named groups end up as the
+	 * parameters of the request. Regexes that use back references are not combined with
+	 * the other patterns of the router, they are tried on their own.
+	 */
+	public static class RegexRoute<T> extends PatternRoute<T> {
+		public RegexRoute (String identifier, String regex, T handler) {
+			this (identifier, regex, new ArrayList<> (), EnumSet.of (Method.GET), false, handler);
+		}
+
+		public RegexRoute (String identifier, String regex, EnumSet<Method> methods, T handler) {
+			this (identifier, regex, new ArrayList<> (), methods, true, handler);
+		}
+
+		private RegexRoute (String identifier, String regex, List<String> names,
+			EnumSet<Method> methods, boolean scoped, T handler
+		) {
+			this (identifier, regex, RoutePatterns.stripNames (regex, names), names, methods, scoped, handler);
+		}
+
+		private RegexRoute (String identifier, String regex, String stripped, List<String> names,
+			EnumSet<Method> methods, boolean scoped, T handler
+		) {
+			super (
+				identifier, stripped == null ? regex : stripped, names, new ArrayList<> (),
+				stripped != null, methods, scoped, handler
+			);
+		}
+
+		@Override public String linkTo (Map<String, String> params) {
+			throw new RuntimeException ("Can not link to a regex route: " + identifier);
+		}
+	}
+
+	/**
+	 * Matches urls such as `/static/**.css`, `/:lang/{docs,guides}/*` or
+	 * `/files/*.{png,jpg}/::rest`. Links can only be made to globs without wildcards.
+	 *
+	 * Numbers in `:name<int>` and `:name<long>` captures are checked to be in range after
+	 * the regex matched, like in simple routes. Globs with such captures are therefore not
+	 * combined with the other patterns of the router, they are tried on their own.
+	 */
+	public static class GlobRoute<T> extends PatternRoute<T> {
+		private final String descriptor;
+		private final LinkTemplate link;
+
+		public GlobRoute (String identifier, String descriptor, T handler) {
+			this (identifier, descriptor, EnumSet.of (Method.GET), false, handler);
+		}
+
+		public GlobRoute (String identifier, String descriptor, EnumSet<Method> methods, T handler) {
+			this (identifier, descriptor, methods, true, handler);
+		}
+
+		private GlobRoute (String identifier, String descriptor, EnumSet<Method> methods, boolean scoped, T handler) {
+			this (identifier, descriptor, new ArrayList<> (), new ArrayList<> (), methods, scoped, handler);
+		}
+
+		private GlobRoute (String identifier, String descriptor, List<String> names, List<ParamType> types,
+			EnumSet<Method> methods, boolean scoped, T handler
+		) {
+			super (
+				identifier, glob (descriptor, names, types), names, types,
+				! types.contains (ParamType.INT) && ! types.contains (ParamType.LONG), methods, scoped, handler
+			);
+			this.descriptor = descriptor;
+			this.link = RoutePatterns.isGlob (descriptor) ? null : new LinkTemplate (descriptor);
+		}
+
+		private static String glob (String descriptor, List<String> names, List<ParamType> types) {
+			if ( ! descriptor.startsWith ("/") ) {
+				throw new RuntimeException ("invalid descriptor: " + descriptor);
+			}
+			return RoutePatterns.fromGlob (descriptor, names, types);
+		}
+
+		@Override public String linkTo (Map<String, String> params) {
+			return linkTo (new StringBuilder (), params).toString ();
+		}
+
+		@Override public StringBuilder linkTo (StringBuilder builder, Map<String, String> params) {
+			return template ().appendTo (builder, params);
+		}
+
+		@Override public StringBuilder linkTo (StringBuilder builder, String ... values) {
+			return template ().appendTo (builder, values);
+		}
+
+		private LinkTemplate template () {
+			if ( link == null ) {
+				throw new RuntimeException ("Can not link to a glob with wildcards: " + descriptor);
+			}
+			return link;
+		}
+	}
+
 	abstract public String getIdentifier ();
 	abstract public boolean matches (Method method, String url);
 	abstract public boolean matches (Method method, String url, String [] parts);
@@ -184,4 +463,65 @@ public abstract class UrlRoute<T> {
 	abstract public T getHandler ();
 	abstract public String linkTo (Map<String, String> params);
 
+	/**
+	 * Link with the values for the parameters in the order in which they appear in the
+	 * descriptor of the route.
+	 */
+	public String linkTo (String ... values) {
+		return linkTo (new StringBuilder (), values).toString ();
+	}
+
+	public StringBuilder linkTo (StringBuilder builder, Map<String, String> params) {
+		return builder.append (linkTo (params));
+	}
+
+	public StringBuilder linkTo (StringBuilder builder, String ... values) {
+		throw new RuntimeException ("Can not link by position to route: " + getIdentifier ());
+	}
+
+	public boolean matches (Method method, RequestPath path) {
+		return matches (method, path.getPath (), path.segments ());
+	}
+
+	public ParameterBag extractMatches (RequestPath path) {
+		return extractMatches (path.getPath (), path.segments ());
+	}
+
+	/**
+	 * The parts of a `/fixed/:variable<type>/::tail` descriptor, for routes whose matching can be
+	 * compiled into the router. Routes that do their own matching return null, they are
+	 * tried one by one with `matches`.
+	 */
+	public String [] getDescriptor () {
+		return null;
+	}
+
+	/**
+	 * The pattern the whole url is matched against, for routes whose pattern only uses
+	 * numbered groups and can be combined with the patterns of other routes.
+	 */
+	public Pattern getPattern () {
+		return null;
+	}
+
+	/**
+	 * Text that every url matched by this route starts with, or null when that is not
+	 * known. Routes with diverging prefixes can never match the same url.
+	 */
+	public String getPrefix () {
+		return null;
+	}
+
+	public EnumSet<Method> getMethods () {
+		return EnumSet.allOf (Method.class);
+	}
+
+	/**
+	 * Whether the methods of this route were given explicitly. Filters on routes that
+	 * were created without methods apply to requests of every method.
+	 */
+	public boolean isMethodScoped () {
+		return false;
+	}
+
 }
@@ -2,16 +2,327 @@ package org.tutske.rest;
 
 import static org.tutske.rest.HttpRequest.Method;
 
+import org.tutske.rest.internals.PatternTable;
+import org.tutske.rest.internals.RouteCache;
+import org.tutske.rest.internals.RouteOrdering;
+import org.tutske.rest.internals.RouteTrie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
 
 
+/**
+ * Routes are matched in the order in which they were added, the first route that matches
+ * wins. Every method has its own table with only the routes that accept that method.
+ * Routes that provide a descriptor are compiled into a segment trie so looking them up
+ * does not depend on the number of routes. Routes that provide a pattern are combined
+ * into a single regex. All other routes are tried one by one.
+ *
+ * Routes can be added and removed while requests are being routed. The routing tables
+ * are never changed in place, every change builds new tables and swaps them in at once,
+ * so routing a request never has to wait for a lock.
+ *
+ * Optionally the routes that are tried one after the other are ordered by how often they
+ * are used, see `enableAdaptiveOrdering`. And optionally the router keeps a bounded cache
+ * of the routes it found for concrete urls, together with the parameters extracted from
+ * them, see `enableCache`.
+ */
 public class UrlRouter<T> {
 
-	private final List<UrlRoute<T>> routes = new LinkedList<UrlRoute<T>> ();
-	private final Map<String, UrlRoute<T>> names = new HashMap<String, UrlRoute<T>> ();
+	public static class Match<T> {
+		private final UrlRoute<T> route;
+		private final ParameterBag<String> params;
+
+		public Match (UrlRoute<T> route, ParameterBag<String> params) {
+			this.route = route;
+			this.params = params;
+		}
+
+		public UrlRoute<T> getRoute () {
+			return route;
+		}
+
+		public ParameterBag<String> getParams () {
+			return params;
+		}
+	}
+
+	private static class Table {
+		private final RouteTrie trie;
+		private final int [] indices;
+		private final Pattern [] regexes;
+		private final int [] added;
+		private final PatternTable patterns;
+		private final int [] linear;
+		private final boolean ordered;
+
+		private Table (RouteTrie trie, int [] indices, Pattern [] regexes, int [] added,
+			int [] patternOrder, int [] linear
+		) {
+			this.trie = trie;
+			this.indices = indices;
+			this.regexes = regexes;
+			this.added = added;
+			this.linear = linear;
+			this.ordered = Arrays.equals (added, linear);
+
+			if ( Arrays.equals (indices, patternOrder) ) {
+				this.patterns = new PatternTable (indices, regexes);
+			} else {
+				Pattern [] reordered = new Pattern [regexes.length];
+				for ( int i = 0; i < reordered.length; i++ ) {
+					reordered[i] = regexes[Arrays.binarySearch (indices, patternOrder[i])];
+				}
+				this.patterns = new PatternTable (patternOrder, reordered);
+			}
+		}
+
+		private static Table build (List<? extends UrlRoute<?>> routes, Method method) {
+			RouteTrie trie = new RouteTrie ();
+			List<Integer> indices = new ArrayList<> ();
+			List<Pattern> regexes = new ArrayList<> ();
+			List<Integer> linear = new ArrayList<> ();
+
+			for ( int index = 0; index < routes.size (); index++ ) {
+				UrlRoute<?> route = routes.get (index);
+				EnumSet<Method> methods = route.getMethods ();
+				if ( methods != null && ! methods.contains (method) ) { continue; }
+
+				String [] descriptor = route.getDescriptor ();
+				Pattern pattern = route.getPattern ();
+
+				if ( descriptor != null ) {
+					trie.add (index, descriptor);
+				} else if ( pattern != null ) {
+					indices.add (index);
+					regexes.add (pattern);
+				} else {
+					linear.add (index);
+				}
+			}
+
+			int [] patternIndices = toArray (indices);
+			int [] linearIndices = toArray (linear);
+			return new Table (
+				trie, patternIndices, regexes.toArray (new Pattern [regexes.size ()]),
+				linearIndices, patternIndices, linearIndices
+			);
+		}
+
+		/**
+		 * The same table with the routes that are tried one after the other ordered by
+		 * their scores, as far as that does not change which route wins.
+		 */
+		private Table reorder (List<? extends UrlRoute<?>> routes, long [] scores) {
+			int [] patternOrder = RouteOrdering.reorder (indices, prefixes (routes, indices), select (scores, indices));
+			int [] linearOrder = RouteOrdering.reorder (added, prefixes (routes, added), select (scores, added));
+
+			if ( Arrays.equals (patternOrder, patterns.order ()) && Arrays.equals (linearOrder, linear) ) {
+				return this;
+			}
+			return new Table (trie, indices, regexes, added, patternOrder, linearOrder);
+		}
+
+		private static String [] prefixes (List<? extends UrlRoute<?>> routes, int [] indices) {
+			String [] prefixes = new String [indices.length];
+			for ( int i = 0; i < indices.length; i++ ) {
+				prefixes[i] = routes.get (indices[i]).getPrefix ();
+			}
+			return prefixes;
+		}
+
+		private static long [] select (long [] scores, int [] indices) {
+			long [] selected = new long [indices.length];
+			for ( int i = 0; i < indices.length; i++ ) {
+				selected[i] = scores[indices[i]];
+			}
+			return selected;
+		}
+
+		private static int [] toArray (List<Integer> list) {
+			int [] array = new int [list.size ()];
+			for ( int i = 0; i < array.length; i++ ) {
+				array[i] = list.get (i);
+			}
+			return array;
+		}
+	}
+
+	/**
+	 * All routes whatever their methods, to work out in one go for which methods a url is
+	 * routed once a request missed the table of its own method.
+	 */
+	private static class Methods {
+		private final RouteTrie trie;
+		private final int [] patterns;
+		private final Pattern [] regexes;
+		private final int [] linear;
+		private final EnumSet<Method> [] methods;
+
+		private Methods (RouteTrie trie, int [] patterns, Pattern [] regexes, int [] linear,
+			EnumSet<Method> [] methods
+		) {
+			this.trie = trie;
+			this.patterns = patterns;
+			this.regexes = regexes;
+			this.linear = linear;
+			this.methods = methods;
+		}
+
+		private static Methods build (List<? extends UrlRoute<?>> routes) {
+			RouteTrie trie = new RouteTrie ();
+			List<Integer> patterns = new ArrayList<> ();
+			List<Pattern> regexes = new ArrayList<> ();
+			List<Integer> linear = new ArrayList<> ();
+			EnumSet<Method> [] methods = new EnumSet [routes.size ()];
+
+			for ( int index = 0; index < routes.size (); index++ ) {
+				UrlRoute<?> route = routes.get (index);
+				methods[index] = route.getMethods () == null ? EnumSet.allOf (Method.class) : route.getMethods ();
+
+				String [] descriptor = route.getDescriptor ();
+				Pattern pattern = route.getPattern ();
+
+				if ( descriptor != null ) {
+					trie.add (index, descriptor);
+				} else if ( pattern != null ) {
+					patterns.add (index);
+					regexes.add (pattern);
+				} else {
+					linear.add (index);
+				}
+			}
+
+			return new Methods (
+				trie, Table.toArray (patterns), regexes.toArray (new Pattern [regexes.size ()]),
+				Table.toArray (linear), methods
+			);
+		}
+	}
+
+	/**
+	 * Counts how often the routes that are tried one after the other win, so the tables
+	 * can be reordered every interval. Older counts weigh half as much at every reorder.
+	 */
+	private static class Frequencies {
+		private final long interval;
+		private final long since;
+		private final LongAdder [] hits;
+		private final long [] scores;
+
+		public Frequencies (long interval, int size) {
+			this.interval = interval;
+			this.since = System.nanoTime ();
+			this.hits = new LongAdder [size];
+			this.scores = new long [size];
+			for ( int i = 0; i < size; i++ ) {
+				hits[i] = new LongAdder ();
+			}
+		}
+
+		private Frequencies (Frequencies frequencies, long [] scores) {
+			this.interval = frequencies.interval;
+			this.since = System.nanoTime ();
+			this.hits = frequencies.hits;
+			this.scores = scores;
+		}
+
+		public boolean due () {
+			return System.nanoTime () - since >= interval;
+		}
+
+		public Frequencies next () {
+			long [] scores = new long [this.scores.length];
+			for ( int i = 0; i < scores.length; i++ ) {
+				scores[i] = this.scores[i] / 2 + hits[i].sumThenReset ();
+			}
+			return new Frequencies (this, scores);
+		}
+	}
+
+	/**
+	 * Everything needed to route a request, built in one go and never changed afterwards.
+	 * Changes to the router build a new snapshot and publish it as a whole, so a request
+	 * routes against either the old or the new routes but never against a mix of both.
+	 */
+	private static class Snapshot<T> {
+		private final List<UrlRoute<T>> routes;
+		private final Map<String, UrlRoute<T>> names;
+		private final Map<Method, Table> tables;
+		private final Methods methods;
+		private final RouteCache<Match<T>> cache;
+		private final Frequencies frequencies;
+
+		private Snapshot (List<UrlRoute<T>> routes, Map<String, UrlRoute<T>> names,
+			Map<Method, Table> tables, Methods methods, RouteCache<Match<T>> cache, Frequencies frequencies
+		) {
+			this.routes = routes;
+			this.names = names;
+			this.tables = tables;
+			this.methods = methods;
+			this.cache = cache;
+			this.frequencies = frequencies;
+		}
+
+		public static <T> Snapshot<T> build (List<UrlRoute<T>> routes, RouteCache<Match<T>> cache, Long interval) {
+			List<UrlRoute<T>> copy = Collections.unmodifiableList (new ArrayList<> (routes));
+			Map<String, UrlRoute<T>> names = new HashMap<> ();
+			Map<Method, Table> tables = new EnumMap<> (Method.class);
+
+			for ( UrlRoute<T> route : copy ) {
+				names.put (route.getIdentifier (), route);
+			}
+			for ( Method method : Method.values () ) {
+				tables.put (method, Table.build (copy, method));
+			}
+
+			Frequencies frequencies = interval == null ? null : new Frequencies (interval, copy.size ());
+			return new Snapshot<> (copy, names, tables, Methods.build (copy), cache, frequencies);
+		}
+
+		public Snapshot<T> withCache (RouteCache<Match<T>> cache) {
+			return new Snapshot<> (routes, names, tables, methods, cache, frequencies);
+		}
+
+		public Snapshot<T> withFrequencies (Long interval) {
+			Frequencies frequencies = interval == null ? null : new Frequencies (interval, routes.size ());
+			return new Snapshot<> (routes, names, tables, methods, cache, frequencies);
+		}
+
+		public Snapshot<T> withRoutes (List<UrlRoute<T>> routes) {
+			RouteCache<Match<T>> cache = this.cache == null ? null : this.cache.emptied ();
+			return build (routes, cache, frequencies == null ? null : frequencies.interval);
+		}
+
+		public Snapshot<T> reordered () {
+			Frequencies next = frequencies.next ();
+			Map<Method, Table> tables = new EnumMap<> (Method.class);
+			for ( Map.Entry<Method, Table> entry : this.tables.entrySet () ) {
+				tables.put (entry.getKey (), entry.getValue ().reorder (routes, next.scores));
+			}
+			return new Snapshot<> (routes, names, tables, methods, cache, next);
+		}
+	}
+
+	private final AtomicReference<Snapshot<T>> snapshot = new AtomicReference<> (
+		Snapshot.build (Collections.emptyList (), null, null)
+	);
+	private final AtomicBoolean reordering = new AtomicBoolean (false);
+	private volatile Executor reorderer = ForkJoinPool.commonPool ();
 
 	/**
 	 * Just some syntax to have a nicer way to group routes when adding them to the
@@ -37,26 +348,200 @@ public class UrlRouter<T> {
 		return add (routes);
 	}
 
-	public UrlRouter<T> add (UrlRoute<T> ... routes) {
-		for ( UrlRoute route : routes ) {
-			this.names.put (route.getIdentifier (), route);
-			this.routes.add (route);
-		}
+	public synchronized UrlRouter<T> add (UrlRoute<T> ... routes) {
+		Snapshot<T> current = snapshot.get ();
+		List<UrlRoute<T>> updated = new ArrayList<> (current.routes);
+		Collections.addAll (updated, routes);
+		snapshot.set (current.withRoutes (updated));
+		return this;
+	}
+
+	/**
+	 * Take away the route that `find` would give for the name. Requests that are being
+	 * routed at that moment may still end up at the removed route.
+	 */
+	public synchronized UrlRouter<T> remove (String name) {
+		Snapshot<T> current = snapshot.get ();
+		UrlRoute<T> route = current.names.get (name);
+		if ( route == null ) { return this; }
+
+		List<UrlRoute<T>> updated = new ArrayList<> (current.routes);
+		updated.remove (current.routes.lastIndexOf (route));
+		snapshot.set (current.withRoutes (updated));
+		return this;
+	}
+
+	/**
+	 * Remember the route and the parameters of the most recently used concrete urls, up
+	 * to `size` of them. Urls without a route are never cached. This can be called at any
+	 * time, requests that are being routed at that moment still use the previous cache.
+	 */
+	public synchronized UrlRouter<T> enableCache (int size) {
+		snapshot.set (snapshot.get ().withCache (new RouteCache<> (size)));
 		return this;
 	}
 
+	public synchronized UrlRouter<T> disableCache () {
+		snapshot.set (snapshot.get ().withCache (null));
+		return this;
+	}
+
+	/**
+	 * Keep track of how often the glob, regex and other routes that can not be put in the
+	 * trie are used, and try the most used ones first. Every interval the order is worked
+	 * out again from the recent counts. Routes only change places with routes that can not
+	 * match the same urls, so the first added route that matches a url still wins.
+	 */
+	public synchronized UrlRouter<T> enableAdaptiveOrdering (long interval, TimeUnit unit) {
+		return enableAdaptiveOrdering (interval, unit, ForkJoinPool.commonPool ());
+	}
+
+	/**
+	 * Same as above, but works out the new order on the executor. Building the new tables
+	 * compiles the combined regex of the patterns again, which should not hold up the
+	 * request that noticed that it was time to reorder.
+	 */
+	public synchronized UrlRouter<T> enableAdaptiveOrdering (long interval, TimeUnit unit, Executor executor) {
+		reorderer = executor;
+		snapshot.set (snapshot.get ().withFrequencies (unit.toNanos (interval)));
+		return this;
+	}
+
+	public synchronized UrlRouter<T> disableAdaptiveOrdering () {
+		Snapshot<T> current = snapshot.get ();
+		snapshot.set (Snapshot.build (current.routes, current.cache, null));
+		return this;
+	}
+
+	public long cacheHits () {
+		RouteCache<Match<T>> current = snapshot.get ().cache;
+		return current == null ? 0 : current.hits ();
+	}
+
+	public long cacheMisses () {
+		RouteCache<Match<T>> current = snapshot.get ().cache;
+		return current == null ? 0 : current.misses ();
+	}
+
+	public long cacheEvictions () {
+		RouteCache<Match<T>> current = snapshot.get ().cache;
+		return current == null ? 0 : current.evictions ();
+	}
+
 	public UrlRoute<T> route (Method method, String url) {
-		String [] parts = url.substring (1).split ("/");
-		for ( UrlRoute route : routes ) {
-			if ( route.matches (method, url, parts) ) {
-				return route;
+		return route (method, new RequestPath (url));
+	}
+
+	public UrlRoute<T> route (Method method, RequestPath path) {
+		Snapshot<T> current = snapshot.get ();
+		int best = lookup (current, method, path);
+		return best == RouteTrie.NONE ? null : current.routes.get (best);
+	}
+
+	/**
+	 * The route for the url together with the parameters extracted from the url, or null
+	 * when there is no route. When the cache is enabled the parameters may be shared with
+	 * other requests for the same url and can not be changed.
+	 */
+	public Match<T> match (Method method, RequestPath path) {
+		Snapshot<T> current = snapshot.get ();
+		RouteCache<Match<T>> cache = current.cache;
+		Match<T> match = cache == null ? null : cache.get (method, path.getPath ());
+		if ( match != null ) { return match; }
+
+		int best = lookup (current, method, path);
+		if ( best == RouteTrie.NONE ) { return null; }
+
+		UrlRoute<T> route = current.routes.get (best);
+		ParameterBag<String> params = route.extractMatches (path);
+		if ( cache == null ) { return new Match<> (route, params); }
+
+		match = new Match<> (route, params.lock ());
+		cache.put (method, path.getPath (), match);
+		return match;
+	}
+
+	/**
+	 * The methods for which a route would be found for the url. When a url is not routed
+	 * for the method of a request, this tells apart a url that is not known at all from a
+	 * url that only lacks a route for that method. The routes of all methods are searched
+	 * together, so this costs about as much as routing the url once more.
+	 */
+	public EnumSet<Method> allowed (RequestPath path) {
+		Snapshot<T> current = snapshot.get ();
+		Methods methods = current.methods;
+		EnumSet<Method> allowed = EnumSet.noneOf (Method.class);
+
+		methods.trie.collect (path, (index) -> allowed.addAll (methods.methods[index]));
+
+		for ( int i = 0; i < methods.patterns.length; i++ ) {
+			EnumSet<Method> accepted = methods.methods[methods.patterns[i]];
+			if ( ! allowed.containsAll (accepted) && methods.regexes[i].matcher (path.getPath ()).matches () ) {
+				allowed.addAll (accepted);
+			}
+		}
+
+		for ( int index : methods.linear ) {
+			UrlRoute<T> route = current.routes.get (index);
+			for ( Method method : methods.methods[index] ) {
+				if ( ! allowed.contains (method) && route.matches (method, path) ) { allowed.add (method); }
+			}
+		}
+
+		return allowed;
+	}
+
+	private int lookup (Snapshot<T> snapshot, Method method, RequestPath path) {
+		int best = search (snapshot, method, path);
+		if ( snapshot.frequencies != null ) { count (snapshot, method, path, best); }
+		return best;
+	}
+
+	private int search (Snapshot<T> snapshot, Method method, RequestPath path) {
+		Table table = snapshot.tables.get (method);
+		int best = table.trie.lookup (path);
+
+		if ( table.patterns.min () < best ) {
+			best = Math.min (best, table.patterns.lookup (path.getPath ()));
+		}
+
+		for ( int index : table.linear ) {
+			if ( index > best ) {
+				if ( table.ordered ) { break; }
+				continue;
+			}
+			if ( snapshot.routes.get (index).matches (method, path) ) {
+				return index;
+			}
+		}
+
+		return best;
+	}
+
+	private void count (Snapshot<T> current, Method method, RequestPath path, int best) {
+		Frequencies frequencies = current.frequencies;
+		if ( best != RouteTrie.NONE ) { frequencies.hits[best].increment (); }
+
+		if ( ! frequencies.due () || ! reordering.compareAndSet (false, true) ) { return; }
+		try {
+			reorderer.execute (() -> reorder (current));
+		} catch (RejectedExecutionException exception) {
+			reordering.set (false);
+		}
+	}
+
+	private void reorder (Snapshot<T> current) {
+		try {
+			if ( snapshot.get () == current ) {
+				snapshot.compareAndSet (current, current.reordered ());
 			}
+		} finally {
+			reordering.set (false);
 		}
-		return null;
 	}
 
 	public UrlRoute find (String name) {
-		return names.get (name);
+		return snapshot.get ().names.get (name);
 	}
 
 }
@@ -0,0 +1,44 @@
+package org.tutske.rest.data;
+
+import java.util.Collections;
+import java.util.Map;
+
+
+/**
+ * Content that was already serialized, the rest handler writes it as it is with its own
+ * content type instead of running it through a serializer.
+ */
+public class RawContent implements RestStructure {
+
+	private final String contentType;
+	private final String content;
+
+	public RawContent (String contentType, String content) {
+		this.contentType = contentType;
+		this.content = content;
+	}
+
+	public String getContentType () {
+		return contentType;
+	}
+
+	public String getContent () {
+		return content;
+	}
+
+	@Override
+	public String getTag () {
+		return null;
+	}
+
+	@Override
+	public Map<String, Object> getAttributes () {
+		return Collections.emptyMap ();
+	}
+
+	@Override
+	public RestStructure asRestStructure () {
+		return this;
+	}
+
+}
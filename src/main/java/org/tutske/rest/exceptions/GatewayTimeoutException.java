@@ -0,0 +1,39 @@
+package org.tutske.rest.exceptions;
+
+import org.tutske.rest.data.RestObject;
+
+import javax.servlet.http.HttpServletResponse;
+
+
+public class GatewayTimeoutException extends ResponseException {
+
+	{
+		type = "/gateway_timeout";
+		title = "Gateway Timeout";
+		status = HttpServletResponse.SC_GATEWAY_TIMEOUT;
+	}
+
+	public GatewayTimeoutException () {
+	}
+
+	public GatewayTimeoutException (String message) {
+		super (message);
+	}
+
+	public GatewayTimeoutException (String message, Throwable cause) {
+		super (message, cause);
+	}
+
+	public GatewayTimeoutException (Throwable cause) {
+		super (cause);
+	}
+
+	public GatewayTimeoutException (RestObject data) {
+		super (data);
+	}
+
+	public GatewayTimeoutException (String message, RestObject data) {
+		super (message, data);
+	}
+
+}
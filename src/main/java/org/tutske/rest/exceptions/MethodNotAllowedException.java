@@ -0,0 +1,58 @@
+package org.tutske.rest.exceptions;
+
+import org.tutske.rest.HttpRequest.Method;
+import org.tutske.rest.data.RestArray;
+import org.tutske.rest.data.RestObject;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.EnumSet;
+
+
+public class MethodNotAllowedException extends ResponseException {
+
+	{
+		type = "/method_not_allowed";
+		title = "Method Not Allowed";
+		status = HttpServletResponse.SC_METHOD_NOT_ALLOWED;
+	}
+
+	public MethodNotAllowedException () {
+	}
+
+	public MethodNotAllowedException (String message) {
+		super (message);
+	}
+
+	public MethodNotAllowedException (String message, Throwable cause) {
+		super (message, cause);
+	}
+
+	public MethodNotAllowedException (Throwable cause) {
+		super (cause);
+	}
+
+	public MethodNotAllowedException (RestObject data) {
+		super (data);
+	}
+
+	public MethodNotAllowedException (String message, RestObject data) {
+		super (message, data);
+	}
+
+	public MethodNotAllowedException (Method method, EnumSet<Method> allowed) {
+		this ("Method " + method + " is not allowed for the resource", new RestObject () {{
+			v ("method", method.toString ());
+			v ("allowed", new RestArray () {{
+				allowed.forEach (m -> add (m.toString ()));
+			}});
+		}});
+
+		StringBuilder allow = new StringBuilder ();
+		for ( Method m : allowed ) {
+			if ( allow.length () > 0 ) { allow.append (", "); }
+			allow.append (m);
+		}
+		addHeader ("Allow", allow.toString ());
+	}
+
+}
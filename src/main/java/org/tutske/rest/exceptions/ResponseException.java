@@ -4,6 +4,8 @@ import org.tutske.rest.data.RestObject;
 import org.tutske.rest.data.RestStructure;
 
 import javax.servlet.http.HttpServletResponse;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 
 public class ResponseException extends RuntimeException {
@@ -18,6 +20,7 @@ public class ResponseException extends RuntimeException {
 
 	protected final String baseUrl = BASE_URL;
 	protected final RestObject data = new RestObject ();
+	protected final Map<String, String> headers = new LinkedHashMap<> ();
 	protected String type;
 	protected String title;
 	protected int status;
@@ -49,6 +52,14 @@ public class ResponseException extends RuntimeException {
 		this.data.merge (extra);
 	}
 
+	public void addHeader (String name, String value) {
+		this.headers.put (name, value);
+	}
+
+	public Map<String, String> getHeaders () {
+		return headers;
+	}
+
 	public RestStructure asRestStructure () {
 		String msg = getMessage ();
 		return new RestObject ("error") {{
@@ -0,0 +1,39 @@
+package org.tutske.rest.exceptions;
+
+import org.tutske.rest.data.RestObject;
+
+import javax.servlet.http.HttpServletResponse;
+
+
+public class ServiceUnavailableException extends ResponseException {
+
+	{
+		type = "/service_unavailable";
+		title = "Service Unavailable";
+		status = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+	}
+
+	public ServiceUnavailableException () {
+	}
+
+	public ServiceUnavailableException (String message) {
+		super (message);
+	}
+
+	public ServiceUnavailableException (String message, Throwable cause) {
+		super (message, cause);
+	}
+
+	public ServiceUnavailableException (Throwable cause) {
+		super (cause);
+	}
+
+	public ServiceUnavailableException (RestObject data) {
+		super (data);
+	}
+
+	public ServiceUnavailableException (String message, RestObject data) {
+		super (message, data);
+	}
+
+}
@@ -0,0 +1,44 @@
+package org.tutske.rest.exceptions;
+
+import org.tutske.rest.data.RestObject;
+
+
+public class TooManyRequestsException extends ResponseException {
+
+	{
+		type = "/too_many_requests";
+		title = "Too Many Requests";
+		status = 429;
+	}
+
+	public TooManyRequestsException () {
+	}
+
+	public TooManyRequestsException (String message) {
+		super (message);
+	}
+
+	public TooManyRequestsException (String message, Throwable cause) {
+		super (message, cause);
+	}
+
+	public TooManyRequestsException (Throwable cause) {
+		super (cause);
+	}
+
+	public TooManyRequestsException (RestObject data) {
+		super (data);
+	}
+
+	public TooManyRequestsException (String message, RestObject data) {
+		super (message, data);
+	}
+
+	public TooManyRequestsException (long retryAfter) {
+		this ("Too many requests, retry after " + retryAfter + " seconds", new RestObject () {{
+			v ("retryAfter", retryAfter);
+		}});
+		addHeader ("Retry-After", String.valueOf (retryAfter));
+	}
+
+}
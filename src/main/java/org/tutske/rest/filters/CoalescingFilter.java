@@ -0,0 +1,287 @@
+package org.tutske.rest.filters;
+
+import org.tutske.rest.AsyncRestFilter;
+import org.tutske.rest.HttpRequest;
+import org.tutske.rest.data.RawContent;
+import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.exceptions.GatewayTimeoutException;
+import org.tutske.rest.internals.Chain;
+import org.tutske.rest.internals.CompletionStages;
+import org.tutske.rest.internals.ContentSerializer;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Lets identical GET requests that arrive while one of them is being handled wait for
+ * that one, instead of all of them running the controller. Requests are identical when
+ * they would share an entry in the response cache, and optionally have the same principal.
+ * The waiting requests get the same serialized content and response headers, or the same
+ * exception. Only successful responses are shared, when the first request gets anything
+ * else the waiting requests are handled on their own. That includes responses that set a
+ * cookie, which belongs to the client that made the first request. Conditional requests
+ * are never coalesced, since their response depends on more than the url.
+ *
+ * At most `maxWaiters` requests wait for a single request, the ones after that are
+ * handled on their own. Waiting requests that do not get an answer within the timeout
+ * are answered with a gateway timeout. On routes with an asynchronous controller the
+ * waiting requests do not hold on to a thread, and are left to the async timeout of the
+ * handler instead.
+ */
+public class CoalescingFilter implements AsyncRestFilter {
+
+	private static final String [] CONDITIONAL = {
+		"If-None-Match", "If-Modified-Since", "If-Match", "If-Unmodified-Since", "If-Range"
+	};
+
+	private static final String [] PERSONAL = { "Set-Cookie", "Set-Cookie2" };
+
+	private static class Response {
+		private final RawContent content;
+		private final Map<String, Collection<String>> headers;
+
+		public Response (RawContent content, Map<String, Collection<String>> headers) {
+			this.content = content;
+			this.headers = headers;
+		}
+	}
+
+	private static class Flight {
+		private final CompletableFuture<Response> response = new CompletableFuture<> ();
+		private final AtomicInteger waiters = new AtomicInteger ();
+	}
+
+	private final ConcurrentMap<Object, Flight> flights = new ConcurrentHashMap<> ();
+	private final ContentSerializer serializer;
+	private int maxWaiters = 1000;
+	private long timeout = 10000;
+	private String principal = null;
+
+	public CoalescingFilter (ContentSerializer serializer) {
+		this.serializer = serializer;
+	}
+
+	public CoalescingFilter setMaxWaiters (int maxWaiters) {
+		this.maxWaiters = maxWaiters;
+		return this;
+	}
+
+	public CoalescingFilter setTimeout (long timeout, TimeUnit unit) {
+		this.timeout = unit.toMillis (timeout);
+		return this;
+	}
+
+	/**
+	 * Only coalesce requests that have the same value in the context under this name,
+	 * for responses that depend on who asks for them.
+	 */
+	public CoalescingFilter setPerPrincipal (String principal) {
+		this.principal = principal;
+		return this;
+	}
+
+	@Override
+	public RestStructure call (HttpRequest source, Chain<HttpRequest, RestStructure> chain) throws Exception {
+		if ( source.getMethod () != HttpRequest.Method.GET || isConditional (source) ) {
+			return chain.call (source);
+		}
+
+		ContentSerializer.Negotiation negotiation = serializer.negotiation (source.getHeader ("Accept"));
+		Object key = key (source, negotiation);
+
+		Flight flight = new Flight ();
+		Flight current = flights.putIfAbsent (key, flight);
+
+		if ( current == null ) {
+			return lead (key, flight, negotiation, source, chain);
+		}
+		if ( current.waiters.incrementAndGet () > maxWaiters ) {
+			current.waiters.decrementAndGet ();
+			return chain.call (source);
+		}
+
+		try {
+			return follow (current, source, chain);
+		} finally {
+			current.waiters.decrementAndGet ();
+		}
+	}
+
+	@Override
+	public CompletionStage<RestStructure> callAsync (
+		HttpRequest source, Chain<HttpRequest, CompletionStage<RestStructure>> chain
+	) throws Exception {
+		if ( source.getMethod () != HttpRequest.Method.GET || isConditional (source) ) {
+			return chain.call (source);
+		}
+
+		ContentSerializer.Negotiation negotiation = serializer.negotiation (source.getHeader ("Accept"));
+		Object key = key (source, negotiation);
+
+		Flight flight = new Flight ();
+		Flight current = flights.putIfAbsent (key, flight);
+
+		if ( current == null ) {
+			return leadAsync (key, flight, negotiation, source, chain);
+		}
+		if ( current.waiters.incrementAndGet () > maxWaiters ) {
+			current.waiters.decrementAndGet ();
+			return chain.call (source);
+		}
+
+		return current.response
+			.thenCompose ((response) -> followAsync (response, source, chain))
+			.whenComplete ((result, error) -> current.waiters.decrementAndGet ());
+	}
+
+	public int inFlight () {
+		return flights.size ();
+	}
+
+	public int waiting () {
+		int waiting = 0;
+		for ( Flight flight : flights.values () ) {
+			waiting += flight.waiters.get ();
+		}
+		return waiting;
+	}
+
+	private boolean isConditional (HttpRequest source) {
+		for ( String header : CONDITIONAL ) {
+			if ( source.getHeader (header) != null ) { return true; }
+		}
+		return false;
+	}
+
+	private Object key (HttpRequest source, ContentSerializer.Negotiation negotiation) {
+		Object key = RequestKeys.of (source, negotiation.getMime ());
+		if ( principal != null ) { key = Arrays.asList (key, source.context ().get (principal)); }
+		return key;
+	}
+
+	private RestStructure lead (Object key, Flight flight, ContentSerializer.Negotiation negotiation,
+		HttpRequest source, Chain<HttpRequest, RestStructure> chain
+	) throws Exception {
+		try {
+			return share (flight, negotiation, source, chain.call (source));
+		} catch (Exception exception) {
+			flight.response.completeExceptionally (exception);
+			throw exception;
+		} finally {
+			flights.remove (key, flight);
+		}
+	}
+
+	private CompletionStage<RestStructure> leadAsync (Object key, Flight flight,
+		ContentSerializer.Negotiation negotiation, HttpRequest source,
+		Chain<HttpRequest, CompletionStage<RestStructure>> chain
+	) throws Exception {
+		CompletionStage<RestStructure> stage;
+		try {
+			stage = chain.call (source);
+		} catch (Exception exception) {
+			flight.response.completeExceptionally (exception);
+			flights.remove (key, flight);
+			throw exception;
+		}
+
+		return stage.thenApply ((result) -> share (flight, negotiation, source, result)).whenComplete ((result, error) -> {
+			if ( error != null ) { flight.response.completeExceptionally (error); }
+			flights.remove (key, flight);
+		});
+	}
+
+	/**
+	 * Hands the response of the first request to the waiting requests, as long as it is
+	 * a successful one that is not meant for the first client alone.
+	 */
+	private RestStructure share (Flight flight, ContentSerializer.Negotiation negotiation,
+		HttpRequest source, RestStructure result
+	) {
+		HttpServletResponse response = source.getServletResponse ();
+		int status = response.getStatus ();
+		if ( result == null || (status != 0 && status != HttpServletResponse.SC_OK) || isPersonal (response) ) {
+			flight.response.complete (null);
+			return result;
+		}
+
+		RawContent content = result instanceof RawContent ? (RawContent) result : new RawContent (
+			negotiation.getContentType (),
+			negotiation.serialize (result)
+		);
+		flight.response.complete (new Response (content, headers (response)));
+		return content;
+	}
+
+	private boolean isPersonal (HttpServletResponse response) {
+		for ( String header : PERSONAL ) {
+			if ( response.containsHeader (header) ) { return true; }
+		}
+		return false;
+	}
+
+	private Map<String, Collection<String>> headers (HttpServletResponse response) {
+		Map<String, Collection<String>> headers = new LinkedHashMap<> ();
+		Collection<String> names = response.getHeaderNames ();
+		if ( names == null ) { return headers; }
+		for ( String name : names ) {
+			headers.put (name, new ArrayList<> (response.getHeaders (name)));
+		}
+		return headers;
+	}
+
+	private RestStructure follow (Flight flight, HttpRequest source, Chain<HttpRequest, RestStructure> chain)
+	throws Exception {
+		Response response;
+		try {
+			response = flight.response.get (timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException exception) {
+			throw new GatewayTimeoutException ("Timed out waiting for an identical request");
+		} catch (ExecutionException exception) {
+			throw CompletionStages.unwrap (exception);
+		}
+
+		if ( response == null ) {
+			return chain.call (source);
+		}
+		return answer (response, source);
+	}
+
+	private CompletionStage<RestStructure> followAsync (Response response, HttpRequest source,
+		Chain<HttpRequest, CompletionStage<RestStructure>> chain
+	) {
+		if ( response != null ) {
+			return CompletionStages.completed (answer (response, source));
+		}
+		try {
+			return chain.call (source);
+		} catch (Exception exception) {
+			return CompletionStages.failed (exception);
+		}
+	}
+
+	private RestStructure answer (Response response, HttpRequest source) {
+		HttpServletResponse servlet = source.getServletResponse ();
+		for ( Map.Entry<String, Collection<String>> header : response.headers.entrySet () ) {
+			if ( servlet.containsHeader (header.getKey ()) ) { continue; }
+			for ( String value : header.getValue () ) {
+				servlet.addHeader (header.getKey (), value);
+			}
+		}
+		return response.content;
+	}
+
+}
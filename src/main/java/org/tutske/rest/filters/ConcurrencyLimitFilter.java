@@ -0,0 +1,144 @@
+package org.tutske.rest.filters;
+
+import org.tutske.rest.AsyncRestFilter;
+import org.tutske.rest.HttpRequest;
+import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.exceptions.ServiceUnavailableException;
+import org.tutske.rest.internals.Chain;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+
+/**
+ * Limits how many requests are handled at the same time by the routes this filter is
+ * added to, and answers requests over the limit with a 503 right away. The limit follows
+ * the latency of the requests: it shrinks when requests take longer than they usually
+ * do, which means they are queueing up somewhere, and grows while they do not.
+ *
+ * Every completed request compares its latency with a long term average. The gradient is
+ * the tolerance times the average divided by the latency, clamped between a half and one.
+ * The next limit is the limit times the gradient plus the square root of the limit, which
+ * leaves room for a small queue. This is mixed into the current limit with the smoothing
+ * factor, `limit * (1 - smoothing) + next * smoothing`, and kept between the minimum and
+ * maximum limits. Requests that complete while less than half the limit is in use leave
+ * the limit as it is.
+ */
+public class ConcurrencyLimitFilter implements AsyncRestFilter {
+
+	private final AtomicInteger inFlight = new AtomicInteger ();
+	private final int minLimit;
+	private final int maxLimit;
+	private double tolerance = 1.5;
+	private double smoothing = 0.2;
+	private int window = 600;
+	private LongSupplier nanos = System::nanoTime;
+
+	private volatile double limit;
+	private double longRtt = 0;
+	private long samples = 0;
+
+	public ConcurrencyLimitFilter () {
+		this (20, 1, 1000);
+	}
+
+	public ConcurrencyLimitFilter (int initialLimit, int minLimit, int maxLimit) {
+		if ( minLimit <= 0 || initialLimit < minLimit || maxLimit < initialLimit ) {
+			throw new IllegalArgumentException (
+				"Limits should be positive and in order, got " + minLimit + ", " + initialLimit + ", " + maxLimit
+			);
+		}
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+	}
+
+	/**
+	 * How much slower than the long term average requests may be before the limit goes
+	 * down.
+	 */
+	public ConcurrencyLimitFilter setTolerance (double tolerance) {
+		this.tolerance = tolerance;
+		return this;
+	}
+
+	public ConcurrencyLimitFilter setSmoothing (double smoothing) {
+		this.smoothing = smoothing;
+		return this;
+	}
+
+	/**
+	 * The number of requests that the long term average latency is taken over.
+	 */
+	public ConcurrencyLimitFilter setWindow (int window) {
+		this.window = window;
+		return this;
+	}
+
+	ConcurrencyLimitFilter setNanos (LongSupplier nanos) {
+		this.nanos = nanos;
+		return this;
+	}
+
+	public int getLimit () {
+		return (int) limit;
+	}
+
+	public int getInFlight () {
+		return inFlight.get ();
+	}
+
+	@Override
+	public RestStructure call (HttpRequest source, Chain<HttpRequest, RestStructure> chain) throws Exception {
+		long start = acquire ();
+		try {
+			return chain.call (source);
+		} finally {
+			release (start);
+		}
+	}
+
+	@Override
+	public CompletionStage<RestStructure> callAsync (
+		HttpRequest source, Chain<HttpRequest, CompletionStage<RestStructure>> chain
+	) throws Exception {
+		long start = acquire ();
+		try {
+			return chain.call (source).whenComplete ((result, error) -> release (start));
+		} catch (Exception | Error exception) {
+			release (start);
+			throw exception;
+		}
+	}
+
+	private long acquire () {
+		if ( inFlight.incrementAndGet () > (int) limit ) {
+			inFlight.decrementAndGet ();
+			throw new ServiceUnavailableException ("Too many requests in progress, the limit is " + (int) limit);
+		}
+		return nanos.getAsLong ();
+	}
+
+	private void release (long start) {
+		long rtt = Math.max (1, nanos.getAsLong () - start);
+		int current = inFlight.getAndDecrement ();
+		sample (rtt, current);
+	}
+
+	private synchronized void sample (long rtt, int current) {
+		samples++;
+		longRtt = samples == 1 ? rtt : longRtt + (rtt - longRtt) / Math.min (samples, window);
+		if ( longRtt / rtt > 2 ) {
+			longRtt = longRtt * 0.95;
+		}
+
+		if ( current < limit / 2 ) { return; }
+
+		double gradient = Math.max (0.5, Math.min (1.0, tolerance * longRtt / rtt));
+		double next = limit * gradient + Math.sqrt (limit);
+		next = limit * (1 - smoothing) + next * smoothing;
+		limit = Math.max (minLimit, Math.min (maxLimit, next));
+	}
+
+}
@@ -0,0 +1,102 @@
+package org.tutske.rest.filters;
+
+import org.tutske.rest.AsyncRestFilter;
+import org.tutske.rest.Deadline;
+import org.tutske.rest.HttpRequest;
+import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.exceptions.InputException;
+import org.tutske.rest.internals.Chain;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Gives requests a deadline, from the time out of the routes the filter is added to and
+ * from the `X-Request-Timeout` header of the request, whichever is earlier. The header
+ * holds a number of milliseconds, or of seconds with an `s` suffix.
+ *
+ * When the deadline passed by the time the rest of the chain returns, the result is
+ * dropped and the request is answered with a gateway timeout instead.
+ */
+public class DeadlineFilter implements AsyncRestFilter {
+
+	private final long timeout;
+	private String header = "X-Request-Timeout";
+
+	public DeadlineFilter (long timeout, TimeUnit unit) {
+		this.timeout = unit.toMillis (timeout);
+	}
+
+	/**
+	 * Without a time out of its own, so only requests with the header get a deadline.
+	 */
+	public DeadlineFilter () {
+		this.timeout = -1;
+	}
+
+	public DeadlineFilter setHeader (String header) {
+		this.header = header;
+		return this;
+	}
+
+	@Override
+	public RestStructure call (HttpRequest source, Chain<HttpRequest, RestStructure> chain) throws Exception {
+		Deadline deadline = assign (source);
+		RestStructure result = chain.call (source);
+		if ( deadline != null ) { deadline.check (); }
+		return result;
+	}
+
+	@Override
+	public CompletionStage<RestStructure> callAsync (
+		HttpRequest source, Chain<HttpRequest, CompletionStage<RestStructure>> chain
+	) throws Exception {
+		Deadline deadline = assign (source);
+		return chain.call (source).thenApply ((result) -> {
+			if ( deadline != null ) { deadline.check (); }
+			return result;
+		});
+	}
+
+	private Deadline assign (HttpRequest source) {
+		Deadline deadline = source.getDeadline ();
+		if ( timeout >= 0 ) {
+			deadline = Deadline.after (timeout, TimeUnit.MILLISECONDS).earliest (deadline);
+		}
+
+		String requested = source.getHeader (header);
+		if ( requested != null && ! requested.isEmpty () ) {
+			deadline = Deadline.after (parse (requested), TimeUnit.MILLISECONDS).earliest (deadline);
+		}
+
+		if ( deadline != null ) {
+			source.setDeadline (deadline);
+			deadline.check ();
+		}
+		return deadline;
+	}
+
+	private long parse (String value) {
+		String trimmed = value.trim ();
+		long parsed;
+		try {
+			if ( trimmed.endsWith ("ms") ) {
+				parsed = Long.parseLong (trimmed.substring (0, trimmed.length () - 2).trim ());
+			} else if ( trimmed.endsWith ("s") ) {
+				long seconds = Long.parseLong (trimmed.substring (0, trimmed.length () - 1).trim ());
+				parsed = Math.multiplyExact (1000, seconds);
+			} else {
+				parsed = Long.parseLong (trimmed);
+			}
+		} catch (NumberFormatException | ArithmeticException exception) {
+			throw new InputException ("Invalid " + header + " header: " + value);
+		}
+
+		if ( parsed < 0 ) {
+			throw new InputException ("Invalid " + header + " header, it should not be negative: " + value);
+		}
+		return parsed;
+	}
+
+}
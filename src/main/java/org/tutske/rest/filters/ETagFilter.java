@@ -0,0 +1,108 @@
+package org.tutske.rest.filters;
+
+import org.tutske.rest.AsyncRestFilter;
+import org.tutske.rest.HttpRequest;
+import org.tutske.rest.data.RawContent;
+import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.internals.Chain;
+import org.tutske.rest.internals.ContentSerializer;
+import org.tutske.rest.internals.StructureHash;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.CompletionStage;
+
+
+/**
+ * Gives successful GET and HEAD responses an ETag, and answers with a 304 without a body
+ * when the request already has a matching `If-None-Match`. The tag is a hash over the
+ * returned structure, so nothing is serialized to compare it. Controllers that know the
+ * version of what they return can put it in the context under `version`, which is used
+ * instead of the hash.
+ *
+ * The tags are weak, since they describe the content rather than the exact bytes, which
+ * differ between for instance compressed and plain responses. They do include the
+ * negotiated mime type, so the json and the xml of the same structure get different
+ * tags, and responses vary on the accept header.
+ */
+public class ETagFilter implements AsyncRestFilter {
+
+	private final ContentSerializer serializer;
+	private final String version;
+
+	public ETagFilter (ContentSerializer serializer) {
+		this (serializer, "version");
+	}
+
+	public ETagFilter (ContentSerializer serializer, String version) {
+		this.serializer = serializer;
+		this.version = version;
+	}
+
+	@Override
+	public RestStructure call (HttpRequest source, Chain<HttpRequest, RestStructure> chain) throws Exception {
+		if ( ! applies (source) ) {
+			return chain.call (source);
+		}
+		return tagged (source, chain.call (source));
+	}
+
+	@Override
+	public CompletionStage<RestStructure> callAsync (
+		HttpRequest source, Chain<HttpRequest, CompletionStage<RestStructure>> chain
+	) throws Exception {
+		if ( ! applies (source) ) {
+			return chain.call (source);
+		}
+		return chain.call (source).thenApply ((result) -> tagged (source, result));
+	}
+
+	private boolean applies (HttpRequest source) {
+		HttpRequest.Method method = source.getMethod ();
+		return method == HttpRequest.Method.GET || method == HttpRequest.Method.HEAD;
+	}
+
+	private RestStructure tagged (HttpRequest source, RestStructure result) {
+		HttpServletResponse response = source.getServletResponse ();
+		int status = response.getStatus ();
+		if ( result == null || (status != 0 && status != HttpServletResponse.SC_OK) ) {
+			return result;
+		}
+
+		String etag = tag (source, result);
+		response.addHeader ("Vary", "Accept");
+		response.setHeader ("ETag", etag);
+
+		if ( matches (source.getHeader ("If-None-Match"), etag) ) {
+			response.setStatus (HttpServletResponse.SC_NOT_MODIFIED);
+		}
+
+		return result;
+	}
+
+	private String tag (HttpRequest source, RestStructure result) {
+		String mime = result instanceof RawContent ?
+			((RawContent) result).getContentType () :
+			serializer.negotiate (source.getHeader ("Accept"));
+
+		Object version = source.context ().get (this.version);
+		if ( version != null ) {
+			String representation = Integer.toHexString (mime.hashCode ());
+			return "W/\"v" + version.toString ().replace ("\"", "") + "-" + representation + "\"";
+		}
+		return "W/\"" + Long.toHexString (StructureHash.of (result, mime)) + "\"";
+	}
+
+	private boolean matches (String header, String etag) {
+		if ( header == null ) { return false; }
+
+		String opaque = etag.substring (2);
+		for ( String candidate : header.split (",") ) {
+			String tag = candidate.trim ();
+			if ( "*".equals (tag) ) { return true; }
+			if ( tag.startsWith ("W/") ) { tag = tag.substring (2); }
+			if ( tag.equals (opaque) ) { return true; }
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,120 @@
+package org.tutske.rest.filters;
+
+import org.tutske.rest.AsyncRestFilter;
+import org.tutske.rest.HttpRequest;
+import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.exceptions.TooManyRequestsException;
+import org.tutske.rest.internals.Chain;
+import org.tutske.utils.Clock;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+
+/**
+ * Token bucket per client, that turns requests away with a 429 once a client used up its
+ * tokens. The clients are told apart by a key, by default the principal that the jwt
+ * filter put in the context of the request, or the remote address for requests without
+ * one.
+ *
+ * Each bucket is a single atomic number, the moment at which it would be full again, so
+ * taking a token is one compare and set. Buckets that filled up again are dropped from
+ * time to time.
+ */
+public class RateLimitFilter implements AsyncRestFilter {
+
+	public static Function<HttpRequest, Object> principal () {
+		return principal ("principal");
+	}
+
+	public static Function<HttpRequest, Object> principal (String name) {
+		return (request) -> {
+			Object principal = request.context ().get (name);
+			return principal != null ? principal : request.getServletRequest ().getRemoteAddr ();
+		};
+	}
+
+	public static Function<HttpRequest, Object> address () {
+		return (request) -> request.getServletRequest ().getRemoteAddr ();
+	}
+
+	public static Function<HttpRequest, Object> path () {
+		return HttpRequest::getUri;
+	}
+
+	private final ConcurrentMap<Object, AtomicLong> buckets = new ConcurrentHashMap<> ();
+	private final AtomicLong sweep = new AtomicLong ();
+	private final Function<HttpRequest, Object> key;
+	private final long interval;
+	private final long burst;
+	private Clock clock = new Clock.SystemClock ();
+
+	/**
+	 * Allow `permits` requests per `period` on average, in bursts of at most `capacity`
+	 * requests.
+	 */
+	public RateLimitFilter (long permits, long period, TimeUnit unit, long capacity) {
+		this (principal (), permits, period, unit, capacity);
+	}
+
+	public RateLimitFilter (Function<HttpRequest, Object> key, long permits, long period, TimeUnit unit, long capacity) {
+		if ( permits <= 0 || period <= 0 || capacity <= 0 ) {
+			throw new IllegalArgumentException ("Rate limits should be positive");
+		}
+		this.key = key;
+		this.interval = Math.max (1, unit.toMicros (period) / permits);
+		this.burst = interval * capacity;
+	}
+
+	public RateLimitFilter setClock (Clock clock) {
+		this.clock = clock;
+		return this;
+	}
+
+	@Override
+	public RestStructure call (HttpRequest source, Chain<HttpRequest, RestStructure> chain) throws Exception {
+		acquire (source);
+		return chain.call (source);
+	}
+
+	@Override
+	public CompletionStage<RestStructure> callAsync (
+		HttpRequest source, Chain<HttpRequest, CompletionStage<RestStructure>> chain
+	) throws Exception {
+		acquire (source);
+		return chain.call (source);
+	}
+
+	public int size () {
+		return buckets.size ();
+	}
+
+	private void acquire (HttpRequest source) {
+		long now = clock.now ().getTime () * 1000;
+		Object client = key.apply (source);
+		AtomicLong bucket = buckets.computeIfAbsent (client == null ? "" : client, (k) -> new AtomicLong (now));
+
+		while ( true ) {
+			long full = bucket.get ();
+			long next = Math.max (full, now) + interval;
+			if ( next - now > burst ) {
+				long wait = next - now - burst;
+				throw new TooManyRequestsException ((wait + 999999) / 1000000);
+			}
+			if ( bucket.compareAndSet (full, next) ) { break; }
+		}
+
+		evictIdle (now);
+	}
+
+	private void evictIdle (long now) {
+		long last = sweep.get ();
+		if ( now - last < Math.max (burst, 1000000) || ! sweep.compareAndSet (last, now) ) { return; }
+		buckets.values ().removeIf ((bucket) -> bucket.get () <= now);
+	}
+
+}
@@ -0,0 +1,43 @@
+package org.tutske.rest.filters;
+
+import org.tutske.rest.HttpRequest;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+/**
+ * Keys for requests that get the same response: the url, which holds the route and its
+ * path parameters, the query and the negotiated mime type. The parameters of the query
+ * are kept as they were sent, duplicates included, only ordered by their names. Values
+ * of a parameter that occurs more than once keep their order, since the controller sees
+ * them in that order.
+ */
+class RequestKeys {
+
+	private static final Comparator<String> BY_NAME = Comparator.comparing (RequestKeys::name);
+
+	public static String of (HttpRequest source, String mime) {
+		StringBuilder key = new StringBuilder (source.getUri ());
+
+		String query = source.getServletRequest ().getQueryString ();
+		if ( query != null && ! query.isEmpty () ) {
+			String [] parameters = query.split ("&");
+			Arrays.sort (parameters, BY_NAME);
+
+			char separator = '?';
+			for ( String parameter : parameters ) {
+				key.append (separator).append (parameter);
+				separator = '&';
+			}
+		}
+
+		return key.append (' ').append (mime).toString ();
+	}
+
+	private static String name (String parameter) {
+		int index = parameter.indexOf ('=');
+		return index < 0 ? parameter : parameter.substring (0, index);
+	}
+
+}
@@ -0,0 +1,280 @@
+package org.tutske.rest.filters;
+
+import org.tutske.rest.AsyncRestFilter;
+import org.tutske.rest.HttpRequest;
+import org.tutske.rest.data.RawContent;
+import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.internals.Chain;
+import org.tutske.rest.internals.CompletionStages;
+import org.tutske.rest.internals.ContentSerializer;
+import org.tutske.utils.Clock;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Keeps the serialized responses of GET requests in memory for a while, so that a hit
+ * skips the rest of the chain, the controller and the serializer. Responses are kept per
+ * url, which holds the route and its path parameters, per query with the parameters
+ * ordered by name and per negotiated content type.
+ *
+ * Only responses that complete with a 200 status are kept, without the headers that the
+ * controller set. Once a response is older than the time to live it may still be given
+ * out for the stale while revalidate period, while the first request to see it stale
+ * runs the chain to refresh it.
+ *
+ * The responses are spread over a number of stripes that each keep their own access
+ * order under their own lock, so requests for different urls rarely wait on each other.
+ * Every response remembers when it was last used, and when the cache is full the oldest
+ * of the least recently used responses of the stripes makes room.
+ */
+public class ResponseCacheFilter implements AsyncRestFilter {
+
+	private static final int STRIPES = 16;
+
+	private static class Entry {
+		private final RawContent content;
+		private final long bytes;
+		private final long expires;
+		private final long stale;
+		private final AtomicBoolean refreshing = new AtomicBoolean (false);
+		private long used = System.nanoTime ();
+
+		public Entry (RawContent content, long bytes, long expires, long stale) {
+			this.content = content;
+			this.bytes = bytes;
+			this.expires = expires;
+			this.stale = stale;
+		}
+	}
+
+	private final ContentSerializer serializer;
+	private final long ttl;
+	private final Map<String, Entry> [] stripes = new Map [STRIPES];
+	private final AtomicLong bytes = new AtomicLong ();
+	private final Object evicting = new Object ();
+	private final LongAdder hits = new LongAdder ();
+	private final LongAdder misses = new LongAdder ();
+	private final LongAdder evictions = new LongAdder ();
+
+	private volatile long maxBytes = 16 * 1024 * 1024;
+	private long staleWhileRevalidate = 0;
+	private Clock clock = new Clock.SystemClock ();
+
+	public ResponseCacheFilter (ContentSerializer serializer, long ttl, TimeUnit unit) {
+		this.serializer = serializer;
+		this.ttl = unit.toMillis (ttl);
+		for ( int i = 0; i < STRIPES; i++ ) {
+			stripes[i] = new LinkedHashMap<> (16, 0.75f, true);
+		}
+	}
+
+	/**
+	 * The most memory the kept responses may take, counted as two bytes per character.
+	 * The responses that were used least recently make room for new ones.
+	 */
+	public ResponseCacheFilter setMaxBytes (long maxBytes) {
+		if ( maxBytes <= 0 ) {
+			throw new IllegalArgumentException ("Cache size should be positive, got " + maxBytes);
+		}
+		this.maxBytes = maxBytes;
+		evict ();
+		return this;
+	}
+
+	public ResponseCacheFilter setStaleWhileRevalidate (long period, TimeUnit unit) {
+		this.staleWhileRevalidate = unit.toMillis (period);
+		return this;
+	}
+
+	public ResponseCacheFilter setClock (Clock clock) {
+		this.clock = clock;
+		return this;
+	}
+
+	@Override
+	public RestStructure call (HttpRequest source, Chain<HttpRequest, RestStructure> chain) throws Exception {
+		if ( source.getMethod () != HttpRequest.Method.GET ) {
+			return chain.call (source);
+		}
+
+		ContentSerializer.Negotiation negotiation = serializer.negotiation (source.getHeader ("Accept"));
+		String key = RequestKeys.of (source, negotiation.getMime ());
+		long now = clock.now ().getTime ();
+
+		Entry entry = lookup (key);
+		if ( serves (entry, now) ) {
+			return entry.content;
+		}
+
+		try {
+			return store (key, source, negotiation, chain.call (source), now);
+		} finally {
+			if ( entry != null ) { entry.refreshing.set (false); }
+		}
+	}
+
+	@Override
+	public CompletionStage<RestStructure> callAsync (
+		HttpRequest source, Chain<HttpRequest, CompletionStage<RestStructure>> chain
+	) throws Exception {
+		if ( source.getMethod () != HttpRequest.Method.GET ) {
+			return chain.call (source);
+		}
+
+		ContentSerializer.Negotiation negotiation = serializer.negotiation (source.getHeader ("Accept"));
+		String key = RequestKeys.of (source, negotiation.getMime ());
+		long now = clock.now ().getTime ();
+
+		Entry entry = lookup (key);
+		if ( serves (entry, now) ) {
+			return CompletionStages.completed (entry.content);
+		}
+
+		try {
+			return chain.call (source)
+				.thenApply ((result) -> store (key, source, negotiation, result, now))
+				.whenComplete ((result, error) -> { if ( entry != null ) { entry.refreshing.set (false); } });
+		} catch (Exception | Error exception) {
+			if ( entry != null ) { entry.refreshing.set (false); }
+			throw exception;
+		}
+	}
+
+	public long size () {
+		long size = 0;
+		for ( Map<String, Entry> stripe : stripes ) {
+			synchronized ( stripe ) { size += stripe.size (); }
+		}
+		return size;
+	}
+
+	public long bytes () {
+		return bytes.get ();
+	}
+
+	public long hits () {
+		return hits.sum ();
+	}
+
+	public long misses () {
+		return misses.sum ();
+	}
+
+	public long evictions () {
+		return evictions.sum ();
+	}
+
+	public void invalidate () {
+		for ( Map<String, Entry> stripe : stripes ) {
+			long removed = 0;
+			synchronized ( stripe ) {
+				for ( Entry entry : stripe.values () ) { removed += entry.bytes; }
+				stripe.clear ();
+			}
+			bytes.addAndGet (-removed);
+		}
+	}
+
+	private Entry lookup (String key) {
+		Map<String, Entry> stripe = stripe (key);
+		synchronized ( stripe ) {
+			Entry entry = stripe.get (key);
+			if ( entry != null ) { entry.used = System.nanoTime (); }
+			return entry;
+		}
+	}
+
+	/**
+	 * Whether the entry can be given out. Stale entries only are while another request
+	 * is refreshing them, otherwise the request that sees it stale takes the refresh.
+	 */
+	private boolean serves (Entry entry, long now) {
+		if ( entry != null && now < entry.expires ) {
+			hits.increment ();
+			return true;
+		}
+		if ( entry != null && now < entry.stale && ! entry.refreshing.compareAndSet (false, true) ) {
+			hits.increment ();
+			return true;
+		}
+		misses.increment ();
+		return false;
+	}
+
+	private RestStructure store (String key, HttpRequest source, ContentSerializer.Negotiation negotiation,
+		RestStructure result, long now
+	) {
+		int status = source.getServletResponse ().getStatus ();
+		if ( result == null || (status != 0 && status != HttpServletResponse.SC_OK) ) {
+			return result;
+		}
+
+		RawContent content = result instanceof RawContent ? (RawContent) result : new RawContent (
+			negotiation.getContentType (),
+			negotiation.serialize (result)
+		);
+
+		long size = 2L * (key.length () + content.getContent ().length ());
+		Entry entry = new Entry (content, size, now + ttl, now + ttl + staleWhileRevalidate);
+
+		if ( size > maxBytes ) { return content; }
+
+		Map<String, Entry> stripe = stripe (key);
+		Entry previous;
+		synchronized ( stripe ) { previous = stripe.put (key, entry); }
+		bytes.addAndGet (size - (previous == null ? 0 : previous.bytes));
+		evict ();
+
+		return content;
+	}
+
+	/**
+	 * Drops responses until the cache fits again. The least recently used response of
+	 * every stripe is first in its access order, the one of those that was used longest
+	 * ago goes first.
+	 */
+	private void evict () {
+		if ( bytes.get () <= maxBytes ) { return; }
+
+		synchronized ( evicting ) {
+			while ( bytes.get () > maxBytes ) {
+				Map<String, Entry> oldest = null;
+				long used = 0;
+				for ( Map<String, Entry> stripe : stripes ) {
+					synchronized ( stripe ) {
+						if ( stripe.isEmpty () ) { continue; }
+						Entry eldest = stripe.values ().iterator ().next ();
+						if ( oldest == null || eldest.used - used < 0 ) {
+							oldest = stripe;
+							used = eldest.used;
+						}
+					}
+				}
+				if ( oldest == null ) { return; }
+
+				synchronized ( oldest ) {
+					Iterator<Entry> iterator = oldest.values ().iterator ();
+					if ( ! iterator.hasNext () ) { continue; }
+					bytes.addAndGet (-iterator.next ().bytes);
+					iterator.remove ();
+				}
+				evictions.increment ();
+			}
+		}
+	}
+
+	private Map<String, Entry> stripe (String key) {
+		int hash = key.hashCode ();
+		return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+	}
+
+}
@@ -3,24 +3,53 @@ package org.tutske.rest.internals;
 import org.tutske.rest.Filter;
 import org.tutske.rest.ThrowingFunction;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 
+/**
+ * Calls the filters one after the other and finally the destination. The filters are kept
+ * in an array that can be shared between chains, a chain itself only keeps track of how
+ * far the call has come, so a new chain is needed for every call.
+ */
 public class Chain<S, T> {
 
+	private static final Filter [] NONE = {};
+
 	private int current = 0;
 	private int depth = 0;
-	private List<Filter<S, T>> routes;
-	private ThrowingFunction<S, T> destination;
+	private final Filter<S, T> [] filters;
+	private final int size;
+	private final ThrowingFunction<S, T> destination;
 
 	public Chain (ThrowingFunction<S, T> destination) {
-		this (destination, new LinkedList<> ());
+		this (destination, NONE, 0);
 	}
 
 	public Chain (ThrowingFunction<S, T> destination, List<Filter<S, T>> routes) {
+		this (destination, spread (routes));
+	}
+
+	/**
+	 * Chain over the filters without copying them, the array should not change while the
+	 * chain is in use.
+	 */
+	public Chain (ThrowingFunction<S, T> destination, Filter<S, T> [] filters) {
+		this (destination, filters, filters.length);
+	}
+
+	Chain (ThrowingFunction<S, T> destination, Filter<S, T> [] filters, int size) {
 		this.destination = destination;
-		this.routes = routes;
+		this.filters = filters;
+		this.size = size;
+	}
+
+	private static <S, T> Filter<S, T> [] spread (List<Filter<S, T>> filters) {
+		List<Filter<S, T>> spread = new ArrayList<> (filters.size ());
+		for ( Filter<S, T> filter : filters ) {
+			spread.addAll (Filter.Combined.spread (filter));
+		}
+		return spread.toArray (new Filter [spread.size ()]);
 	}
 
 	public T call (S source) throws Exception {
@@ -34,10 +63,10 @@ public class Chain<S, T> {
 		depth++;
 
 		T result;
-		if ( index == routes.size ()) {
+		if ( index == size ) {
 			result = destination.apply (source);
 		} else {
-			result = this.routes.get (index).call (source, this);
+			result = filters[index].call (source, this);
 		}
 
 		depth--;
@@ -0,0 +1,43 @@
+package org.tutske.rest.internals;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+
+public class CompletionStages {
+
+	public static <T> CompletionStage<T> completed (T value) {
+		return CompletableFuture.completedFuture (value);
+	}
+
+	public static <T> CompletionStage<T> failed (Throwable exception) {
+		CompletableFuture<T> future = new CompletableFuture<> ();
+		future.completeExceptionally (exception);
+		return future;
+	}
+
+	/**
+	 * Block until the stage completes, and throw what it failed with rather than the
+	 * wrapper the future puts around it.
+	 */
+	public static <T> T await (CompletionStage<T> stage) throws Exception {
+		try {
+			return stage.toCompletableFuture ().get ();
+		} catch ( ExecutionException exception ) {
+			throw unwrap (exception);
+		}
+	}
+
+	public static Exception unwrap (Throwable exception) {
+		while ( (exception instanceof CompletionException || exception instanceof ExecutionException)
+			&& exception.getCause () != null
+		) {
+			exception = exception.getCause ();
+		}
+		if ( exception instanceof Error ) { throw (Error) exception; }
+		return (Exception) exception;
+	}
+
+}
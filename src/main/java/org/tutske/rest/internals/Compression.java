@@ -0,0 +1,260 @@
+package org.tutske.rest.internals;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+
+/**
+ * Gzip or deflate compression of responses, for clients that accept it and for content
+ * types that are on the list. The first `minSize` bytes of a response are held back, a
+ * response that ends before that is sent as it is. Longer responses are compressed while
+ * they are written, so there never is a compressed copy of the whole response in memory.
+ * Deflaters are kept in a pool and reused between responses.
+ */
+public class Compression {
+
+	private static final int MAX_POOLED = 64;
+	private static final byte [] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+	public static class Output implements Closeable {
+		private final Writer writer;
+		private final boolean owned;
+
+		private Output (Writer writer, boolean owned) {
+			this.writer = writer;
+			this.owned = owned;
+		}
+
+		public Writer writer () {
+			return writer;
+		}
+
+		@Override
+		public void close () throws IOException {
+			if ( owned ) { writer.close (); }
+			else { writer.flush (); }
+		}
+	}
+
+	private final Set<String> types = new HashSet<> ();
+	private final Queue<Deflater> gzip = new ConcurrentLinkedQueue<> ();
+	private final Queue<Deflater> deflate = new ConcurrentLinkedQueue<> ();
+	private final AtomicInteger pooled = new AtomicInteger ();
+	private final int minSize;
+	private final int level;
+
+	/**
+	 * Compression that leaves every response as it is.
+	 */
+	public static Compression none () {
+		return new Compression (0, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	public Compression () {
+		this (1024, Deflater.DEFAULT_COMPRESSION, "application/json", "application/xml", "application/javascript");
+	}
+
+	public Compression (int minSize, int level, String ... types) {
+		this.minSize = minSize;
+		this.level = level;
+		this.types.addAll (Arrays.asList (types));
+	}
+
+	/**
+	 * Where the content of the response should be written to, closing the output makes
+	 * sure everything is sent.
+	 */
+	public Output open (HttpServletRequest request, HttpServletResponse response, String contentType)
+	throws IOException {
+		if ( ! types.contains (contentType) ) {
+			return new Output (response.getWriter (), false);
+		}
+
+		response.addHeader ("Vary", "Accept-Encoding");
+		String encoding = negotiate (request.getHeader ("Accept-Encoding"));
+		if ( encoding == null ) {
+			return new Output (response.getWriter (), false);
+		}
+
+		String charset = charset (response);
+		OutputStream stream = new CompressingStream (response, encoding);
+		return new Output (new OutputStreamWriter (stream, charset), true);
+	}
+
+	/**
+	 * The charset to encode compressed content with. A charset that was set explicitly
+	 * wins, otherwise it is utf-8, as the writer of the response assumes for json. The
+	 * charset of the response is set as well, so the content type says what was written.
+	 */
+	private String charset (HttpServletResponse response) {
+		String type = response.getContentType ();
+		if ( type != null && type.toLowerCase ().contains ("charset=") ) {
+			return response.getCharacterEncoding ();
+		}
+		response.setCharacterEncoding ("UTF-8");
+		return "UTF-8";
+	}
+
+	/**
+	 * The encoding to use for a request with this `Accept-Encoding` header, gzip before
+	 * deflate when the client likes them as much, or null when it accepts neither.
+	 */
+	String negotiate (String accept) {
+		if ( accept == null ) { return null; }
+
+		double gzip = -1;
+		double deflate = -1;
+		double any = -1;
+
+		for ( String part : accept.split (",") ) {
+			String [] pieces = part.split (";");
+			String name = pieces[0].trim ().toLowerCase ();
+
+			double q = 1;
+			for ( int i = 1; i < pieces.length; i++ ) {
+				String piece = pieces[i].trim ();
+				if ( ! piece.startsWith ("q=") ) { continue; }
+				try { q = Double.parseDouble (piece.substring (2)); }
+				catch (NumberFormatException ignore) { q = 0; }
+			}
+
+			if ( "gzip".equals (name) ) { gzip = q; }
+			else if ( "deflate".equals (name) ) { deflate = q; }
+			else if ( "*".equals (name) ) { any = q; }
+		}
+
+		if ( gzip < 0 ) { gzip = any; }
+		if ( deflate < 0 ) { deflate = any; }
+
+		if ( gzip > 0 && gzip >= deflate ) { return "gzip"; }
+		if ( deflate > 0 ) { return "deflate"; }
+		return null;
+	}
+
+	private Deflater acquire (String encoding) {
+		Deflater deflater = ("gzip".equals (encoding) ? gzip : deflate).poll ();
+		if ( deflater != null ) {
+			pooled.decrementAndGet ();
+			return deflater;
+		}
+		return new Deflater (level, "gzip".equals (encoding));
+	}
+
+	private void release (String encoding, Deflater deflater) {
+		if ( pooled.incrementAndGet () > MAX_POOLED ) {
+			pooled.decrementAndGet ();
+			deflater.end ();
+			return;
+		}
+		deflater.reset ();
+		("gzip".equals (encoding) ? gzip : deflate).offer (deflater);
+	}
+
+	private class CompressingStream extends OutputStream {
+
+		private final HttpServletResponse response;
+		private final String encoding;
+		private byte [] held = new byte [minSize];
+		private int count = 0;
+		private OutputStream out;
+		private Deflater deflater;
+		private CRC32 crc;
+		private byte [] buffer;
+		private boolean closed = false;
+
+		public CompressingStream (HttpServletResponse response, String encoding) {
+			this.response = response;
+			this.encoding = encoding;
+		}
+
+		@Override
+		public void write (int b) throws IOException {
+			write (new byte [] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write (byte [] bytes, int offset, int length) throws IOException {
+			if ( deflater == null && count + length <= held.length ) {
+				System.arraycopy (bytes, offset, held, count, length);
+				count += length;
+				return;
+			}
+
+			if ( deflater == null ) { start (); }
+			compress (bytes, offset, length);
+		}
+
+		@Override
+		public void close () throws IOException {
+			if ( closed ) { return; }
+			closed = true;
+
+			if ( deflater == null ) {
+				out = response.getOutputStream ();
+				out.write (held, 0, count);
+				out.flush ();
+				return;
+			}
+
+			try {
+				deflater.finish ();
+				while ( ! deflater.finished () ) {
+					out.write (buffer, 0, deflater.deflate (buffer));
+				}
+				if ( crc != null ) { writeTrailer (); }
+				out.flush ();
+			} finally {
+				release (encoding, deflater);
+				deflater = null;
+			}
+		}
+
+		private void start () throws IOException {
+			response.setHeader ("Content-Encoding", encoding);
+			out = response.getOutputStream ();
+			deflater = acquire (encoding);
+			buffer = new byte [8192];
+
+			if ( "gzip".equals (encoding) ) {
+				crc = new CRC32 ();
+				out.write (GZIP_HEADER);
+			}
+
+			compress (held, 0, count);
+			held = null;
+		}
+
+		private void compress (byte [] bytes, int offset, int length) throws IOException {
+			if ( length == 0 ) { return; }
+			if ( crc != null ) { crc.update (bytes, offset, length); }
+
+			deflater.setInput (bytes, offset, length);
+			while ( ! deflater.needsInput () ) {
+				out.write (buffer, 0, deflater.deflate (buffer));
+			}
+		}
+
+		private void writeTrailer () throws IOException {
+			long value = crc.getValue ();
+			long size = deflater.getBytesRead ();
+			out.write (new byte [] {
+				(byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24),
+				(byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)
+			});
+		}
+	}
+
+}
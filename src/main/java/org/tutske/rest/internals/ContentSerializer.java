@@ -3,14 +3,105 @@ package org.tutske.rest.internals;
 import org.tutske.rest.data.RestStructure;
 
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Picks the serializer for a request from its accept header. The media ranges in the
+ * header are ordered by their quality value, and for equal qualities by how specific they
+ * are, so `application/xml` goes before `application/*`, which goes before the range
+ * that matches any type. Every known type gets the quality of the most specific range
+ * that matches it, and the type with the highest quality wins. A quality of zero rules a
+ * type out. When the header accepts none of the known types the default type is used.
+ *
+ * The outcome for an accept header is kept, so a header is only parsed the first time it
+ * is seen. At most `MAX_CACHED` headers are kept, headers after that are negotiated every
+ * time they come in.
+ */
+public class ContentSerializer {
 
+	private static final int MAX_CACHED = 256;
+
+	/**
+	 * The outcome of negotiating the content type for an accept header.
+	 */
+	public static class Negotiation {
+		private final String mime;
+		private final String contentType;
+		private final Map<String, String> attributes;
+		private final Serializer serializer;
+
+		private Negotiation (String contentType, Map<String, String> attributes, Serializer serializer) {
+			StringBuilder mime = new StringBuilder (contentType);
+			for ( Entry<String, String> attribute : attributes.entrySet () ) {
+				mime.append ("; ").append (attribute.getKey ()).append ('=').append (attribute.getValue ());
+			}
 
-public class ContentSerializer {
+			this.mime = mime.toString ();
+			this.contentType = contentType;
+			this.attributes = Collections.unmodifiableMap (attributes);
+			this.serializer = serializer;
+		}
+
+		/**
+		 * The content type together with its attributes.
+		 */
+		public String getMime () {
+			return mime;
+		}
+
+		public String getContentType () {
+			return contentType;
+		}
+
+		public Map<String, String> getAttributes () {
+			return attributes;
+		}
 
-	private final Map<String, Serializer> serializers = new HashMap<> ();
+		public String serialize (RestStructure structure) {
+			return serializer.serialize (structure, attributes);
+		}
+
+		public void serialize (RestStructure structure, Writer writer) {
+			serializer.serialize (structure, attributes, writer);
+		}
+	}
+
+	private static class Range {
+		private final String type;
+		private final Map<String, String> attributes;
+		private final double quality;
+		private final int index;
+
+		public Range (String type, Map<String, String> attributes, double quality, int index) {
+			this.type = type;
+			this.attributes = attributes;
+			this.quality = quality;
+			this.index = index;
+		}
+
+		public int specificity () {
+			if ( type.equals ("*/*") ) { return 0; }
+			if ( type.endsWith ("/*") ) { return 1; }
+			return 2;
+		}
+
+		public boolean matches (String candidate) {
+			if ( type.equals ("*/*") || type.equals (candidate) ) { return true; }
+			return type.endsWith ("/*") && candidate.startsWith (type.substring (0, type.length () - 1));
+		}
+	}
+
+	private final Map<String, Serializer> serializers = new LinkedHashMap<> ();
+	private final ConcurrentMap<String, Negotiation> negotiations = new ConcurrentHashMap<> ();
 	private final String defaultType;
 
 	public ContentSerializer (String defaultType, Map<String, Serializer> serializers) {
@@ -31,46 +122,141 @@ public class ContentSerializer {
 	}
 
 	public String contentType (String accept) {
-		String favourite = pickFavourite (accept);
-		return extractType (favourite);
+		return negotiation (accept).getContentType ();
+	}
+
+	/**
+	 * The mime type, with its attributes, that a request with this accept header gets
+	 * its content in.
+	 */
+	public String negotiate (String accept) {
+		return negotiation (accept).getMime ();
+	}
+
+	/**
+	 * Negotiates the content type for the accept header once, so that the content type
+	 * and the serialization of a response come from the same outcome.
+	 */
+	public Negotiation negotiation (String accept) {
+		String key = accept == null ? "" : accept;
+		Negotiation negotiation = negotiations.get (key);
+		if ( negotiation != null ) { return negotiation; }
+
+		negotiation = pickFavourite (key);
+		if ( negotiations.size () < MAX_CACHED ) {
+			negotiations.putIfAbsent (key, negotiation);
+		}
+		return negotiation;
 	}
 
 	public String serialize (String accept, RestStructure structure) {
-		String mime = pickFavourite (accept);
-		String type = extractType (mime);
-		Map<String, String> attributes = extractAttributes (mime);
-		return serializers.get (type).serialize (structure, attributes);
+		return negotiation (accept).serialize (structure);
 	}
 
 	public void serialize (String accept, RestStructure structure, Writer writer) {
-		String mime = pickFavourite (accept);
-		String type = extractType (mime);
-		Map<String, String> attributes = extractAttributes (mime);
-		serializers.get (type).serialize (structure, attributes, writer);
+		negotiation (accept).serialize (structure, writer);
 	}
 
-	private String pickFavourite (String accept) {
-		if ( accept == null && defaultType == null ) {
+	private Negotiation pickFavourite (String accept) {
+		List<Range> ranges = parseRanges (accept);
+
+		Range best = null;
+		String chosen = null;
+
+		for ( String type : candidates () ) {
+			Range range = mostSpecific (ranges, type);
+			if ( range == null || range.quality <= 0 ) { continue; }
+			if ( best == null || isBetter (range, best) ) {
+				best = range;
+				chosen = type;
+			}
+		}
+
+		if ( best != null ) {
+			Map<String, String> attributes = best.specificity () == 2 ? best.attributes : new LinkedHashMap<> ();
+			return new Negotiation (chosen, attributes, serializers.get (chosen));
+		}
+
+		if ( defaultType == null && accept.trim ().isEmpty () ) {
 			throw new RuntimeException ("No default mime type configured");
-		} else if ( accept == null ) {
-			return defaultType;
+		} else if ( defaultType == null ) {
+			throw new RuntimeException ("Could not find type from requested: " + accept);
 		}
 
-		int index = 0;
+		String type = extractType (defaultType).trim ();
+		return new Negotiation (type, extractAttributes (defaultType), serializers.get (type));
+	}
+
+	/**
+	 * The known types, with the default type first so that it wins from the others when
+	 * a wildcard matches them all.
+	 */
+	private List<String> candidates () {
+		List<String> candidates = new ArrayList<> ();
+		String preferred = defaultType == null ? null : extractType (defaultType).trim ();
+		if ( preferred != null && serializers.containsKey (preferred) ) {
+			candidates.add (preferred);
+		}
+		for ( String type : serializers.keySet () ) {
+			if ( ! type.equals (preferred) ) { candidates.add (type); }
+		}
+		return candidates;
+	}
 
+	private Range mostSpecific (List<Range> ranges, String type) {
+		Range best = null;
+		for ( Range range : ranges ) {
+			if ( ! range.matches (type) ) { continue; }
+			if ( best == null || range.specificity () > best.specificity () ) { best = range; }
+		}
+		return best;
+	}
+
+	private boolean isBetter (Range range, Range current) {
+		if ( range.quality != current.quality ) { return range.quality > current.quality; }
+		if ( range.specificity () != current.specificity () ) { return range.specificity () > current.specificity (); }
+		return range.index < current.index;
+	}
+
+	private List<Range> parseRanges (String accept) {
+		List<Range> ranges = new ArrayList<> ();
+
+		int index = 0;
 		while ( index < accept.length () ) {
 			int end = nextMime (accept, index);
-			String choice = accept.substring (index, end);
+			String choice = accept.substring (index, end).trim ();
 			index = end + 1;
-			String type = extractType (choice).trim ();
-			if ( serializers.containsKey (type) ) {
-				return choice.trim ();
-			}
+			if ( choice.isEmpty () ) { continue; }
+
+			String type = extractType (choice).trim ().toLowerCase ();
+			Map<String, String> attributes = extractAttributes (choice);
+			double quality = extractQuality (attributes);
+			ranges.add (new Range (type, attributes, quality, ranges.size ()));
 		}
 
-		if ( defaultType != null ) { return defaultType; }
+		return ranges;
+	}
+
+	/**
+	 * Takes the quality out of the attributes, along with the accept extensions that
+	 * come after it, which leaves only the attributes of the media type.
+	 */
+	private double extractQuality (Map<String, String> attributes) {
+		double quality = 1;
+		boolean extension = false;
+
+		Iterator<Entry<String, String>> iterator = attributes.entrySet ().iterator ();
+		while ( iterator.hasNext () ) {
+			Entry<String, String> attribute = iterator.next ();
+			if ( ! extension && attribute.getKey ().equalsIgnoreCase ("q") ) {
+				extension = true;
+				try { quality = Double.parseDouble (attribute.getValue ()); }
+				catch (NumberFormatException ignore) { quality = 0; }
+			}
+			if ( extension ) { iterator.remove (); }
+		}
 
-		throw new RuntimeException ("Could not find type from requested: " + accept);
+		return quality;
 	}
 
 	private String extractType (String mime) {
@@ -79,7 +265,7 @@ public class ContentSerializer {
 	}
 
 	private Map<String, String> extractAttributes (String mime) {
-		Map<String, String> attributes = new HashMap<> ();
+		Map<String, String> attributes = new LinkedHashMap<> ();
 
 		int index = mime.indexOf (";") + 1;
 		if ( index == 0 ) { return attributes; }
@@ -90,6 +276,7 @@ public class ContentSerializer {
 			index = end + 1;
 
 			String [] pair = part.split ("=", 2);
+			if ( pair.length < 2 ) { continue; }
 			attributes.put (pair[0].trim (), extractAttributeValue (pair[1]));
 		}
 
@@ -98,7 +285,7 @@ public class ContentSerializer {
 
 	private String extractAttributeValue (String valuestring) {
 		valuestring = valuestring.trim ();
-		if (valuestring.endsWith ("\"") && valuestring.endsWith ("\"") ) {
+		if ( valuestring.length () > 1 && valuestring.startsWith ("\"") && valuestring.endsWith ("\"") ) {
 			valuestring = valuestring.substring (1, valuestring.length () - 1);
 		}
 		return valuestring;
@@ -134,6 +321,7 @@ public class ContentSerializer {
 
 	protected void put (String type, Serializer serializer) {
 		this.serializers.put (type, serializer);
+		this.negotiations.clear ();
 	}
 
 }
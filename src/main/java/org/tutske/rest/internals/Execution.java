@@ -0,0 +1,92 @@
+package org.tutske.rest.internals;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+
+/**
+ * Where the rest handler runs the filters, the controller and the serialization of a
+ * request. By default that is the thread of the server that received the request, other
+ * executions start an async request and hand the work to an executor, optionally with a
+ * limit on how many requests are worked on at the same time.
+ */
+public class Execution {
+
+	private static final Execution DIRECT = new Execution (null, null);
+
+	public static Execution direct () {
+		return DIRECT;
+	}
+
+	public static Execution executor (Executor executor) {
+		return new Execution (executor, null);
+	}
+
+	/**
+	 * Runs every request on a virtual thread of its own. Virtual threads are only around
+	 * on java 21 or newer, so they are looked up when this execution is created.
+	 */
+	public static Execution virtualThreads () {
+		try {
+			Object executor = Executors.class.getMethod ("newVirtualThreadPerTaskExecutor").invoke (null);
+			return executor ((Executor) executor);
+		} catch (NoSuchMethodException exception) {
+			throw new RuntimeException ("Virtual threads need java 21 or newer", exception);
+		} catch (IllegalAccessException | InvocationTargetException exception) {
+			throw new RuntimeException ("Could not create an executor for virtual threads", exception);
+		}
+	}
+
+	private final Executor executor;
+	private final Semaphore permits;
+
+	private Execution (Executor executor, Semaphore permits) {
+		this.executor = executor;
+		this.permits = permits;
+	}
+
+	/**
+	 * The same execution, but with at most `permits` requests being worked on at a time.
+	 * Other requests wait for a permit on the thread they were handed to, and are answered
+	 * with a timeout when they wait longer than the async timeout of the handler, if it
+	 * has one.
+	 */
+	public Execution bounded (int permits) {
+		if ( executor == null ) {
+			throw new RuntimeException ("Only executions on an executor can be bounded");
+		}
+		if ( permits <= 0 ) {
+			throw new RuntimeException ("Bounded executions need at least one permit, got " + permits);
+		}
+		return new Execution (executor, new Semaphore (permits));
+	}
+
+	public boolean isDirect () {
+		return executor == null;
+	}
+
+	public int availablePermits () {
+		return permits == null ? Integer.MAX_VALUE : permits.availablePermits ();
+	}
+
+	public void execute (Runnable task) {
+		if ( executor == null ) {
+			task.run ();
+		} else if ( permits == null ) {
+			executor.execute (task);
+		} else {
+			executor.execute (() -> {
+				try { permits.acquire (); }
+				catch (InterruptedException exception) {
+					Thread.currentThread ().interrupt ();
+					return;
+				}
+				try { task.run (); }
+				finally { permits.release (); }
+			});
+		}
+	}
+
+}
@@ -2,37 +2,266 @@ package org.tutske.rest.internals;
 
 import org.tutske.rest.Filter;
 import org.tutske.rest.HttpRequest.Method;
+import org.tutske.rest.RequestPath;
 import org.tutske.rest.ThrowingFunction;
 import org.tutske.rest.UrlRoute;
 
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 
+/**
+ * Filters are selected by matching their routes against the url of the request. When
+ * the route of the request is known, the filters that apply to it are worked out once
+ * per route and method by comparing the descriptors of the routes. Only filters that
+ * apply to some of the urls of a route, or that have no descriptor, are still matched
+ * against the url of every request.
+ *
+ * The filters worked out for a route are only weakly tied to it, so once a route is
+ * taken out of the router and no longer used they are dropped as well. They are kept
+ * in a table that is looked up by the identity of the route, and that is copied when
+ * a route is added to it, so finding the filters of a route allocates nothing.
+ */
 public class FilterCollection<S, T> {
 
-	private List<UrlRoute<Filter<S, T>>> routes = new LinkedList<> ();
+	private static class Step<S, T> {
+		private final Filter<S, T> filter;
+		private final UrlRoute<Filter<S, T>> route;
+		private final Method method;
+
+		public Step (Filter<S, T> filter, UrlRoute<Filter<S, T>> route, Method method) {
+			this.filter = filter;
+			this.route = route;
+			this.method = method;
+		}
+	}
+
+	private static class Resolved<S, T> {
+		private final Filter<S, T> [] filters;
+		private final Step<S, T> [] steps;
+
+		public Resolved (Filter<S, T> [] filters, Step<S, T> [] steps) {
+			this.filters = filters;
+			this.steps = steps;
+		}
+	}
+
+	private static class RouteKey<S, T> extends WeakReference<UrlRoute<?>> {
+		private final int hash;
+		private final Resolved<S, T> [] resolved = new Resolved [Method.values ().length];
+
+		public RouteKey (UrlRoute<?> route) {
+			super (route);
+			this.hash = System.identityHashCode (route);
+		}
+	}
+
+	private enum Relation {
+		ALWAYS, SOMETIMES, NEVER
+	}
+
+	private final List<UrlRoute<Filter<S, T>>> routes = new ArrayList<> ();
+	private volatile RouteKey<S, T> [] resolved = new RouteKey [16];
 
 	public Chain<S, T> createChain (String url, ThrowingFunction<S, T> destination) {
-		List<Filter<S, T>> filters = new LinkedList<> ();
-		String [] parts = url.substring (1).split ("/");
+		return createChain (new RequestPath (url), destination);
+	}
+
+	public Chain<S, T> createChain (RequestPath path, ThrowingFunction<S, T> destination) {
+		Filter<S, T> [] filters = new Filter [routes.size ()];
+		int size = 0;
 		for ( UrlRoute<Filter<S, T>> route : routes ) {
-			if ( route.matches (Method.GET, url, parts) ) {
-				filters.add (route.getHandler ());
+			if ( route.matches (Method.GET, path) ) {
+				filters[size++] = route.getHandler ();
 			}
 		}
-		return new Chain<> (destination, filters);
+		return new Chain<> (destination, filters, size);
+	}
+
+	public Chain<S, T> createChain (Method method, UrlRoute<?> route, RequestPath path, ThrowingFunction<S, T> destination) {
+		Resolved<S, T> resolved = resolve (method, route);
+		if ( resolved.steps == null ) {
+			return new Chain<> (destination, resolved.filters);
+		}
+
+		Filter<S, T> [] filters = new Filter [resolved.steps.length];
+		return new Chain<> (destination, filters, select (resolved, path, filters));
+	}
+
+	/**
+	 * The filters that `createChain` would put in front of the destination, in order.
+	 */
+	public List<Filter<S, T>> filters (Method method, UrlRoute<?> route, RequestPath path) {
+		Resolved<S, T> resolved = resolve (method, route);
+		if ( resolved.steps == null ) {
+			return Collections.unmodifiableList (Arrays.asList (resolved.filters));
+		}
+
+		Filter<S, T> [] filters = new Filter [resolved.steps.length];
+		int size = select (resolved, path, filters);
+		return Collections.unmodifiableList (Arrays.asList (filters).subList (0, size));
 	}
 
 	public FilterCollection<S, T> add (String label, UrlRoute<Filter<S, T>> ... routes) {
-		Collections.addAll (this.routes, routes);
-		return this;
+		return add (routes);
 	}
 
 	public FilterCollection<S, T> add (UrlRoute<Filter<S, T>> ... routes) {
 		Collections.addAll (this.routes, routes);
+		synchronized ( this ) { this.resolved = new RouteKey [16]; }
 		return this;
 	}
 
+	private int select (Resolved<S, T> resolved, RequestPath path, Filter<S, T> [] filters) {
+		int size = 0;
+		for ( Step<S, T> step : resolved.steps ) {
+			if ( step.route == null || step.route.matches (step.method, path) ) {
+				filters[size++] = step.filter;
+			}
+		}
+		return size;
+	}
+
+	int resolvedRoutes () {
+		int count = 0;
+		for ( RouteKey<S, T> key : resolved ) {
+			if ( key != null && key.get () != null ) { count++; }
+		}
+		return count;
+	}
+
+	Reference<?> resolvedKey (UrlRoute<?> route) {
+		return lookup (resolved, route);
+	}
+
+	private Resolved<S, T> resolve (Method method, UrlRoute<?> route) {
+		RouteKey<S, T> key = lookup (resolved, route);
+		if ( key == null ) { key = insert (route); }
+
+		Resolved<S, T> result = key.resolved[method.ordinal ()];
+		if ( result == null ) {
+			result = compute (method, route);
+			key.resolved[method.ordinal ()] = result;
+		}
+		return result;
+	}
+
+	private RouteKey<S, T> lookup (RouteKey<S, T> [] table, UrlRoute<?> route) {
+		int mask = table.length - 1;
+		for ( int i = System.identityHashCode (route) & mask; table[i] != null; i = (i + 1) & mask ) {
+			if ( table[i].get () == route ) { return table[i]; }
+		}
+		return null;
+	}
+
+	/**
+	 * Routes are added to a copy of the table, which leaves out the keys of routes that
+	 * have been collected, and is then published in place of the old one.
+	 */
+	private synchronized RouteKey<S, T> insert (UrlRoute<?> route) {
+		RouteKey<S, T> existing = lookup (resolved, route);
+		if ( existing != null ) { return existing; }
+
+		List<RouteKey<S, T>> keys = new ArrayList<> ();
+		for ( RouteKey<S, T> key : resolved ) {
+			if ( key != null && key.get () != null ) { keys.add (key); }
+		}
+
+		RouteKey<S, T> added = new RouteKey<> (route);
+		keys.add (added);
+
+		int capacity = 16;
+		while ( capacity < keys.size () * 2 ) { capacity *= 2; }
+
+		RouteKey<S, T> [] table = new RouteKey [capacity];
+		for ( RouteKey<S, T> key : keys ) {
+			int i = key.hash & (capacity - 1);
+			while ( table[i] != null ) { i = (i + 1) & (capacity - 1); }
+			table[i] = key;
+		}
+
+		resolved = table;
+		return added;
+	}
+
+	private Resolved<S, T> compute (Method method, UrlRoute<?> target) {
+		String [] descriptor = target.getDescriptor ();
+		List<Step<S, T>> steps = new ArrayList<> ();
+		boolean conditional = false;
+
+		for ( UrlRoute<Filter<S, T>> route : routes ) {
+			Method matching = route.isMethodScoped () ? method : Method.GET;
+			String [] filter = route.getDescriptor ();
+
+			Relation relation = Relation.SOMETIMES;
+			if ( filter != null && ! accepts (route, matching) ) {
+				relation = Relation.NEVER;
+			} else if ( filter != null && descriptor != null ) {
+				relation = relation (filter, descriptor);
+			}
+
+			for ( Filter<S, T> handler : Filter.Combined.spread (route.getHandler ()) ) {
+				if ( relation == Relation.ALWAYS ) {
+					steps.add (new Step<> (handler, null, matching));
+				} else if ( relation == Relation.SOMETIMES ) {
+					steps.add (new Step<> (handler, route, matching));
+					conditional = true;
+				}
+			}
+		}
+
+		if ( conditional ) {
+			return new Resolved<> (null, steps.toArray (new Step [steps.size ()]));
+		}
+
+		Filter<S, T> [] filters = new Filter [steps.size ()];
+		for ( int i = 0; i < filters.length; i++ ) {
+			filters[i] = steps.get (i).filter;
+		}
+		return new Resolved<> (filters, null);
+	}
+
+	private boolean accepts (UrlRoute<?> route, Method method) {
+		return route.getMethods () == null || route.getMethods ().contains (method);
+	}
+
+	/**
+	 * Whether a filter descriptor matches all, some or none of the urls that are matched
+	 * by a route descriptor.
+	 */
+	private static Relation relation (String [] filter, String [] route) {
+		boolean filterTail = isTail (filter);
+		boolean routeTail = isTail (route);
+		int filterLength = filterTail ? filter.length - 1 : filter.length;
+		int routeLength = routeTail ? route.length - 1 : route.length;
+
+		boolean sometimes = false;
+		for ( int i = 0; i < Math.min (filterLength, routeLength); i++ ) {
+			if ( filter[i].startsWith (":") ) {
+				ParamType type = ParamType.of (filter[i]);
+				if ( type == null || type == ParamType.STRING ) { continue; }
+				if ( ! route[i].startsWith (":") && ! type.accepts (route[i]) ) { return Relation.NEVER; }
+				if ( route[i].startsWith (":") && ParamType.of (route[i]) != type ) { sometimes = true; }
+			}
+			else if ( route[i].startsWith (":") ) { sometimes = true; }
+			else if ( ! filter[i].equals (route[i]) ) { return Relation.NEVER; }
+		}
+
+		if ( ! filterTail && ! routeTail && filterLength != routeLength ) { return Relation.NEVER; }
+		if ( ! filterTail && routeTail && filterLength < routeLength ) { return Relation.NEVER; }
+		if ( ! filterTail && routeTail ) { sometimes = true; }
+		if ( filterTail && ! routeTail && filterLength > routeLength ) { return Relation.NEVER; }
+		if ( filterTail && routeTail && filterLength > routeLength ) { sometimes = true; }
+
+		return sometimes ? Relation.SOMETIMES : Relation.ALWAYS;
+	}
+
+	private static boolean isTail (String [] descriptor) {
+		return descriptor[descriptor.length - 1].startsWith ("::");
+	}
+
 }
@@ -0,0 +1,127 @@
+package org.tutske.rest.internals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A `/fixed/:variable/::tail` descriptor compiled into literal text and parameter slots,
+ * so a link is built by appending the pieces one after the other. Values are percent
+ * encoded, a tail value may contain slashes but every other character is encoded as in
+ * a single part of the url.
+ */
+public class LinkTemplate {
+
+	private static final char [] HEX = "0123456789ABCDEF".toCharArray ();
+	private static final boolean [] ALLOWED = new boolean [128];
+
+	static {
+		String allowed = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-._~!$&'()*+,;=:@";
+		for ( int i = 0; i < allowed.length (); i++ ) {
+			ALLOWED[allowed.charAt (i)] = true;
+		}
+	}
+
+	private final String [] literals;
+	private final String [] names;
+	private final boolean tail;
+
+	public LinkTemplate (String descriptor) {
+		List<String> literals = new ArrayList<> ();
+		List<String> names = new ArrayList<> ();
+		StringBuilder literal = new StringBuilder ();
+		boolean tail = false;
+
+		String [] parts = descriptor.substring (1).split ("/");
+		for ( int i = 0; i < parts.length; i++ ) {
+			String part = parts[i];
+			if ( i == parts.length - 1 && part.startsWith ("::") ) {
+				literals.add (literal.toString ());
+				names.add (ParamType.nameOf (part));
+				literal.setLength (0);
+				tail = true;
+			} else if ( part.startsWith (":") ) {
+				literal.append ('/');
+				literals.add (literal.toString ());
+				names.add (ParamType.nameOf (part));
+				literal.setLength (0);
+			} else {
+				literal.append ('/').append (part);
+			}
+		}
+		literals.add (literal.toString ());
+
+		this.literals = literals.toArray (new String [literals.size ()]);
+		this.names = names.toArray (new String [names.size ()]);
+		this.tail = tail;
+	}
+
+	public int size () {
+		return names.length;
+	}
+
+	public StringBuilder appendTo (StringBuilder builder, Map<String, String> params) {
+		for ( int i = 0; i < names.length; i++ ) {
+			builder.append (literals[i]);
+			appendValue (builder, i, params.get (names[i]));
+		}
+		return builder.append (literals[names.length]);
+	}
+
+	/**
+	 * Fill the slots with the values in the order in which the parameters appear in the
+	 * descriptor.
+	 */
+	public StringBuilder appendTo (StringBuilder builder, String ... values) {
+		if ( values.length != names.length ) {
+			throw new RuntimeException (
+				"Expected " + names.length + " values to link, got " + values.length
+			);
+		}
+
+		for ( int i = 0; i < names.length; i++ ) {
+			builder.append (literals[i]);
+			appendValue (builder, i, values[i]);
+		}
+		return builder.append (literals[names.length]);
+	}
+
+	private void appendValue (StringBuilder builder, int slot, String value) {
+		boolean isTail = tail && slot == names.length - 1;
+
+		if ( isTail ) {
+			if ( value == null || value.isEmpty () || "/".equals (value) ) { return; }
+			builder.append ('/');
+			encode (builder, value, value.startsWith ("/") ? 1 : 0, true);
+		} else if ( value == null ) {
+			throw new RuntimeException ("Missing value for parameter to link: " + names[slot]);
+		} else {
+			encode (builder, value, 0, false);
+		}
+	}
+
+	public static StringBuilder encode (StringBuilder builder, String value, int start, boolean slashes) {
+		for ( int i = start; i < value.length (); i++ ) {
+			char c = value.charAt (i);
+			if ( c < 128 && (ALLOWED[c] || (slashes && c == '/')) ) {
+				builder.append (c);
+			} else if ( c < 128 ) {
+				appendByte (builder, c);
+			} else {
+				int end = Character.isHighSurrogate (c) && i + 1 < value.length () ? i + 2 : i + 1;
+				for ( byte b : value.substring (i, end).getBytes (StandardCharsets.UTF_8) ) {
+					appendByte (builder, b & 0xFF);
+				}
+				i = end - 1;
+			}
+		}
+		return builder;
+	}
+
+	private static void appendByte (StringBuilder builder, int b) {
+		builder.append ('%').append (HEX[b >> 4]).append (HEX[b & 0xF]);
+	}
+
+}
@@ -16,9 +16,15 @@ import java.util.Map;
 public class NotFoundHandler extends AbstractHandler {
 
 	private final Map<String, Serializer> serializers;
+	private final Compression compression;
 
 	public NotFoundHandler (Map<String, Serializer> serializers) {
+		this (serializers, Compression.none ());
+	}
+
+	public NotFoundHandler (Map<String, Serializer> serializers, Compression compression) {
 		this.serializers = serializers;
+		this.compression = compression;
 	}
 
 	@Override
@@ -36,7 +42,9 @@ public class NotFoundHandler extends AbstractHandler {
 
 		response.setStatus (exception.getStatusCode ());
 		response.setContentType (type);
-		serializer.serialize (exception.asRestStructure (), response.getWriter ());
+		try ( Compression.Output output = compression.open (request, response, type) ) {
+			serializer.serialize (exception.asRestStructure (), output.writer ());
+		}
 
 		base.setHandled (true);
 	}
@@ -0,0 +1,131 @@
+package org.tutske.rest.internals;
+
+import org.tutske.rest.RequestPath;
+
+
+/**
+ * Types that can be given to the parameters of a descriptor, as in `/users/:id<long>`.
+ * A part of the url is checked against the type while routing, without parsing it and
+ * without exceptions, so a url with a part of the wrong type just does not match. Values
+ * that were accepted are converted without further checks.
+ */
+public enum ParamType {
+
+	STRING ("string", String.class, "[^/]+"),
+	INT ("int", Integer.class, "-?[0-9]{1,10}"),
+	LONG ("long", Long.class, "-?[0-9]{1,19}"),
+	BOOLEAN ("boolean", Boolean.class, "true|false"),
+	UUID ("uuid", java.util.UUID.class, "[0-9a-fA-F]{8}(?:-[0-9a-fA-F]{4}){3}-[0-9a-fA-F]{12}");
+
+	private final String name;
+	private final Class<?> clazz;
+	private final String regex;
+
+	ParamType (String name, Class<?> clazz, String regex) {
+		this.name = name;
+		this.clazz = clazz;
+		this.regex = regex;
+	}
+
+	public Class<?> getType () {
+		return clazz;
+	}
+
+	/**
+	 * A regex for values of this type, without capturing groups. It lets numbers that are
+	 * out of range through, those still have to be checked with `accepts`.
+	 */
+	public String getRegex () {
+		return "(?:" + regex + ")";
+	}
+
+	public boolean accepts (RequestPath path, int index) {
+		return accepts (path.getPath (), path.start (index), path.end (index));
+	}
+
+	public boolean accepts (String value) {
+		return accepts (value, 0, value.length ());
+	}
+
+	public boolean accepts (String text, int start, int end) {
+		switch ( this ) {
+			case INT: return integral (text, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+			case LONG: return integral (text, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+			case BOOLEAN: return text.startsWith ("true", start) && end - start == 4
+				|| text.startsWith ("false", start) && end - start == 5;
+			case UUID: return uuid (text, start, end);
+			default: return true;
+		}
+	}
+
+	/**
+	 * The value as an instance of the type, only for values that were accepted.
+	 */
+	public Object convert (String value) {
+		switch ( this ) {
+			case INT: return Integer.parseInt (value);
+			case LONG: return Long.parseLong (value);
+			case BOOLEAN: return Boolean.parseBoolean (value);
+			case UUID: return java.util.UUID.fromString (value);
+			default: return value;
+		}
+	}
+
+	/**
+	 * The type of a descriptor part such as `:id<long>`, or null when it has no type.
+	 */
+	public static ParamType of (String part) {
+		int open = part.indexOf ('<');
+		if ( open < 0 || ! part.endsWith (">") ) { return null; }
+
+		String name = part.substring (open + 1, part.length () - 1);
+		for ( ParamType type : values () ) {
+			if ( type.name.equals (name) ) { return type; }
+		}
+		throw new RuntimeException ("Unknown parameter type `" + name + "` in: " + part);
+	}
+
+	/**
+	 * The name of the parameter in a descriptor part, without the colons and the type.
+	 */
+	public static String nameOf (String part) {
+		int start = part.startsWith ("::") ? 2 : part.startsWith (":") ? 1 : 0;
+		int open = part.indexOf ('<');
+		return part.substring (start, open < 0 || ! part.endsWith (">") ? part.length () : open);
+	}
+
+	private static boolean integral (String text, int start, int end, long min, long max) {
+		boolean negative = start < end && text.charAt (start) == '-';
+		int i = negative ? start + 1 : start;
+		if ( i == end ) { return false; }
+
+		long limit = negative ? min : -max;
+		long multiplied = limit / 10;
+		long result = 0;
+
+		for ( ; i < end; i++ ) {
+			int digit = text.charAt (i) - '0';
+			if ( digit < 0 || digit > 9 ) { return false; }
+			if ( result < multiplied ) { return false; }
+			result *= 10;
+			if ( result < limit + digit ) { return false; }
+			result -= digit;
+		}
+
+		return true;
+	}
+
+	private static boolean uuid (String text, int start, int end) {
+		if ( end - start != 36 ) { return false; }
+		for ( int i = 0; i < 36; i++ ) {
+			char c = text.charAt (start + i);
+			if ( i == 8 || i == 13 || i == 18 || i == 23 ) {
+				if ( c != '-' ) { return false; }
+			} else if ( ! (c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F') ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
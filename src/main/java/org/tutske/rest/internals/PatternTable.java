@@ -0,0 +1,73 @@
+package org.tutske.rest.internals;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * All patterns of a router combined into a single alternation, so a url is matched with
+ * one matcher in one pass of the regex engine instead of trying the patterns one by one.
+ * The alternatives are in the order of the routes, the regex engine takes the first
+ * alternative that matches the whole url which keeps the first added route winning.
+ */
+public class PatternTable {
+
+	private final int [] indices;
+	private final int [] groups;
+	private final int min;
+	private final Pattern combined;
+
+	/**
+	 * Combine patterns that only use numbered groups and no back references, see
+	 * `RoutePatterns.stripNames`. The indices of the routes are normally increasing,
+	 * routes may only come before earlier routes that can never match the same url.
+	 */
+	public PatternTable (int [] indices, Pattern [] patterns) {
+		this.indices = indices.clone ();
+		this.groups = new int [patterns.length];
+
+		int min = RouteTrie.NONE;
+		for ( int index : indices ) { min = Math.min (min, index); }
+		this.min = min;
+
+		StringBuilder regex = new StringBuilder ();
+		int group = 1;
+		for ( int i = 0; i < patterns.length; i++ ) {
+			if ( i > 0 ) { regex.append ('|'); }
+			regex.append ('(').append (patterns[i].pattern ()).append (')');
+			groups[i] = group;
+			group += 1 + patterns[i].matcher ("").groupCount ();
+		}
+
+		this.combined = patterns.length == 0 ? null : Pattern.compile (regex.toString ());
+	}
+
+	public boolean isEmpty () {
+		return indices.length == 0;
+	}
+
+	public int size () {
+		return indices.length;
+	}
+
+	public int min () {
+		return min;
+	}
+
+	public int [] order () {
+		return indices.clone ();
+	}
+
+	public int lookup (String url) {
+		if ( combined == null ) { return RouteTrie.NONE; }
+
+		Matcher matcher = combined.matcher (url);
+		if ( ! matcher.matches () ) { return RouteTrie.NONE; }
+
+		for ( int i = 0; i < groups.length; i++ ) {
+			if ( matcher.start (groups[i]) >= 0 ) { return indices[i]; }
+		}
+		return RouteTrie.NONE;
+	}
+
+}
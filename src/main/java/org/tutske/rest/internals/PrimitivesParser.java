@@ -5,6 +5,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 import java.util.function.Function;
 
 
@@ -29,6 +30,7 @@ public class PrimitivesParser {
 		converters.put (Double.class, Double::parseDouble);
 		converters.put (Boolean.class, Boolean::parseBoolean);
 		converters.put (Date.class, PrimitivesParser::parseDate);
+		converters.put (UUID.class, UUID::fromString);
 	}
 
 	public static <T> T parse (String value, Class<T> clazz) {
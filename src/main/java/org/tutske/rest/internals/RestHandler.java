@@ -7,13 +7,27 @@ import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.tutske.rest.*;
+import org.tutske.rest.data.RawContent;
 import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.exceptions.GatewayTimeoutException;
+import org.tutske.rest.exceptions.MethodNotAllowedException;
 import org.tutske.rest.exceptions.ResponseException;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 
 public class RestHandler extends AbstractHandler {
@@ -23,6 +37,12 @@ public class RestHandler extends AbstractHandler {
 	private final UrlRouter<ControllerFunction> router;
 	private final FilterCollection<HttpRequest, RestStructure> filters;
 	private final ContentSerializer serializer;
+	private final Map<Filter<HttpRequest, RestStructure>, Filter<HttpRequest, CompletionStage<RestStructure>>> adapted =
+		new ConcurrentHashMap<> ();
+	private volatile long timeout = 30000;
+	private volatile long executionTimeout = 0;
+	private volatile Execution execution = Execution.direct ();
+	private volatile Compression compression = Compression.none ();
 
 	public RestHandler (UrlRouter<ControllerFunction> router,
 		FilterCollection<HttpRequest, RestStructure> filters,
@@ -44,42 +64,275 @@ public class RestHandler extends AbstractHandler {
 		}});
 	}
 
+	/**
+	 * How long asynchronous controllers get to complete their stage, after that the
+	 * request is answered with a gateway timeout. Once this is set it also applies to
+	 * synchronous controllers that run on an execution other than the direct one.
+	 */
+	public RestHandler setAsyncTimeout (long timeout, TimeUnit unit) {
+		this.timeout = unit.toMillis (timeout);
+		this.executionTimeout = this.timeout;
+		return this;
+	}
+
+	/**
+	 * Where synchronous controllers are run, together with their filters and the writing
+	 * of the response. They are not timed out, just like when they run directly, unless
+	 * an async timeout was set.
+	 */
+	public RestHandler setExecution (Execution execution) {
+		this.execution = execution;
+		return this;
+	}
+
+	public RestHandler setCompression (Compression compression) {
+		this.compression = compression;
+		return this;
+	}
+
 	@Override
 	public void handle (String s, Request base, HttpServletRequest request, HttpServletResponse response)
 	throws IOException, ServletException {
 		Method method = Method.valueOf (request.getMethod ());
-		UrlRoute<ControllerFunction> route = router.route (method, s);
+		RequestPath path = new RequestPath (s);
+		UrlRouter.Match<ControllerFunction> match = router.match (method, path);
+
+		if ( match == null && method == Method.HEAD ) {
+			method = Method.GET;
+			match = router.match (method, path);
+		}
+
+		if ( match == null ) {
+			unrouted (method, path, base, request, response);
+			return;
+		}
+
+		UrlRoute<ControllerFunction> route = match.getRoute ();
+		HttpRequest r = new HttpRequest (request, response, match.getParams ());
+
+		if ( route.getHandler () instanceof AsyncControllerFunction ) {
+			handleAsync (method, route, path, r, base, request, response);
+			return;
+		}
 
-		if ( route == null ) {
+		Execution execution = this.execution;
+		if ( ! execution.isDirect () ) {
+			handleOn (execution, method, route, path, r, base, request, response);
 			return;
 		}
 
-		int status = HttpServletResponse.SC_OK;
 		RestStructure result;
 		try {
-			ParameterBag data = route.extractMatches (s, s.substring (1).split ("/"));
-			HttpRequest r = new HttpRequest (request, response, data);
-			result = filters.createChain (s, (rr) -> route.getHandler ().apply (rr)).call (r);
-			if ( response.getStatus () != 0 ) {
-				status = response.getStatus ();
-			}
-		} catch (ResponseException exception) {
-			result = exception.asRestStructure ();
-			status = exception.getStatusCode ();
+			result = filters.createChain (method, route, path, (rr) -> route.getHandler ().apply (rr)).call (r);
+			r.checkDeadline ();
+		} catch (Exception exception) {
+			fail (base, request, response, exception);
+			return;
+		}
+
+		respond (base, request, response, status (response), result);
+	}
+
+	/**
+	 * Urls that only have routes for other methods are answered with the methods they do
+	 * allow, with a 200 for OPTIONS requests and with a 405 for all others. HEAD requests
+	 * are served by the GET routes, Jetty leaves out the body. Urls without any route are
+	 * left to the next handler.
+	 */
+	private void unrouted (Method method, RequestPath path, Request base,
+		HttpServletRequest request, HttpServletResponse response
+	) throws IOException {
+		EnumSet<Method> allowed = router.allowed (path);
+		if ( allowed.isEmpty () ) { return; }
+
+		if ( allowed.contains (Method.GET) ) { allowed.add (Method.HEAD); }
+		allowed.add (Method.OPTIONS);
+
+		if ( method != Method.OPTIONS ) {
+			fail (base, request, response, new MethodNotAllowedException (method, allowed));
+			return;
+		}
+
+		response.setHeader ("Allow", allowed.stream ().map (Method::toString).collect (Collectors.joining (", ")));
+		response.setStatus (HttpServletResponse.SC_OK);
+		response.setContentLength (0);
+		base.setHandled (true);
+	}
+
+	private void handleOn (Execution execution, Method method, UrlRoute<ControllerFunction> route,
+		RequestPath path, HttpRequest r, Request base, HttpServletRequest request, HttpServletResponse response
+	) {
+		AtomicBoolean done = new AtomicBoolean (false);
+		AsyncContext context = begin (done, executionTimeout, base, request, response);
+
+		try {
+			execution.execute (() -> {
+				if ( done.get () ) { return; }
+
+				RestStructure result = null;
+				Exception error = null;
+				try {
+					result = filters.createChain (method, route, path, (rr) -> route.getHandler ().apply (rr)).call (r);
+					r.checkDeadline ();
+				} catch (Exception exception) {
+					error = exception;
+				}
+				finish (context, done, base, request, response, result, error);
+			});
+		} catch (RuntimeException exception) {
+			finish (context, done, base, request, response, null, exception);
+		}
+	}
+
+	/**
+	 * Runs the filters and the controller, but leaves writing the response to the thread
+	 * that completes the stage of the controller. Synchronous filters still wait for the
+	 * stage of the rest of the chain, only asynchronous filters let go of the thread, see
+	 * `adapt`. When the filters gave the request an earlier deadline, the request times
+	 * out at that deadline instead.
+	 */
+	private void handleAsync (Method method, UrlRoute<ControllerFunction> route, RequestPath path,
+		HttpRequest r, Request base, HttpServletRequest request, HttpServletResponse response
+	) {
+		AsyncControllerFunction controller = (AsyncControllerFunction) route.getHandler ();
+		AtomicBoolean done = new AtomicBoolean (false);
+		AsyncContext context = begin (done, timeout, base, request, response);
+
+		List<Filter<HttpRequest, RestStructure>> selected = filters.filters (method, route, path);
+		Filter<HttpRequest, CompletionStage<RestStructure>> [] chain = new Filter [selected.size ()];
+		for ( int i = 0; i < chain.length; i++ ) {
+			chain[i] = adapted.computeIfAbsent (selected.get (i), RestHandler::adapt);
+		}
+
+		CompletionStage<RestStructure> stage;
+		try {
+			stage = new Chain<> (controller::applyAsync, chain).call (r).thenApply ((result) -> {
+				r.checkDeadline ();
+				return result;
+			});
 		} catch (Exception exception) {
-			logger.warn ("Failed to perform request", exception);
-			String msg = exception.getMessage ();
-			result = new ResponseException (msg == null ? "" : msg).asRestStructure ();
-			status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+			stage = CompletionStages.failed (exception);
+		}
+
+		Deadline deadline = r.getDeadline ();
+		if ( deadline != null ) {
+			context.setTimeout (Math.max (1, Math.min (timeout, deadline.remaining (TimeUnit.MILLISECONDS))));
 		}
 
-		String accept = request.getHeader ("Accept");
-		String contentType = serializer.contentType (accept);
+		stage.whenComplete ((result, error) -> {
+			finish (context, done, base, request, response, result, error);
+		});
+	}
+
+	/**
+	 * Turns the request into an async request that is answered with a timeout when it is
+	 * not finished in time. A timeout of zero never times out.
+	 */
+	private AsyncContext begin (AtomicBoolean done, long timeout, Request base,
+		HttpServletRequest request, HttpServletResponse response
+	) {
+		AsyncContext context = request.startAsync ();
+		context.setTimeout (timeout);
+		context.addListener (new AsyncListener () {
+			@Override public void onTimeout (AsyncEvent event) {
+				Exception exception = new GatewayTimeoutException ("The request did not complete in time");
+				finish (context, done, base, request, response, null, exception);
+			}
+
+			@Override public void onError (AsyncEvent event) {
+				finish (context, done, base, request, response, null, event.getThrowable ());
+			}
+
+			@Override public void onComplete (AsyncEvent event) {}
+			@Override public void onStartAsync (AsyncEvent event) {}
+		});
+		base.setHandled (true);
+
+		return context;
+	}
+
+	private void finish (AsyncContext context, AtomicBoolean done, Request base,
+		HttpServletRequest request, HttpServletResponse response, RestStructure result, Throwable error
+	) {
+		if ( ! done.compareAndSet (false, true) ) { return; }
+
+		try {
+			if ( error == null ) {
+				respond (base, request, response, status (response), result);
+			} else {
+				fail (base, request, response, CompletionStages.unwrap (error));
+			}
+		} catch (IOException | RuntimeException exception) {
+			logger.warn ("Failed to write response", exception);
+		} finally {
+			context.complete ();
+		}
+	}
+
+	/**
+	 * Synchronous filters can only be put in front of an asynchronous controller by having
+	 * them wait for the rest of the chain, which holds on to the thread of the request just
+	 * like a synchronous controller would. Filters that should let go of the thread have to
+	 * implement `AsyncRestFilter`, the filters in this library all do.
+	 */
+	private static Filter<HttpRequest, CompletionStage<RestStructure>> adapt (Filter<HttpRequest, RestStructure> filter) {
+		if ( filter instanceof AsyncRestFilter ) {
+			return ((AsyncRestFilter) filter)::callAsync;
+		}
+		logger.warn (
+			"Filter {} is not an AsyncRestFilter, requests to async controllers behind it block their thread",
+			filter.getClass ().getName ()
+		);
+		return (source, chain) -> CompletionStages.completed (filter.call (source, new Chain<> (
+			(request) -> CompletionStages.await (chain.call (request))
+		)));
+	}
+
+	private int status (HttpServletResponse response) {
+		return response.getStatus () != 0 ? response.getStatus () : HttpServletResponse.SC_OK;
+	}
+
+	private void fail (Request base, HttpServletRequest request, HttpServletResponse response,
+		Exception exception
+	) throws IOException {
+		if ( exception instanceof ResponseException ) {
+			ResponseException failure = (ResponseException) exception;
+			failure.getHeaders ().forEach (response::setHeader);
+			respond (base, request, response, failure.getStatusCode (), failure.asRestStructure ());
+			return;
+		}
+
+		logger.warn ("Failed to perform request", exception);
+		String msg = exception.getMessage ();
+		RestStructure result = new ResponseException (msg == null ? "" : msg).asRestStructure ();
+		respond (base, request, response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, result);
+	}
+
+	private void respond (Request base, HttpServletRequest request, HttpServletResponse response,
+		int status, RestStructure result
+	) throws IOException {
+		if ( status == HttpServletResponse.SC_NOT_MODIFIED ) {
+			response.setStatus (status);
+			base.setHandled (true);
+			return;
+		}
+
+		ContentSerializer.Negotiation negotiation = result instanceof RawContent ?
+			null : serializer.negotiation (request.getHeader ("Accept"));
+		String contentType = negotiation == null ?
+			((RawContent) result).getContentType () :
+			negotiation.getContentType ();
 
 		response.setContentType (contentType);
 		response.setStatus (status);
-		serializer.serialize (accept, result, response.getWriter ());
-		response.getWriter ().flush ();
+
+		try ( Compression.Output output = compression.open (request, response, contentType) ) {
+			if ( result instanceof RawContent ) {
+				output.writer ().write (((RawContent) result).getContent ());
+			} else {
+				negotiation.serialize (result, output.writer ());
+			}
+		}
 
 		base.setHandled (true);
 	}
@@ -0,0 +1,125 @@
+package org.tutske.rest.internals;
+
+import static org.tutske.rest.HttpRequest.Method;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Bounded least recently used cache from a method and a concrete url to whatever the
+ * router found for them. The entries are spread over a number of stripes that each
+ * keep their own access order under their own lock, so threads that look up different
+ * urls rarely wait on each other. Every stripe holds at most its share of the size.
+ */
+public class RouteCache<V> {
+
+	private static final int MAX_STRIPES = 16;
+
+	private static class Key {
+		private final Method method;
+		private final String url;
+		private final int hash;
+
+		public Key (Method method, String url) {
+			this.method = method;
+			this.url = url;
+			this.hash = 31 * method.hashCode () + url.hashCode ();
+		}
+
+		@Override public int hashCode () {
+			return hash;
+		}
+
+		@Override public boolean equals (Object other) {
+			if ( ! (other instanceof Key) ) { return false; }
+			Key key = (Key) other;
+			return method == key.method && url.equals (key.url);
+		}
+	}
+
+	private static class Counters {
+		private final LongAdder hits = new LongAdder ();
+		private final LongAdder misses = new LongAdder ();
+		private final LongAdder evictions = new LongAdder ();
+	}
+
+	private final int size;
+	private final Counters counters;
+	private final Map<Key, V> [] stripes;
+
+	public RouteCache (int size) {
+		this (size, new Counters ());
+	}
+
+	private RouteCache (int size, Counters counters) {
+		if ( size <= 0 ) {
+			throw new IllegalArgumentException ("Cache size should be positive, got " + size);
+		}
+
+		int count = 1;
+		while ( count < MAX_STRIPES && count * 2 <= size ) { count *= 2; }
+		int capacity = (size + count - 1) / count;
+
+		this.size = size;
+		this.counters = counters;
+		this.stripes = new Map [count];
+		for ( int i = 0; i < count; i++ ) {
+			stripes[i] = new LinkedHashMap<Key, V> (16, 0.75f, true) {
+				@Override protected boolean removeEldestEntry (Map.Entry<Key, V> eldest) {
+					if ( size () <= capacity ) { return false; }
+					counters.evictions.increment ();
+					return true;
+				}
+			};
+		}
+	}
+
+	/**
+	 * A new empty cache of the same size that keeps counting in the same counters.
+	 */
+	public RouteCache<V> emptied () {
+		return new RouteCache<> (size, counters);
+	}
+
+	public V get (Method method, String url) {
+		Key key = new Key (method, url);
+		Map<Key, V> stripe = stripe (key);
+
+		V value;
+		synchronized ( stripe ) { value = stripe.get (key); }
+
+		if ( value == null ) { counters.misses.increment (); }
+		else { counters.hits.increment (); }
+		return value;
+	}
+
+	public void put (Method method, String url, V value) {
+		Key key = new Key (method, url);
+		Map<Key, V> stripe = stripe (key);
+		synchronized ( stripe ) { stripe.put (key, value); }
+	}
+
+	public int size () {
+		return size;
+	}
+
+	public long hits () {
+		return counters.hits.sum ();
+	}
+
+	public long misses () {
+		return counters.misses.sum ();
+	}
+
+	public long evictions () {
+		return counters.evictions.sum ();
+	}
+
+	private Map<Key, V> stripe (Key key) {
+		int hash = key.hash ^ (key.hash >>> 16);
+		return stripes[hash & (stripes.length - 1)];
+	}
+
+}
@@ -0,0 +1,46 @@
+package org.tutske.rest.internals;
+
+
+/**
+ * Puts routes that are hit often in front of routes that are hit less, without changing
+ * which route wins for any url. A route only moves past an earlier route when the two
+ * can not match the same url, which is known when their literal prefixes diverge. All
+ * routes that match some url then keep their relative order, so the first one of them
+ * that is tried is still the one that was added first.
+ */
+public class RouteOrdering {
+
+	/**
+	 * A new order for the routes with the given indices. The indices have to be in the
+	 * order in which the routes were added, the prefixes and scores are per position.
+	 */
+	public static int [] reorder (int [] indices, String [] prefixes, long [] scores) {
+		int length = indices.length;
+		int [] blocking = new int [length];
+		boolean [] placed = new boolean [length];
+
+		for ( int i = 0; i < length; i++ ) {
+			for ( int j = 0; j < i; j++ ) {
+				if ( ! RoutePatterns.disjoint (prefixes[i], prefixes[j]) ) { blocking[i]++; }
+			}
+		}
+
+		int [] order = new int [length];
+		for ( int position = 0; position < length; position++ ) {
+			int best = -1;
+			for ( int i = 0; i < length; i++ ) {
+				if ( placed[i] || blocking[i] > 0 ) { continue; }
+				if ( best < 0 || scores[i] > scores[best] ) { best = i; }
+			}
+
+			placed[best] = true;
+			order[position] = indices[best];
+			for ( int i = best + 1; i < length; i++ ) {
+				if ( ! RoutePatterns.disjoint (prefixes[i], prefixes[best]) ) { blocking[i]--; }
+			}
+		}
+
+		return order;
+	}
+
+}
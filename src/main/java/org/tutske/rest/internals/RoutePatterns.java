@@ -0,0 +1,197 @@
+package org.tutske.rest.internals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class RoutePatterns {
+
+	private static final String SPECIAL = "\\.[]()^$|+";
+
+	/**
+	 * Rewrite a regex so that named groups become plain numbered groups. The names are
+	 * added to `names` in the order of the group numbers, with null for groups that have
+	 * no name. Returns null when the regex uses back references, since those depend on
+	 * the numbering or names of its groups.
+	 */
+	public static String stripNames (String regex, List<String> names) {
+		StringBuilder stripped = new StringBuilder (regex.length ());
+		boolean references = false;
+		int depth = 0;
+		int i = 0;
+
+		while ( i < regex.length () ) {
+			char c = regex.charAt (i);
+
+			if ( c == '\\' && regex.startsWith ("\\Q", i) ) {
+				int end = regex.indexOf ("\\E", i + 2);
+				end = end < 0 ? regex.length () : end + 2;
+				stripped.append (regex, i, end);
+				i = end;
+				continue;
+			}
+
+			if ( c == '\\' && i + 1 < regex.length () ) {
+				char next = regex.charAt (i + 1);
+				if ( depth == 0 && (next == 'k' || (next >= '1' && next <= '9')) ) { references = true; }
+				stripped.append (c).append (next);
+				i += 2;
+				continue;
+			}
+
+			if ( c == '[' ) { depth++; }
+			else if ( c == ']' && depth > 0 ) { depth--; }
+			else if ( c == '(' && depth == 0 ) {
+				if ( ! regex.startsWith ("(?", i) ) {
+					names.add (null);
+				} else if ( regex.startsWith ("(?<", i) && i + 3 < regex.length () && Character.isLetter (regex.charAt (i + 3)) ) {
+					int end = regex.indexOf ('>', i);
+					names.add (regex.substring (i + 3, end));
+					stripped.append ('(');
+					i = end + 1;
+					continue;
+				}
+			}
+
+			stripped.append (c);
+			i++;
+		}
+
+		return references ? null : stripped.toString ();
+	}
+
+	/**
+	 * Turn a glob descriptor into a regex. `*` and `?` match within a part of the url,
+	 * `**` matches across parts and `{a,b}` matches either alternative. Parts written as
+	 * `:name` or `:name<type>` capture one part, a final `::name` captures the remainder
+	 * of the url. The names of the captures are added to `names` in the order of their
+	 * groups.
+	 */
+	public static String fromGlob (String glob, List<String> names) {
+		return fromGlob (glob, names, new ArrayList<> ());
+	}
+
+	/**
+	 * Same as `fromGlob`, but also adds the types of the captures to `types`, with null
+	 * for captures without a type.
+	 */
+	public static String fromGlob (String glob, List<String> names, List<ParamType> types) {
+		StringBuilder regex = new StringBuilder (glob.length () * 2);
+		boolean alternatives = false;
+		boolean tail = false;
+		int i = 0;
+
+		while ( i < glob.length () ) {
+			char c = glob.charAt (i);
+
+			if ( c == ':' && i > 0 && glob.charAt (i - 1) == '/' ) {
+				tail = glob.startsWith ("::", i);
+				int start = i + (tail ? 2 : 1);
+				int end = glob.indexOf ('/', start);
+				end = end < 0 ? glob.length () : end;
+
+				if ( tail && end != glob.length () ) {
+					throw new RuntimeException ("Tail captures have to be at the end: " + glob);
+				}
+
+				String part = glob.substring (start, end);
+				ParamType type = ParamType.of (part);
+				names.add (ParamType.nameOf (part));
+				types.add (tail ? null : type);
+				if ( tail ) {
+					regex.setLength (regex.length () - 1);
+					regex.append ("((?:/.*)?)");
+				} else {
+					regex.append ('(').append (type == null ? "[^/]+" : type.getRegex ()).append (')');
+				}
+
+				i = end;
+				continue;
+			}
+
+			if ( c == '*' && glob.startsWith ("**", i) ) {
+				regex.append (".*");
+				i += 2;
+				continue;
+			}
+
+			if ( c == '*' ) { regex.append ("[^/]*"); }
+			else if ( c == '?' ) { regex.append ("[^/]"); }
+			else if ( c == '{' ) { regex.append ("(?:"); alternatives = true; }
+			else if ( c == '}' && alternatives ) { regex.append (")"); alternatives = false; }
+			else if ( c == ',' && alternatives ) { regex.append ("|"); }
+			else if ( SPECIAL.indexOf (c) >= 0 || c == '{' || c == '}' ) { regex.append ('\\').append (c); }
+			else { regex.append (c); }
+
+			i++;
+		}
+
+		if ( ! tail ) { regex.append ("/*"); }
+		return regex.toString ();
+	}
+
+	/**
+	 * Literal text that every url matched by the regex starts with. This is conservative,
+	 * it stops at the first construct that is not a plain character and gives the empty
+	 * string for regexes with top level alternatives.
+	 */
+	public static String literalPrefix (String regex) {
+		StringBuilder prefix = new StringBuilder ();
+		boolean open = true;
+		int depth = 0;
+		int i = 0;
+
+		while ( i < regex.length () ) {
+			char c = regex.charAt (i);
+
+			if ( c == '\\' && i + 1 < regex.length () ) {
+				char next = regex.charAt (i + 1);
+				if ( Character.isLetterOrDigit (next) ) { open = false; }
+				else if ( open ) { prefix.append (next); }
+				i += 2;
+				continue;
+			}
+
+			if ( c == '[' ) {
+				open = false;
+				int end = i + 1;
+				while ( end < regex.length () && regex.charAt (end) != ']' ) {
+					end += regex.charAt (end) == '\\' ? 2 : 1;
+				}
+				i = end + 1;
+				continue;
+			}
+
+			if ( c == '(' ) { depth++; open = false; }
+			else if ( c == ')' ) { depth--; }
+			else if ( c == '|' && depth == 0 ) { return ""; }
+			else if ( c == '?' || c == '*' || c == '{' ) {
+				if ( open && prefix.length () > 0 ) { prefix.setLength (prefix.length () - 1); }
+				open = false;
+			}
+			else if ( SPECIAL.indexOf (c) >= 0 ) { open = false; }
+			else if ( open ) { prefix.append (c); }
+
+			i++;
+		}
+
+		return prefix.toString ();
+	}
+
+	/**
+	 * Whether no url can start with both prefixes, null means the prefix is unknown.
+	 */
+	public static boolean disjoint (String first, String second) {
+		if ( first == null || second == null ) { return false; }
+		return ! first.startsWith (second) && ! second.startsWith (first);
+	}
+
+	public static boolean isGlob (String descriptor) {
+		for ( int i = 0; i < descriptor.length (); i++ ) {
+			char c = descriptor.charAt (i);
+			if ( c == '*' || c == '?' || c == '{' ) { return true; }
+		}
+		return false;
+	}
+
+}
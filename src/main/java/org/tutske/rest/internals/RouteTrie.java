@@ -0,0 +1,199 @@
+package org.tutske.rest.internals;
+
+import org.tutske.rest.RequestPath;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+
+/**
+ * Segment trie over the descriptors of simple routes, `/fixed/part/:variable/::tail`.
+ * Every route is stored by the index it has in the router, so that when more than one
+ * route matches a url the lookup can still return the one that was added first.
+ *
+ * Literal children are tried before the `:param<type>` children, which are only entered
+ * when the part of the url is of their type, and before the untyped `:param` child. Whole
+ * sub trees are skipped when they only contain routes that were added after the best
+ * match found so far. The cost of a lookup therefore depends on the depth of the url, not
+ * on the number of routes.
+ */
+public class RouteTrie {
+
+	public static final int NONE = Integer.MAX_VALUE;
+
+	private static class Node {
+		private String [] keys = new String [2];
+		private Node [] literals = new Node [2];
+		private int count = 0;
+		private Node param = null;
+		private ParamType [] types = {};
+		private Node [] typed = {};
+		private int [] terminals = {};
+		private int [] tails = {};
+		private int min = NONE;
+
+		private Node literal (RequestPath path, int index) {
+			int mask = keys.length - 1;
+			int hash = path.segmentHash (index);
+			for ( int i = spread (hash) & mask; keys[i] != null; i = (i + 1) & mask ) {
+				if ( keys[i].hashCode () == hash && path.segmentEquals (index, keys[i]) ) {
+					return literals[i];
+				}
+			}
+			return null;
+		}
+
+		private Node literal (String key) {
+			int mask = keys.length - 1;
+			for ( int i = spread (key.hashCode ()) & mask; keys[i] != null; i = (i + 1) & mask ) {
+				if ( keys[i].equals (key) ) { return literals[i]; }
+			}
+
+			if ( (count + 1) * 2 > keys.length ) { resize (); }
+
+			Node node = new Node ();
+			put (key, node);
+			count++;
+			return node;
+		}
+
+		private void put (String key, Node node) {
+			int mask = keys.length - 1;
+			int i = spread (key.hashCode ()) & mask;
+			while ( keys[i] != null ) { i = (i + 1) & mask; }
+			keys[i] = key;
+			literals[i] = node;
+		}
+
+		private void resize () {
+			String [] keys = this.keys;
+			Node [] literals = this.literals;
+			this.keys = new String [keys.length * 2];
+			this.literals = new Node [keys.length * 2];
+			for ( int i = 0; i < keys.length; i++ ) {
+				if ( keys[i] != null ) { put (keys[i], literals[i]); }
+			}
+		}
+
+		private static int spread (int hash) {
+			return hash ^ (hash >>> 16);
+		}
+	}
+
+	private final Node root = new Node ();
+
+	/**
+	 * Add a route descriptor, split on `/` without its leading slash. Routes have to be
+	 * added in the order of their indices.
+	 */
+	public void add (int index, String [] descriptor) {
+		Node current = root;
+		current.min = Math.min (current.min, index);
+
+		int last = descriptor.length - 1;
+		for ( int i = 0; i < descriptor.length; i++ ) {
+			String part = descriptor[i];
+			if ( i == last && part.startsWith ("::") ) {
+				current.tails = append (current.tails, index);
+				return;
+			}
+			current = child (current, part);
+			current.min = Math.min (current.min, index);
+		}
+
+		current.terminals = append (current.terminals, index);
+	}
+
+	/**
+	 * Find the index of the first added route that matches the path, or `NONE` when
+	 * there is no such route.
+	 */
+	public int lookup (RequestPath path) {
+		return lookup (root, path, 0, NONE);
+	}
+
+	/**
+	 * Hand every route that matches the path to the consumer, not just the first one.
+	 */
+	public void collect (RequestPath path, IntConsumer consumer) {
+		collect (root, path, 0, consumer);
+	}
+
+	private void collect (Node node, RequestPath path, int depth, IntConsumer consumer) {
+		for ( int index : node.tails ) { consumer.accept (index); }
+
+		if ( depth == path.size () ) {
+			for ( int index : node.terminals ) { consumer.accept (index); }
+			return;
+		}
+
+		Node literal = node.literal (path, depth);
+		if ( literal != null ) {
+			collect (literal, path, depth + 1, consumer);
+		}
+		for ( int i = 0; i < node.typed.length; i++ ) {
+			if ( node.types[i].accepts (path, depth) ) {
+				collect (node.typed[i], path, depth + 1, consumer);
+			}
+		}
+		if ( node.param != null ) {
+			collect (node.param, path, depth + 1, consumer);
+		}
+	}
+
+	private int lookup (Node node, RequestPath path, int depth, int best) {
+		if ( node.min >= best ) { return best; }
+
+		best = first (node.tails, best);
+
+		if ( depth == path.size () ) {
+			return first (node.terminals, best);
+		}
+
+		Node literal = node.literal (path, depth);
+		if ( literal != null ) {
+			best = lookup (literal, path, depth + 1, best);
+		}
+		for ( int i = 0; i < node.typed.length; i++ ) {
+			if ( node.typed[i].min < best && node.types[i].accepts (path, depth) ) {
+				best = lookup (node.typed[i], path, depth + 1, best);
+			}
+		}
+		if ( node.param != null ) {
+			best = lookup (node.param, path, depth + 1, best);
+		}
+
+		return best;
+	}
+
+	private int first (int [] indices, int best) {
+		return indices.length > 0 && indices[0] < best ? indices[0] : best;
+	}
+
+	private Node child (Node node, String part) {
+		ParamType type = part.startsWith (":") ? ParamType.of (part) : null;
+		if ( type != null && type != ParamType.STRING ) {
+			for ( int i = 0; i < node.types.length; i++ ) {
+				if ( node.types[i] == type ) { return node.typed[i]; }
+			}
+			node.types = Arrays.copyOf (node.types, node.types.length + 1);
+			node.typed = Arrays.copyOf (node.typed, node.typed.length + 1);
+			node.types[node.types.length - 1] = type;
+			return node.typed[node.typed.length - 1] = new Node ();
+		}
+
+		if ( part.startsWith (":") ) {
+			if ( node.param == null ) { node.param = new Node (); }
+			return node.param;
+		}
+
+		return node.literal (part);
+	}
+
+	private int [] append (int [] indices, int index) {
+		int [] result = Arrays.copyOf (indices, indices.length + 1);
+		result[indices.length] = index;
+		return result;
+	}
+
+}
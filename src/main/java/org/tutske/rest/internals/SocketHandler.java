@@ -25,15 +25,15 @@ public class SocketHandler extends WebSocketHandler {
 	}
 
 	private final ThreadLocal<UrlRoute<SocketFunction>> route = new ThreadLocal<> ();
+	private final ThreadLocal<RequestPath> path = new ThreadLocal<> ();
 
 	@Override
 	public void configure (WebSocketServletFactory factory) {
 		factory.setCreator ((request, response) -> {
-			String pathstring = request.getHttpServletRequest ().getRequestURI ();
 			UrlRoute<SocketFunction> route = this.route.get ();
 			SocketFunction function = route.getHandler ();
 
-			ParameterBag path = route.extractMatches (pathstring, pathstring.substring (1).split ("/"));
+			ParameterBag path = route.extractMatches (this.path.get ());
 			SocketRequest socketRequest = new SocketRequest (request, response, path);
 
 			try {
@@ -49,11 +49,13 @@ public class SocketHandler extends WebSocketHandler {
 	public void handle (String s, Request base, HttpServletRequest request, HttpServletResponse response)
 	throws IOException, ServletException {
 		Method method = Method.valueOf (base.getMethod ());
-		UrlRoute<SocketFunction> route = router.route (method, s);
+		RequestPath path = new RequestPath (s);
+		UrlRoute<SocketFunction> route = router.route (method, path);
 
 		if ( route == null ) { return; }
 
 		this.route.set (route);
+		this.path.set (path);
 		super.handle (s, base, request, response);
 	}
 
@@ -0,0 +1,98 @@
+package org.tutske.rest.internals;
+
+import org.tutske.rest.data.RawContent;
+import org.tutske.rest.data.RestArray;
+import org.tutske.rest.data.RestStructure;
+
+import java.util.Map;
+
+
+/**
+ * A 64 bit FNV-1a hash over a structure as it is, without serializing it. Tags, child
+ * tags, attributes, keys and values all count, and every kind of value is marked so that,
+ * for instance, the number 1 and the string "1" hash differently.
+ */
+public class StructureHash {
+
+	private static final long OFFSET = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	public static long of (RestStructure structure) {
+		if ( structure instanceof RawContent ) {
+			return text (mark (OFFSET, 'r'), ((RawContent) structure).getContent ());
+		}
+		return value (OFFSET, structure);
+	}
+
+	/**
+	 * The hash of the structure mixed with the mime type it is serialized as, for things
+	 * that differ between representations of the same structure.
+	 */
+	public static long of (RestStructure structure, String mime) {
+		return text (mark (of (structure), 'm'), mime);
+	}
+
+	private static long value (long hash, Object value) {
+		if ( value == null ) {
+			return mark (hash, 'n');
+		} else if ( value instanceof String ) {
+			return text (mark (hash, 's'), (String) value);
+		} else if ( value instanceof Boolean ) {
+			return mark (hash, (Boolean) value ? 't' : 'f');
+		} else if ( value instanceof Number ) {
+			return text (mark (hash, 'd'), value.toString ());
+		} else if ( value instanceof RestArray ) {
+			RestArray array = (RestArray) value;
+			hash = text (mark (hash, 'a'), array.getTag ());
+			hash = text (hash, array.getChildTag ());
+			hash = map (hash, array.getAttributes ());
+			return iterable (hash, array);
+		} else if ( value instanceof Map ) {
+			String tag = value instanceof RestStructure ? ((RestStructure) value).getTag () : null;
+			return map (text (mark (hash, 'o'), tag), (Map<?, ?>) value);
+		} else if ( value instanceof Iterable ) {
+			return iterable (mark (hash, 'l'), (Iterable<?>) value);
+		} else {
+			return text (text (mark (hash, 'x'), value.getClass ().getName ()), value.toString ());
+		}
+	}
+
+	private static long map (long hash, Map<?, ?> map) {
+		hash = mix (hash, map.size ());
+		for ( Map.Entry<?, ?> entry : map.entrySet () ) {
+			hash = text (hash, String.valueOf (entry.getKey ()));
+			hash = value (hash, entry.getValue ());
+		}
+		return mark (hash, '}');
+	}
+
+	private static long iterable (long hash, Iterable<?> items) {
+		for ( Object item : items ) {
+			hash = value (hash, item);
+		}
+		return mark (hash, ']');
+	}
+
+	private static long text (long hash, String text) {
+		if ( text == null ) { return mark (hash, 0); }
+		hash = mix (hash, text.length ());
+		for ( int i = 0; i < text.length (); i++ ) {
+			char c = text.charAt (i);
+			hash = (hash ^ (c & 0xFF)) * PRIME;
+			hash = (hash ^ (c >>> 8)) * PRIME;
+		}
+		return hash;
+	}
+
+	private static long mix (long hash, int value) {
+		hash = (hash ^ (value & 0xFF)) * PRIME;
+		hash = (hash ^ ((value >>> 8) & 0xFF)) * PRIME;
+		hash = (hash ^ ((value >>> 16) & 0xFF)) * PRIME;
+		return (hash ^ (value >>> 24)) * PRIME;
+	}
+
+	private static long mark (long hash, int marker) {
+		return (hash ^ marker) * PRIME;
+	}
+
+}
@@ -5,6 +5,7 @@ import org.tutske.rest.data.RestObject;
 import org.tutske.rest.data.RestStructure;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.Text;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -18,46 +19,114 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
+/**
+ * Builds a dom tree for a structure and writes it out with a transformer. Neither document
+ * builders nor transformers can be used by two threads at once, so each serialization
+ * takes a pair out of a pool and puts it back when it is done. The indentation is put in
+ * the tree as text, which gives the same output as the {@link XmlStreamSerializer}.
+ */
 public class XmlDomSerializer implements Serializer {
 
-	private final DocumentBuilder builder;
-	private final Transformer transformer;
+	private static final int MAX_POOLED = 64;
 
-	public XmlDomSerializer () {
-		try {
-			builder = DocumentBuilderFactory.newInstance ().newDocumentBuilder ();
-			TransformerFactory factory = TransformerFactory.newInstance ();
-			factory.setAttribute ("indent-number", 4);
-			transformer = factory.newTransformer ();
-			transformer.setOutputProperty (OutputKeys.INDENT, "yes");
-		} catch (Exception exception) {
-			throw new RuntimeException (exception);
+	private static class Tools {
+		private final DocumentBuilder builder;
+		private final Transformer transformer;
+
+		public Tools (DocumentBuilder builder, Transformer transformer) {
+			this.builder = builder;
+			this.transformer = transformer;
 		}
 	}
 
+	private final Queue<Tools> pool = new ConcurrentLinkedQueue<> ();
+	private final AtomicInteger pooled = new AtomicInteger ();
+	private final DocumentBuilderFactory builders;
+	private final TransformerFactory transformers;
+
+	public XmlDomSerializer () {
+		builders = DocumentBuilderFactory.newInstance ();
+		transformers = TransformerFactory.newInstance ();
+		release (create ());
+	}
+
 	@Override
 	public String serialize (RestStructure structure, Map<String, String> attributes) {
 		StringWriter writer = new StringWriter ();
-		serialize (structure, writer);
-		return writer.toString ().replaceAll ("/>", " />").replace ("?>", "?>\n");
+		serialize (structure, attributes, writer);
+		return writer.toString ();
 	}
 
 	@Override
 	public void serialize (RestStructure structure, Map<String, String> attributes, Writer writer) {
-		serialize (builder.newDocument (), structure, writer);
-	}
-
-	private void serialize (Document document, RestStructure structure, Writer writer) {
 		if ( structure.getTag () == null || structure.getTag ().equals (".") ) {
 			throw new RuntimeException ("root element has no tag name");
 		}
 
-		Element xml = serialize (document, structure, structure.getTag ());
+		Tools tools = acquire ();
+		Element xml = serialize (tools.builder.newDocument (), structure, structure.getTag ());
+		indent (xml, 0);
+
+		try {
+			writer.write ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			tools.transformer.transform (new DOMSource (xml), new StreamResult (writer));
+			writer.write ('\n');
+		} catch ( Exception exception) {
+			throw new RuntimeException (exception);
+		}
+
+		release (tools);
+	}
+
+	private Tools acquire () {
+		Tools tools = pool.poll ();
+		if ( tools != null ) {
+			pooled.decrementAndGet ();
+			return tools;
+		}
+		return create ();
+	}
+
+	private void release (Tools tools) {
+		if ( pooled.incrementAndGet () > MAX_POOLED ) {
+			pooled.decrementAndGet ();
+			return;
+		}
+		pool.offer (tools);
+	}
+
+	private synchronized Tools create () {
+		try {
+			Transformer transformer = transformers.newTransformer ();
+			transformer.setOutputProperty (OutputKeys.OMIT_XML_DECLARATION, "yes");
+			transformer.setOutputProperty (OutputKeys.INDENT, "no");
+			return new Tools (builders.newDocumentBuilder (), transformer);
+		} catch (Exception exception) {
+			throw new RuntimeException (exception);
+		}
+	}
+
+	/**
+	 * Puts every child of the element on a line of its own, unless the element only
+	 * holds a single piece of text.
+	 */
+	private void indent (Element element, int depth) {
+		Node first = element.getFirstChild ();
+		if ( first == null || (first.getNextSibling () == null && first.getNodeType () == Node.TEXT_NODE) ) {
+			return;
+		}
 
-		try { transformer.transform (new DOMSource (xml), new StreamResult (writer)); }
-		catch ( Exception exception) { throw new RuntimeException (exception); }
+		Document document = element.getOwnerDocument ();
+		for ( Node node = first; node != null; node = node.getNextSibling () ) {
+			element.insertBefore (document.createTextNode (XmlStreamSerializer.indentation (depth + 1)), node);
+			if ( node instanceof Element ) { indent ((Element) node, depth + 1); }
+		}
+		element.appendChild (document.createTextNode (XmlStreamSerializer.indentation (depth)));
 	}
 
 	private Element toElement (Document document, RestStructure structure, String tag) {
@@ -6,20 +6,52 @@ import org.tutske.rest.data.RestArray;
 import org.tutske.rest.data.RestObject;
 import org.tutske.rest.data.RestStructure;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Map;
 import java.util.Map.Entry;
 
 
+/**
+ * Writes structures as xml straight to the writer, in one pass over the structure. All
+ * state lives on the stack of a single call, so one serializer can be shared by all
+ * threads. In compact mode the xml has no indentation and no line breaks.
+ */
 public class XmlSerializer implements Serializer {
 
 	private static final Logger logger = LoggerFactory.getLogger (XmlSerializer.class);
-	private int level = 0;
+	private static final String [] INDENTS = new String [32];
+
+	static {
+		StringBuilder tabs = new StringBuilder ();
+		for ( int i = 0; i < INDENTS.length; i++ ) {
+			INDENTS[i] = tabs.toString ();
+			tabs.append ('\t');
+		}
+	}
+
+	private final boolean compact;
+
+	public XmlSerializer () {
+		this (false);
+	}
+
+	public XmlSerializer (boolean compact) {
+		this.compact = compact;
+	}
 
 	@Override
-	public void serialize (RestStructure object, Map<String, String> attributes, Writer writer) {
-		try { writer.write (serialize (object)); }
-		catch (Exception exception) {
+	public void serialize (RestStructure structure, Map<String, String> attributes, Writer writer) {
+		if ( ! hasTag (structure) ) {
+			throw new RuntimeException ("Can not serialize a structure without a tag to xml");
+		}
+
+		try {
+			writer.write ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			newline (writer);
+			element (writer, structure, structure.getTag (), 0);
+		} catch (IOException exception) {
 			logger.debug ("could not write serialization to writer", exception);
 			throw new RuntimeException (exception);
 		}
@@ -27,103 +59,175 @@ public class XmlSerializer implements Serializer {
 
 	@Override
 	public String serialize (RestStructure structure, Map<String, String> attributes) {
-		if ( ! hasTag (structure) ) {
-			throw new RuntimeException ();
-		}
-		level = 0;
-		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
-			serializeInto (structure, structure.getTag ());
+		StringWriter writer = new StringWriter ();
+		serialize (structure, attributes, writer);
+		return writer.toString ();
 	}
 
-	private String serializeInto (RestStructure structure, String tagname) {
-		String result = indent () + "<" + tagname;
+	private void element (Writer writer, RestStructure structure, String tagname, int depth) throws IOException {
+		indent (writer, depth);
+		writer.write ('<');
+		writer.write (tagname);
 		for ( Entry<String, Object> attribute : structure.getAttributes ().entrySet () ) {
-			result += " " + attribute.getKey () + "=\"" + attribute.getValue () + "\"";
+			writer.write (' ');
+			writer.write (attribute.getKey ());
+			writer.write ("=\"");
+			escape (writer, String.valueOf (attribute.getValue ()), true);
+			writer.write ('"');
 		}
 
-		level++;
-		String internal = serializeInternal (structure);
-		level--;
-
-		if ( internal.isEmpty () ) {
-			return result + " />\n";
-		} else {
-			return  result + ">\n" + internal + indent () + "</" + tagname + ">\n";
+		if ( isEmpty (structure) ) {
+			writer.write (" />");
+			newline (writer);
+			return;
 		}
+
+		writer.write ('>');
+		newline (writer);
+		internal (writer, structure, depth + 1);
+		close (writer, tagname, depth);
 	}
 
-	private String serializeInternal (RestStructure structure) {
+	private void internal (Writer writer, RestStructure structure, int depth) throws IOException {
 		if ( structure instanceof RestObject ) {
-			return serializeInternal ((RestObject) structure);
+			internal (writer, (RestObject) structure, depth);
 		} else if ( structure instanceof RestArray ) {
-			return serializeInternal ((RestArray) structure);
+			internal (writer, (RestArray) structure, depth);
 		}
-		return null;
 	}
 
-	private String serializeInternal (RestArray array) {
-		String result = "";
-
-		String start = hasChildTag (array) ? "<" + array.getChildTag () + ">" : "";
-		String end = hasChildTag (array) ? "</" + array.getChildTag () + ">" : "";
+	private void internal (Writer writer, RestArray array, int depth) throws IOException {
+		boolean childTag = hasChildTag (array);
+		String child = array.getChildTag ();
 
 		for ( Object object : array ) {
-			if ( object instanceof RestStructure ) {
-				RestStructure r = (RestStructure) object;
-				if ( ! hasChildTag (array) && ! hasTag (r) ) {
-					if ( r.getAttributes ().size () > 0 ) {
-						throw new RuntimeException ("Noting to add attributes to");
-					}
-					result += serializeInternal (r);
-				} else if ( hasChildTag (array) && hasTag (r) ) {
-					result += indent () + start + "\n";
-					level++;
-					result += serialize (r);
-					level--;
-					result += indent () + end + "\n";
-				} else if ( hasChildTag (array) ) {
-					result += serializeInto (r, array.getChildTag ());
-				} else {
-					result += serialize (r);
+			if ( ! (object instanceof RestStructure) ) {
+				indent (writer, depth);
+				if ( childTag ) { open (writer, child); }
+				primitive (writer, object);
+				if ( childTag ) { end (writer, child); }
+				newline (writer);
+				continue;
+			}
+
+			RestStructure r = (RestStructure) object;
+			if ( ! childTag && ! hasTag (r) ) {
+				if ( r.getAttributes ().size () > 0 ) {
+					throw new RuntimeException ("Noting to add attributes to");
 				}
+				internal (writer, r, depth);
+			} else if ( childTag && hasTag (r) ) {
+				indent (writer, depth);
+				open (writer, child);
+				newline (writer);
+				element (writer, r, r.getTag (), depth + 1);
+				close (writer, child, depth);
+			} else if ( childTag ) {
+				element (writer, r, child, depth);
 			} else {
-				result += indent () + start;
-				result += serializePrimitive (object);
-				result += end;
+				element (writer, r, r.getTag (), depth);
 			}
 		}
-		return result;
 	}
 
-	private String serializeInternal (RestObject object) {
-		String result = "";
+	private void internal (Writer writer, RestObject object, int depth) throws IOException {
 		for ( Entry<String, Object> entry : object.entrySet () ) {
-			if ( entry.getKey ().equals ("$attributes") ) {
-				continue;
-			}
+			String key = entry.getKey ();
+			if ( key.equals ("$attributes") ) { continue; }
+
 			Object value = entry.getValue ();
-			if ( value instanceof RestStructure ) {
+			if ( value instanceof RestStructure && hasTag ((RestStructure) value) ) {
 				RestStructure r = (RestStructure) value;
-				if ( hasTag (r) ) {
-					result += indent () + "<" + entry.getKey () + ">\n";
-					level++;
-					result += serialize (r);
-					level--;
-					result += indent () + "</" + entry.getKey () + ">\n";
-				} else {
-					result += serializeInto (r, entry.getKey ());
-				}
+				indent (writer, depth);
+				open (writer, key);
+				newline (writer);
+				element (writer, r, r.getTag (), depth + 1);
+				close (writer, key, depth);
+			} else if ( value instanceof RestStructure ) {
+				element (writer, (RestStructure) value, key, depth);
 			} else {
-				result += indent () + "<" + entry.getKey () + ">";
-				result += serializePrimitive (value);
-				result += "</" + entry.getKey () + ">" + "\n";
+				indent (writer, depth);
+				open (writer, key);
+				primitive (writer, value);
+				end (writer, key);
+				newline (writer);
 			}
 		}
-		return result;
 	}
 
-	private String serializePrimitive (Object primitive) {
-		return primitive.toString ();
+	/**
+	 * Whether the structure has nothing to put between its start and end tag, in which
+	 * case it is written as a single self closing tag.
+	 */
+	private boolean isEmpty (RestStructure structure) {
+		if ( structure instanceof RestObject ) {
+			RestObject object = (RestObject) structure;
+			return object.isEmpty () || (object.size () == 1 && object.containsKey ("$attributes"));
+		} else if ( structure instanceof RestArray ) {
+			RestArray array = (RestArray) structure;
+			if ( hasChildTag (array) ) { return array.isEmpty (); }
+			for ( Object object : array ) {
+				if ( ! (object instanceof RestStructure) ) { return false; }
+				RestStructure r = (RestStructure) object;
+				if ( hasTag (r) || ! r.getAttributes ().isEmpty () || ! isEmpty (r) ) { return false; }
+			}
+		}
+		return true;
+	}
+
+	private void primitive (Writer writer, Object primitive) throws IOException {
+		escape (writer, primitive.toString (), false);
+	}
+
+	private void open (Writer writer, String tagname) throws IOException {
+		writer.write ('<');
+		writer.write (tagname);
+		writer.write ('>');
+	}
+
+	private void end (Writer writer, String tagname) throws IOException {
+		writer.write ("</");
+		writer.write (tagname);
+		writer.write ('>');
+	}
+
+	private void close (Writer writer, String tagname, int depth) throws IOException {
+		indent (writer, depth);
+		end (writer, tagname);
+		newline (writer);
+	}
+
+	private void escape (Writer writer, String value, boolean attribute) throws IOException {
+		int start = 0;
+		for ( int i = 0; i < value.length (); i++ ) {
+			String replacement;
+			switch ( value.charAt (i) ) {
+				case '&': replacement = "&amp;"; break;
+				case '<': replacement = "&lt;"; break;
+				case '>': replacement = "&gt;"; break;
+				case '"': replacement = attribute ? "&quot;" : null; break;
+				default: replacement = null;
+			}
+			if ( replacement == null ) { continue; }
+
+			writer.write (value, start, i - start);
+			writer.write (replacement);
+			start = i + 1;
+		}
+		writer.write (value, start, value.length () - start);
+	}
+
+	private void indent (Writer writer, int depth) throws IOException {
+		if ( compact ) { return; }
+		if ( depth < INDENTS.length ) {
+			writer.write (INDENTS[depth]);
+		} else {
+			for ( int i = 0; i < depth; i++ ) { writer.write ('\t'); }
+		}
+	}
+
+	private void newline (Writer writer) throws IOException {
+		if ( ! compact ) { writer.write ('\n'); }
 	}
 
 	private boolean hasTag (RestStructure structure) {
@@ -134,11 +238,4 @@ public class XmlSerializer implements Serializer {
 		return array.getChildTag () != null && ! array.getChildTag ().equals (".");
 	}
 
-	private String indent () {
-		String tabs = "";
-		for (int i = 0; i < level; i++ ) {
-			tabs += "\t";
-		}
-		return tabs;
-	}
 }
@@ -0,0 +1,220 @@
+package org.tutske.rest.internals;
+
+import org.tutske.rest.data.RestArray;
+import org.tutske.rest.data.RestObject;
+import org.tutske.rest.data.RestStructure;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+
+/**
+ * Writes structures as xml through a stax stream writer, without building a tree first,
+ * which makes it a better fit for large responses than the {@link XmlDomSerializer}. The
+ * output is the same as that of the dom serializer, so the two can be swapped freely. The
+ * one exception are tabs, line breaks and characters outside the basic plane in attribute
+ * values, which the dom writes as character references and stax can only write as is.
+ */
+public class XmlStreamSerializer implements Serializer {
+
+	private static final String [] INDENTS = new String [32];
+
+	static {
+		StringBuilder indent = new StringBuilder ("\n");
+		for ( int i = 0; i < INDENTS.length; i++ ) {
+			INDENTS[i] = indent.toString ();
+			indent.append ("    ");
+		}
+	}
+
+	static String indentation (int depth) {
+		if ( depth < INDENTS.length ) { return INDENTS[depth]; }
+
+		StringBuilder indent = new StringBuilder (INDENTS[INDENTS.length - 1]);
+		for ( int i = INDENTS.length - 1; i < depth; i++ ) { indent.append ("    "); }
+		return indent.toString ();
+	}
+
+	private static class Child {
+		private final String tag;
+		private final Object value;
+
+		public Child (String tag, Object value) {
+			this.tag = tag;
+			this.value = value;
+		}
+	}
+
+	private final XMLOutputFactory factory = XMLOutputFactory.newInstance ();
+
+	@Override
+	public String serialize (RestStructure structure, Map<String, String> attributes) {
+		StringWriter writer = new StringWriter ();
+		serialize (structure, attributes, writer);
+		return writer.toString ();
+	}
+
+	@Override
+	public void serialize (RestStructure structure, Map<String, String> attributes, Writer writer) {
+		if ( ! hasTag (structure) ) {
+			throw new RuntimeException ("root element has no tag name");
+		}
+
+		try {
+			XMLStreamWriter xml = factory.createXMLStreamWriter (writer);
+			xml.writeStartDocument ("UTF-8", "1.0");
+			xml.writeCharacters ("\n");
+			element (xml, structure, structure.getTag (), 0);
+			xml.writeCharacters ("\n");
+			xml.writeEndDocument ();
+			xml.close ();
+		} catch (XMLStreamException exception) {
+			throw new RuntimeException (exception);
+		}
+	}
+
+	private void element (XMLStreamWriter xml, RestStructure structure, String tag, int depth)
+	throws XMLStreamException {
+		if ( hasTag (structure) && ! structure.getTag ().equals (tag) ) {
+			xml.writeStartElement (tag);
+			xml.writeCharacters (indentation (depth + 1));
+			element (xml, structure, structure.getTag (), depth + 1);
+			xml.writeCharacters (indentation (depth));
+			xml.writeEndElement ();
+			return;
+		}
+
+		List<Child> children = new ArrayList<> ();
+		children (structure, children);
+
+		boolean text = children.size () == 1 && children.get (0).tag == null;
+		if ( children.isEmpty () || (text && children.get (0).value.toString ().isEmpty ()) ) {
+			xml.writeEmptyElement (tag);
+			attributes (xml, structure);
+			return;
+		}
+
+		xml.writeStartElement (tag);
+		attributes (xml, structure);
+
+		if ( text ) {
+			text (xml, children.get (0).value.toString ());
+			xml.writeEndElement ();
+			return;
+		}
+
+		for ( Child child : children ) {
+			xml.writeCharacters (indentation (depth + 1));
+			if ( child.tag == null ) {
+				text (xml, child.value.toString ());
+			} else if ( child.value instanceof RestStructure ) {
+				element (xml, (RestStructure) child.value, child.tag, depth + 1);
+			} else {
+				primitive (xml, child.tag, child.value);
+			}
+		}
+		xml.writeCharacters (indentation (depth));
+		xml.writeEndElement ();
+	}
+
+	/**
+	 * Attributes are written ordered by name, the way the dom keeps them.
+	 */
+	private void attributes (XMLStreamWriter xml, RestStructure structure) throws XMLStreamException {
+		Map<String, Object> attributes = structure.getAttributes ();
+		if ( attributes.size () > 1 ) { attributes = new TreeMap<> (attributes); }
+		for ( Entry<String, Object> entry : attributes.entrySet () ) {
+			xml.writeAttribute (entry.getKey (), entry.getValue ().toString ());
+		}
+	}
+
+	private void primitive (XMLStreamWriter xml, String tag, Object value) throws XMLStreamException {
+		String text = value.toString ();
+		if ( text.isEmpty () ) {
+			xml.writeEmptyElement (tag);
+			return;
+		}
+		xml.writeStartElement (tag);
+		text (xml, text);
+		xml.writeEndElement ();
+	}
+
+	/**
+	 * Writes text the way the dom transformer does, with carriage returns, c1 control
+	 * characters and characters outside the basic plane as character references.
+	 */
+	private void text (XMLStreamWriter xml, String text) throws XMLStreamException {
+		int start = 0;
+		for ( int i = 0; i < text.length (); i++ ) {
+			char c = text.charAt (i);
+			if ( c != '\r' && (c < 0x7F || c > 0x9F) && ! Character.isHighSurrogate (c) ) { continue; }
+
+			if ( start < i ) { xml.writeCharacters (text.substring (start, i)); }
+			int code = text.codePointAt (i);
+			xml.writeEntityRef ("#" + code);
+			i += Character.charCount (code) - 1;
+			start = i + 1;
+		}
+
+		if ( start == 0 ) { xml.writeCharacters (text); }
+		else if ( start < text.length () ) { xml.writeCharacters (text.substring (start)); }
+	}
+
+	/**
+	 * The nodes that end up in the element for this structure, with untagged structures
+	 * in arrays merged into it. Text nodes have no tag.
+	 */
+	private void children (RestStructure structure, List<Child> children) {
+		if ( structure instanceof RestObject ) {
+			children ((RestObject) structure, children);
+		} else if ( structure instanceof RestArray ) {
+			children ((RestArray) structure, children);
+		} else {
+			throw new RuntimeException ("structure is not an object or an array?");
+		}
+	}
+
+	private void children (RestObject object, List<Child> children) {
+		for ( Entry<String, Object> entry : object.entrySet () ) {
+			if ( "$attributes".equals (entry.getKey ()) ) { continue; }
+			children.add (new Child (entry.getKey (), entry.getValue ()));
+		}
+	}
+
+	private void children (RestArray array, List<Child> children) {
+		for ( Object value : array ) {
+			if ( ! (value instanceof RestStructure) ) {
+				children.add (new Child (hasChildTag (array) ? array.getChildTag () : null, value));
+				continue;
+			}
+
+			RestStructure r = (RestStructure) value;
+			String childtag = hasChildTag (array) ? array.getChildTag () : r.getTag ();
+
+			if ( childtag == null && r.getAttributes ().size () > 0 ) {
+				throw new RuntimeException ("No tag for nested structure");
+			} else if ( childtag == null ) {
+				children (r, children);
+			} else {
+				children.add (new Child (childtag, r));
+			}
+		}
+	}
+
+	private boolean hasTag (RestStructure structure) {
+		return structure.getTag () != null && ! structure.getTag ().equals (".");
+	}
+
+	private boolean hasChildTag (RestArray array) {
+		return array.getChildTag () != null && ! array.getChildTag ().equals (".");
+	}
+
+}
@@ -2,8 +2,8 @@ package org.tutske.rest.jwt;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.tutske.rest.AsyncRestFilter;
 import org.tutske.rest.HttpRequest;
-import org.tutske.rest.RestFilter;
 import org.tutske.rest.data.RestObject;
 import org.tutske.rest.data.RestStructure;
 import org.tutske.rest.exceptions.InvalidJwtException;
@@ -11,6 +11,7 @@ import org.tutske.rest.internals.Chain;
 import org.tutske.utils.Clock;
 
 import java.util.Date;
+import java.util.concurrent.CompletionStage;
 
 
 /**
@@ -22,8 +23,12 @@ import java.util.Date;
  * Setting strict will make this class throw an response exception instead of
  * not setting the principal. Non strict mode can be used when you want to use
  * the same url to serve some response to anonymous users as well.
+ *
+ * The payload of the token is the principal. Filters that tell clients apart by
+ * their principal compare principals with `equals`, so the payload class should
+ * implement it.
  */
-public class JwtFilter implements RestFilter {
+public class JwtFilter implements AsyncRestFilter {
 
 	public static class Config {
 		public Boolean strict = null;
@@ -91,42 +96,56 @@ public class JwtFilter implements RestFilter {
 
 	@Override
 	public RestStructure call (HttpRequest source, Chain<HttpRequest, RestStructure> chain) throws Exception {
+		authenticate (source);
+		return chain.call (source);
+	}
+
+	@Override
+	public CompletionStage<RestStructure> callAsync (
+		HttpRequest source, Chain<HttpRequest, CompletionStage<RestStructure>> chain
+	) throws Exception {
+		authenticate (source);
+		return chain.call (source);
+	}
+
+	private void authenticate (HttpRequest source) {
 		String authorization = source.getHeader (header);
 
 		if ( authorization == null || authorization.isEmpty () ) {
-			if ( ! config.forceToken ) { return chain.call (source); }
-			else { return cutShort ("No authorization token provided", source, chain); }
+			if ( config.forceToken ) { cutShort ("No authorization token provided", source); }
+			return;
 		}
 
 		JsonWebToken token;
 		try { token = JsonWebToken.fromString (authorization); }
 		catch (Exception ignore) {
 			logger.info ("Failed on processing {} header as jwt.", header, ignore);
-			return cutShort ("Token could not be parsed", source, chain);
+			cutShort ("Token could not be parsed", source);
+			return;
 		}
 
 		if ( ! crypt.validate (token) ) {
-			return cutShort ("Token is not valid, hmac mismatch", source, chain);
+			cutShort ("Token is not valid, hmac mismatch", source);
+			return;
 		}
 
 		Timed timed = token.getPayload (Timed.class);
 		if ( invalidDates (timed) ) {
-			return cutShort ("The iat, nbt or exp dates are invalid", source, chain);
+			cutShort ("The iat, nbt or exp dates are invalid", source);
+			return;
 		}
 
 		source.context ().put (principal, token.getPayload (clazz));
 		source.context ().put (this.token, token);
-		return chain.call (source);
 	}
 
-	private RestStructure cutShort (String reason, HttpRequest source, Chain<HttpRequest, RestStructure> chain) throws Exception {
+	private void cutShort (String reason, HttpRequest source) {
 		if ( config.strict ) {
 			String h = source.getHeader (header);
 			throw new InvalidJwtException (reason, new RestObject () {{
 				v ("token", h == null ? "missing" : h);
 			}});
 		}
-		return chain.call (source);
 	}
 
 	private boolean invalidDates (Timed timed) {
@@ -1,13 +1,15 @@
 package org.tutske.rest.jwt;
 
+import org.tutske.rest.AsyncRestFilter;
 import org.tutske.rest.HttpRequest;
-import org.tutske.rest.RestFilter;
 import org.tutske.rest.data.RestStructure;
 import org.tutske.rest.exceptions.AuthorizationFailure;
 import org.tutske.rest.internals.Chain;
 
+import java.util.concurrent.CompletionStage;
 
-public class RequirePrincipalFilter implements RestFilter {
+
+public class RequirePrincipalFilter implements AsyncRestFilter {
 
 	private final String principal;
 
@@ -21,10 +23,22 @@ public class RequirePrincipalFilter implements RestFilter {
 
 	@Override
 	public RestStructure call (HttpRequest source, Chain<HttpRequest, RestStructure> chain) throws Exception {
+		require (source);
+		return chain.call (source);
+	}
+
+	@Override
+	public CompletionStage<RestStructure> callAsync (
+		HttpRequest source, Chain<HttpRequest, CompletionStage<RestStructure>> chain
+	) throws Exception {
+		require (source);
+		return chain.call (source);
+	}
+
+	private void require (HttpRequest source) {
 		if ( ! source.context ().containsKey (principal) ) {
 			throw new AuthorizationFailure ();
 		}
-		return chain.call (source);
 	}
 
 }
@@ -410,4 +410,23 @@ public class ParameterBagTest {
 		assertThat (bag.get ("key"), nullValue ());
 	}
 
+	@Test (expected = RuntimeException.class)
+	public void it_should_refuse_changes_once_locked () {
+		ParameterBag<String> bag = new ParameterBag<String> () {{
+			add ("key", "value");
+		}}.lock ();
+
+		bag.remove ("key");
+	}
+
+	@Test
+	public void it_should_still_be_readable_once_locked () {
+		ParameterBag<String> bag = new ParameterBag<String> () {{
+			add ("key", "value");
+		}}.lock ();
+
+		assertThat (bag.get ("key"), is ("value"));
+		assertThat (bag.isLocked (), is (true));
+	}
+
 }
@@ -0,0 +1,65 @@
+package org.tutske.rest;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+import org.tutske.rest.UrlRoute.SimpleRoute;
+
+
+public class PathParamsTest {
+
+	@Test
+	public void it_should_give_the_values_of_the_parameters () {
+		ParameterBag<String> params = extract ("/users/:id/posts/:post", "/users/abc/posts/12");
+
+		assertThat (params, instanceOf (PathParams.class));
+		assertThat (params.get ("id"), is ("abc"));
+		assertThat (params.get ("post"), is ("12"));
+		assertThat (params.size (), is (2));
+	}
+
+	@Test
+	public void it_should_give_the_remainder_of_the_url_for_tails () {
+		ParameterBag<String> params = extract ("/files/::path", "/files/to/file.ext");
+		assertThat (params.get ("path"), is ("/to/file.ext"));
+	}
+
+	@Test
+	public void it_should_know_about_missing_parameters () {
+		ParameterBag<String> params = extract ("/users/:id", "/users/abc");
+
+		assertThat (params.containsKey ("other"), is (false));
+		assertThat (params.get ("other"), nullValue ());
+		assertThat (params.getOrDefault ("other", "default"), is ("default"));
+	}
+
+	@Test
+	public void it_should_convert_values () {
+		ParameterBag<String> params = extract ("/users/:id", "/users/12");
+		assertThat (params.converted ("id", Long.class), is (12L));
+	}
+
+	@Test
+	public void it_should_be_copied_into_other_bags () {
+		ParameterBag<String> bag = new ParameterBag<> ();
+		bag.addAll (extract ("/users/:id", "/users/abc"));
+		assertThat (bag, hasEntry ("id", "abc"));
+	}
+
+	@Test
+	public void it_should_print_like_a_bag () {
+		ParameterBag<String> params = extract ("/users/:id/posts/:post", "/users/abc/posts/12");
+		assertThat (params.toString (), is ("{ \"id\": \"abc\", \"post\": \"12\" }"));
+	}
+
+	@Test (expected = RuntimeException.class)
+	public void it_should_not_allow_changes () {
+		extract ("/users/:id", "/users/abc").put ("id", "def");
+	}
+
+	private ParameterBag<String> extract (String descriptor, String url) {
+		return new SimpleRoute<> ("route", descriptor, null).extractMatches (new RequestPath (url));
+	}
+
+}
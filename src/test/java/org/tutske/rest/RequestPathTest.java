@@ -0,0 +1,73 @@
+package org.tutske.rest;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+
+@RunWith (Parameterized.class)
+public class RequestPathTest {
+
+	@Parameterized.Parameters (name = "{index} path: `{0}`")
+	public static Collection<Object []> data () {
+		return Arrays.asList (new Object[][] {
+			{ "/" },
+			{ "//" },
+			{ "/users" },
+			{ "/users/" },
+			{ "/users/abc" },
+			{ "/users/abc/" },
+			{ "/users//abc" },
+			{ "/users/abc//" },
+			{ "//users" },
+			{ "/files/with/long/path/to/file.ext" },
+		});
+	}
+
+	private final String url;
+	private final RequestPath path;
+
+	public RequestPathTest (String url) {
+		this.url = url;
+		this.path = new RequestPath (url);
+	}
+
+	@Test
+	public void it_should_split_the_path_the_same_as_string_split () {
+		assertThat (path.segments (), is (url.substring (1).split ("/")));
+	}
+
+	@Test
+	public void it_should_know_the_number_of_parts () {
+		assertThat (path.size (), is (url.substring (1).split ("/").length));
+	}
+
+	@Test
+	public void it_should_compare_parts_without_creating_them () {
+		String [] parts = url.substring (1).split ("/");
+		for ( int i = 0; i < parts.length; i++ ) {
+			assertThat (path.segmentEquals (i, parts[i]), is (true));
+			assertThat (path.segmentEquals (i, parts[i] + "x"), is (false));
+			assertThat (path.segmentHash (i), is (parts[i].hashCode ()));
+		}
+	}
+
+	@Test
+	public void it_should_give_the_tail_of_the_path () {
+		String [] parts = url.substring (1).split ("/");
+		for ( int i = 0; i <= parts.length; i++ ) {
+			StringBuilder expected = new StringBuilder ();
+			for ( int j = i; j < parts.length; j++ ) {
+				expected.append ("/").append (parts[j]);
+			}
+			assertThat (path.tail (i), is (expected.toString ()));
+		}
+	}
+
+}
@@ -3,6 +3,8 @@ package org.tutske.rest;
 import static org.junit.Assert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.tutske.rest.HttpRequest.Method.*;
+import static org.tutske.rest.UrlRoute.GlobRoute;
+import static org.tutske.rest.UrlRoute.RegexRoute;
 import static org.tutske.rest.UrlRoute.SimpleRoute;
 
 import org.junit.Test;
@@ -107,6 +109,45 @@ public class UrlRouteTest {
 		assertThat (route.linkTo (params), containsString ("/users/abc"));
 	}
 
+	@Test
+	public void it_should_encode_the_values_when_linking () {
+		UrlRoute<?> route = new SimpleRoute<> ("user", "/users/:id", null);
+
+		Map<String, String> params = new HashMap<> ();
+		params.put ("id", "a b/ü");
+
+		assertThat (route.linkTo (params), is ("/users/a%20b%2F%C3%BC"));
+	}
+
+	@Test
+	public void it_should_link_with_values_in_the_order_of_the_descriptor () {
+		UrlRoute<?> route = new SimpleRoute<> ("post", "/users/:id/posts/:post", null);
+		assertThat (route.linkTo ("abc", "12"), is ("/users/abc/posts/12"));
+	}
+
+	@Test
+	public void it_should_append_links_to_a_builder () {
+		UrlRoute<?> route = new SimpleRoute<> ("user", "/users/:id", null);
+		StringBuilder builder = new StringBuilder ("http://localhost");
+
+		route.linkTo (builder, "abc").append ("?page=2");
+
+		assertThat (builder.toString (), is ("http://localhost/users/abc?page=2"));
+	}
+
+	@Test
+	public void it_should_keep_the_slashes_of_tail_values_when_linking () {
+		UrlRoute<?> route = new SimpleRoute<> ("file", "/files/::path", null);
+		assertThat (route.linkTo ("/to/my file.txt"), is ("/files/to/my%20file.txt"));
+		assertThat (route.linkTo (""), is ("/files"));
+	}
+
+	@Test (expected = RuntimeException.class)
+	public void it_should_complain_about_missing_values_when_linking () {
+		UrlRoute<?> route = new SimpleRoute<> ("user", "/users/:id", null);
+		route.linkTo (new HashMap<> ());
+	}
+
 	@Test
 	public void it_should_match_url_with_trailing_path_paths () {
 		UrlRoute<?> route = new SimpleRoute<> ("", "/files/::path", null);
@@ -138,6 +179,143 @@ public class UrlRouteTest {
 		assertThat (params.get ("path"), is ("/with/long/path/to/file.ext"));
 	}
 
+	@Test
+	public void it_should_match_glob_routes_within_a_part () {
+		UrlRoute<?> route = new GlobRoute<> ("css", "/static/*.css", null);
+		assertThat (route.matches (GET, "/static/main.css"), is (true));
+		assertThat (route.matches (GET, "/static/main.css/"), is (true));
+		assertThat (route.matches (GET, "/static/nested/main.css"), is (false));
+		assertThat (route.matches (GET, "/static/main.js"), is (false));
+	}
+
+	@Test
+	public void it_should_match_glob_routes_across_parts () {
+		UrlRoute<?> route = new GlobRoute<> ("css", "/static/**.css", null);
+		assertThat (route.matches (GET, "/static/nested/main.css"), is (true));
+	}
+
+	@Test
+	public void it_should_match_glob_routes_with_alternatives () {
+		UrlRoute<?> route = new GlobRoute<> ("images", "/images/*.{png,jpg}", null);
+		assertThat (route.matches (GET, "/images/logo.png"), is (true));
+		assertThat (route.matches (GET, "/images/logo.jpg"), is (true));
+		assertThat (route.matches (GET, "/images/logo.gif"), is (false));
+	}
+
+	@Test
+	public void it_should_extract_the_parameters_of_glob_routes () {
+		UrlRoute<?> route = new GlobRoute<> ("docs", "/:lang/{docs,guides}/*.html/::rest", null);
+		Map<String, String> params = route.extractMatches (new RequestPath ("/en/docs/intro.html/part/one"));
+
+		assertThat (params, hasEntry ("lang", "en"));
+		assertThat (params, hasEntry ("rest", "/part/one"));
+	}
+
+	@Test
+	public void it_should_link_to_glob_routes_without_wildcards () {
+		UrlRoute<?> route = new GlobRoute<> ("user", "/users/:id", null);
+
+		Map<String, String> params = new HashMap<> ();
+		params.put ("id", "abc");
+
+		assertThat (route.linkTo (params), is ("/users/abc"));
+	}
+
+	@Test
+	public void it_should_match_regex_routes () {
+		UrlRoute<?> route = new RegexRoute<> ("user", "/users/(?<id>[0-9]+)", null);
+		assertThat (route.matches (GET, "/users/123"), is (true));
+		assertThat (route.matches (GET, "/users/abc"), is (false));
+	}
+
+	@Test
+	public void it_should_only_match_regex_routes_with_the_right_http_methods () {
+		UrlRoute<?> route = new RegexRoute<> ("user", "/users/(?<id>[0-9]+)", EnumSet.of (POST), null);
+		assertThat (route.matches (POST, "/users/123"), is (true));
+		assertThat (route.matches (GET, "/users/123"), is (false));
+	}
+
+	@Test
+	public void it_should_extract_the_named_groups_of_regex_routes () {
+		UrlRoute<?> route = new RegexRoute<> ("date", "/posts/(?<year>\\d{4})-(\\d{2})-(?<day>\\d{2})", null);
+		Map<String, String> params = route.extractMatches (new RequestPath ("/posts/2016-05-17"));
+
+		assertThat (params, hasEntry ("year", "2016"));
+		assertThat (params, hasEntry ("day", "17"));
+		assertThat (params.size (), is (2));
+	}
+
+	@Test
+	public void it_should_match_regex_routes_with_back_references () {
+		UrlRoute<?> route = new RegexRoute<> ("same", "/(?<first>[a-z]+)/\\k<first>", null);
+
+		assertThat (route.getPattern (), nullValue ());
+		assertThat (route.matches (GET, "/abc/abc"), is (true));
+		assertThat (route.matches (GET, "/abc/def"), is (false));
+		Map<String, String> params = route.extractMatches (new RequestPath ("/abc/abc"));
+		assertThat (params, hasEntry ("first", "abc"));
+	}
+
+	@Test
+	public void it_should_know_the_literal_prefix_of_pattern_routes () {
+		assertThat (new GlobRoute<> ("css", "/static/*.css", null).getPrefix (), is ("/static/"));
+		assertThat (new GlobRoute<> ("user", "/users/:id", null).getPrefix (), is ("/users/"));
+		assertThat (new RegexRoute<> ("year", "/archive/(?<year>\\d+)", null).getPrefix (), is ("/archive/"));
+		assertThat (new RegexRoute<> ("optional", "/items?/\\d+", null).getPrefix (), is ("/item"));
+		assertThat (new RegexRoute<> ("either", "/users|/groups", null).getPrefix (), is (""));
+	}
+
+	@Test
+	public void it_should_only_match_typed_parts_of_the_right_type () {
+		UrlRoute<?> route = new SimpleRoute<> ("user", "/users/:id<long>/posts/:slug<string>", null);
+
+		assertThat (route.matches (GET, "/users/12/posts/hello"), is (true));
+		assertThat (route.matches (GET, "/users/-12/posts/hello"), is (true));
+		assertThat (route.matches (GET, "/users/abc/posts/hello"), is (false));
+		assertThat (route.matches (GET, "/users/99999999999999999999/posts/hello"), is (false));
+	}
+
+	@Test
+	public void it_should_give_typed_parameters_by_their_type () {
+		UrlRoute<?> route = new SimpleRoute<> ("user", "/users/:id<long>/:active<boolean>", null);
+		ParameterBag params = route.extractMatches (new RequestPath ("/users/12/true"));
+
+		assertThat (params.getLong ("id"), is (12L));
+		assertThat (params.getBoolean ("active"), is (true));
+		assertThat (params.get ("id"), is ("12"));
+	}
+
+	@Test
+	public void it_should_link_to_typed_routes () {
+		UrlRoute<?> route = new SimpleRoute<> ("user", "/users/:id<long>", null);
+		assertThat (route.linkTo ("12"), is ("/users/12"));
+	}
+
+	@Test
+	public void it_should_match_typed_parts_in_globs () {
+		UrlRoute<?> route = new GlobRoute<> ("user", "/users/:id<int>/*.json", null);
+
+		assertThat (route.matches (GET, "/users/12/posts.json"), is (true));
+		assertThat (route.matches (GET, "/users/abc/posts.json"), is (false));
+		assertThat (route.extractMatches (new RequestPath ("/users/12/posts.json")).getInt ("id"), is (12));
+	}
+
+	@Test
+	public void it_should_not_match_numbers_out_of_range_in_globs () {
+		UrlRoute<?> ints = new GlobRoute<> ("user", "/users/:id<int>/*.json", null);
+		UrlRoute<?> longs = new GlobRoute<> ("user", "/users/:id<long>/*.json", null);
+
+		assertThat (ints.matches (GET, "/users/2147483647/posts.json"), is (true));
+		assertThat (ints.matches (GET, "/users/9999999999/posts.json"), is (false));
+		assertThat (longs.matches (GET, "/users/9999999999/posts.json"), is (true));
+		assertThat (longs.matches (GET, "/users/9999999999999999999/posts.json"), is (false));
+	}
+
+	@Test (expected = RuntimeException.class)
+	public void it_should_complain_about_unknown_types () {
+		new SimpleRoute<> ("user", "/users/:id<number>", null);
+	}
+
 	// Distinguish between get, post, put, ... request.
 
 }
@@ -3,10 +3,23 @@ package org.tutske.rest;
 import static org.junit.Assert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.tutske.rest.HttpRequest.Method.GET;
+import static org.tutske.rest.HttpRequest.Method.POST;
+import static org.tutske.rest.HttpRequest.Method.PUT;
+import static org.tutske.rest.HttpRequest.Method.DELETE;
 
 import org.junit.Test;
+import org.tutske.rest.UrlRoute.GlobRoute;
+import org.tutske.rest.UrlRoute.RegexRoute;
+import org.tutske.rest.UrlRoute.RootRoute;
 import org.tutske.rest.UrlRoute.SimpleRoute;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 
 public class UrlRouterTest {
 
@@ -35,4 +48,387 @@ public class UrlRouterTest {
 		assertThat (router.route (GET, "/users/abc"), is (router.find ("one user")));
 	}
 
+	@Test
+	public void it_should_prefer_the_first_added_route_over_a_more_specific_one () {
+		UrlRouter router = new UrlRouter ();
+		router.add (
+			new SimpleRoute ("one user", "/users/:id", null),
+			new SimpleRoute ("current user", "/users/me", null)
+		);
+
+		assertThat (router.route (GET, "/users/me"), is (router.find ("one user")));
+	}
+
+	@Test
+	public void it_should_prefer_literal_routes_that_were_added_first () {
+		UrlRouter router = new UrlRouter ();
+		router.add (
+			new SimpleRoute ("current user", "/users/me", null),
+			new SimpleRoute ("one user", "/users/:id", null)
+		);
+
+		assertThat (router.route (GET, "/users/me"), is (router.find ("current user")));
+		assertThat (router.route (GET, "/users/abc"), is (router.find ("one user")));
+	}
+
+	@Test
+	public void it_should_route_to_tail_routes () {
+		UrlRouter router = new UrlRouter ();
+		router.add (
+			new SimpleRoute ("files", "/files/::path", null),
+			new SimpleRoute ("file", "/files/:name", null)
+		);
+
+		assertThat (router.route (GET, "/files"), is (router.find ("files")));
+		assertThat (router.route (GET, "/files/a.txt"), is (router.find ("files")));
+		assertThat (router.route (GET, "/files/dir/a.txt"), is (router.find ("files")));
+	}
+
+	@Test
+	public void it_should_not_route_to_tail_routes_with_missing_parts () {
+		UrlRouter router = new UrlRouter ();
+		router.add (new SimpleRoute ("versioned files", "/files/:version/::path", null));
+
+		assertThat (router.route (GET, "/files"), nullValue ());
+		assertThat (router.route (GET, "/files/v1"), is (router.find ("versioned files")));
+	}
+
+	@Test
+	public void it_should_skip_routes_that_do_not_accept_the_method () {
+		UrlRouter router = new UrlRouter ();
+		router.add (
+			new SimpleRoute ("create user", "/users/:id", EnumSet.of (POST), null),
+			new SimpleRoute ("one user", "/users/:id", null)
+		);
+
+		assertThat (router.route (GET, "/users/abc"), is (router.find ("one user")));
+		assertThat (router.route (POST, "/users/abc"), is (router.find ("create user")));
+	}
+
+	@Test
+	public void it_should_route_the_root_url () {
+		UrlRouter router = new UrlRouter ();
+		router.add (
+			new RootRoute (null),
+			new SimpleRoute ("one user", "/:id", null)
+		);
+
+		assertThat (router.route (GET, "/"), is (router.find ("root")));
+		assertThat (router.route (GET, "/abc"), is (router.find ("one user")));
+	}
+
+	@Test
+	public void it_should_keep_the_order_between_compiled_and_custom_routes () {
+		UrlRoute custom = new CustomRoute ("custom", null, "/users/abc");
+
+		UrlRouter router = new UrlRouter ();
+		router.add (
+			new SimpleRoute ("me", "/users/me", null),
+			custom,
+			new SimpleRoute ("one user", "/users/:id", null)
+		);
+
+		assertThat (router.route (GET, "/users/me"), is (router.find ("me")));
+		assertThat (router.route (GET, "/users/abc"), is (custom));
+		assertThat (router.route (GET, "/users/xyz"), is (router.find ("one user")));
+	}
+
+	@Test
+	public void it_should_route_to_the_first_matching_pattern_route () {
+		UrlRouter router = new UrlRouter ();
+		router.add (
+			new RegexRoute ("numeric user", "/users/(?<id>[0-9]+)", null),
+			new GlobRoute ("user files", "/users/*/files/**", null),
+			new GlobRoute ("any user", "/users/:id", null),
+			new RegexRoute ("other", "/users/.*", null)
+		);
+
+		assertThat (router.route (GET, "/users/123"), is (router.find ("numeric user")));
+		assertThat (router.route (GET, "/users/abc"), is (router.find ("any user")));
+		assertThat (router.route (GET, "/users/abc/files/a/b.txt"), is (router.find ("user files")));
+		assertThat (router.route (GET, "/users/abc/groups"), is (router.find ("other")));
+		assertThat (router.route (GET, "/groups/abc"), nullValue ());
+	}
+
+	@Test
+	public void it_should_route_numbers_out_of_range_the_same_for_globs_and_simple_routes () {
+		UrlRouter router = new UrlRouter ();
+		router.add (
+			new GlobRoute ("glob user", "/globs/:id<int>", null),
+			new GlobRoute ("any glob", "/globs/*", null),
+			new SimpleRoute ("simple user", "/simple/:id<int>", null),
+			new SimpleRoute ("any simple", "/simple/:id", null)
+		);
+
+		assertThat (router.route (GET, "/globs/12"), is (router.find ("glob user")));
+		assertThat (router.route (GET, "/globs/9999999999"), is (router.find ("any glob")));
+		assertThat (router.route (GET, "/simple/12"), is (router.find ("simple user")));
+		assertThat (router.route (GET, "/simple/9999999999"), is (router.find ("any simple")));
+	}
+
+	@Test
+	public void it_should_keep_the_order_between_simple_and_pattern_routes () {
+		UrlRouter router = new UrlRouter ();
+		router.add (
+			new SimpleRoute ("me", "/users/me", null),
+			new RegexRoute ("same", "/(?<first>[a-z]+)/\\k<first>", null),
+			new GlobRoute ("any user", "/users/*", null),
+			new SimpleRoute ("one user", "/users/:id", null)
+		);
+
+		assertThat (router.route (GET, "/users/me"), is (router.find ("me")));
+		assertThat (router.route (GET, "/users/users"), is (router.find ("same")));
+		assertThat (router.route (GET, "/users/abc"), is (router.find ("any user")));
+	}
+
+	@Test
+	public void it_should_know_the_methods_that_are_routed_for_a_url () {
+		UrlRouter router = new UrlRouter ();
+		router.add (
+			new SimpleRoute ("create user", "/users/:id", EnumSet.of (POST), null),
+			new SimpleRoute ("one user", "/users/:id", null),
+			new SimpleRoute ("all users", "/users", null)
+		);
+
+		assertThat (router.allowed (new RequestPath ("/users/abc")), is (EnumSet.of (GET, POST)));
+		assertThat (router.allowed (new RequestPath ("/users")), is (EnumSet.of (GET)));
+		assertThat (router.allowed (new RequestPath ("/groups")), is (EnumSet.noneOf (HttpRequest.Method.class)));
+	}
+
+	@Test
+	public void it_should_know_the_methods_that_are_routed_for_a_url_by_patterns_and_other_routes () {
+		UrlRouter router = new UrlRouter ();
+		router.add (
+			new GlobRoute ("files", "/files/*.css", EnumSet.of (GET, PUT), null),
+			new GlobRoute ("numbered", "/files/:id<int>", EnumSet.of (DELETE), null),
+			new RegexRoute ("same", "/(?<first>[a-z]+)/\\k<first>", EnumSet.of (POST), null),
+			new SimpleRoute ("any file", "/files/::rest", null)
+		);
+
+		assertThat (router.allowed (new RequestPath ("/files/site.css")), is (EnumSet.of (GET, PUT)));
+		assertThat (router.allowed (new RequestPath ("/files/12")), is (EnumSet.of (GET, DELETE)));
+		assertThat (router.allowed (new RequestPath ("/files/99999999999")), is (EnumSet.of (GET)));
+		assertThat (router.allowed (new RequestPath ("/files/files")), is (EnumSet.of (GET, POST)));
+		assertThat (router.allowed (new RequestPath ("/groups/abc")), is (EnumSet.noneOf (HttpRequest.Method.class)));
+	}
+
+	@Test
+	public void it_should_hand_out_the_same_match_for_cached_urls () {
+		UrlRouter router = new UrlRouter ().enableCache (16);
+		router.add (new SimpleRoute ("one user", "/users/:id", null));
+
+		UrlRouter.Match first = router.match (GET, new RequestPath ("/users/abc"));
+		UrlRouter.Match second = router.match (GET, new RequestPath ("/users/abc"));
+
+		assertThat (second, sameInstance (first));
+		assertThat (second.getParams ().get ("id"), is ("abc"));
+		assertThat (router.cacheHits (), is (1L));
+		assertThat (router.cacheMisses (), is (1L));
+	}
+
+	@Test
+	public void it_should_keep_the_cache_per_method () {
+		UrlRouter router = new UrlRouter ().enableCache (16);
+		router.add (
+			new SimpleRoute ("create user", "/users/:id", EnumSet.of (POST), null),
+			new SimpleRoute ("one user", "/users/:id", null)
+		);
+
+		router.match (POST, new RequestPath ("/users/abc"));
+		UrlRouter.Match match = router.match (GET, new RequestPath ("/users/abc"));
+
+		assertThat (match.getRoute (), is (router.find ("one user")));
+		assertThat (router.cacheHits (), is (0L));
+	}
+
+	@Test
+	public void it_should_evict_urls_when_the_cache_is_full () {
+		UrlRouter router = new UrlRouter ().enableCache (1);
+		router.add (new SimpleRoute ("one user", "/users/:id", null));
+
+		router.match (GET, new RequestPath ("/users/abc"));
+		router.match (GET, new RequestPath ("/users/def"));
+		router.match (GET, new RequestPath ("/users/abc"));
+
+		assertThat (router.cacheEvictions (), is (2L));
+		assertThat (router.cacheHits (), is (0L));
+	}
+
+	@Test
+	public void it_should_not_cache_urls_without_a_route () {
+		UrlRouter router = new UrlRouter ().enableCache (16);
+		router.add (new SimpleRoute ("one user", "/users/:id", null));
+
+		assertThat (router.match (GET, new RequestPath ("/groups")), nullValue ());
+		assertThat (router.match (GET, new RequestPath ("/groups")), nullValue ());
+		assertThat (router.cacheMisses (), is (2L));
+	}
+
+	@Test
+	public void it_should_forget_cached_urls_when_routes_are_added () {
+		UrlRouter router = new UrlRouter ().enableCache (16);
+		router.add (new SimpleRoute ("all users", "/users/::rest", null));
+		router.match (GET, new RequestPath ("/users/me"));
+
+		router.add (new SimpleRoute ("current user", "/users/me", null));
+		UrlRouter.Match match = router.match (GET, new RequestPath ("/users/me"));
+
+		assertThat (match.getRoute (), is (router.find ("all users")));
+		assertThat (router.cacheHits (), is (0L));
+		assertThat (router.cacheMisses (), is (2L));
+	}
+
+	@Test (expected = RuntimeException.class)
+	public void it_should_not_allow_changes_to_cached_parameters () {
+		UrlRouter router = new UrlRouter ().enableCache (16);
+		router.add (new SimpleRoute ("one user", "/users/:id", null));
+
+		router.match (GET, new RequestPath ("/users/abc")).getParams ().put ("id", "def");
+	}
+
+	@Test
+	public void it_should_no_longer_route_to_removed_routes () {
+		UrlRouter router = new UrlRouter ();
+		router.add (
+			new SimpleRoute ("current user", "/users/me", null),
+			new SimpleRoute ("one user", "/users/:id", null)
+		);
+
+		router.remove ("current user");
+
+		assertThat (router.route (GET, "/users/me"), is (router.find ("one user")));
+		assertThat (router.find ("current user"), nullValue ());
+	}
+
+	@Test
+	public void it_should_forget_cached_urls_when_routes_are_removed () {
+		UrlRouter router = new UrlRouter ().enableCache (16);
+		router.add (new SimpleRoute ("one user", "/users/:id", null));
+		router.match (GET, new RequestPath ("/users/abc"));
+
+		router.remove ("one user");
+
+		assertThat (router.match (GET, new RequestPath ("/users/abc")), nullValue ());
+	}
+
+	@Test
+	public void it_should_keep_routing_while_routes_are_being_added () throws Exception {
+		UrlRouter router = new UrlRouter ();
+		router.add (new SimpleRoute ("one user", "/users/:id", null));
+		UrlRoute expected = router.find ("one user");
+
+		Thread writer = new Thread (() -> {
+			for ( int i = 0; i < 200; i++ ) {
+				router.add (new SimpleRoute ("group " + i, "/groups/" + i, null));
+			}
+		});
+
+		writer.start ();
+		while ( writer.isAlive () ) {
+			assertThat (router.route (GET, "/users/abc"), is (expected));
+		}
+		writer.join ();
+
+		assertThat (router.route (GET, "/groups/199"), is (router.find ("group 199")));
+	}
+
+	@Test
+	public void it_should_try_often_used_routes_first () {
+		CustomRoute users = new CustomRoute ("users", "/users/", "/users/abc");
+		CustomRoute groups = new CustomRoute ("groups", "/groups/", "/groups/abc");
+
+		UrlRouter router = new UrlRouter ().enableAdaptiveOrdering (0, TimeUnit.SECONDS, Runnable::run);
+		router.add (users, groups);
+
+		for ( int i = 0; i < 10; i++ ) {
+			router.route (GET, "/groups/abc");
+		}
+		users.calls = 0;
+
+		assertThat (router.route (GET, "/groups/abc"), is (groups));
+		assertThat (users.calls, is (0));
+	}
+
+	@Test
+	public void it_should_reorder_on_the_given_executor () {
+		CustomRoute users = new CustomRoute ("users", "/users/", "/users/abc");
+		CustomRoute groups = new CustomRoute ("groups", "/groups/", "/groups/abc");
+		List<Runnable> tasks = new ArrayList<> ();
+
+		UrlRouter router = new UrlRouter ().enableAdaptiveOrdering (0, TimeUnit.SECONDS, tasks::add);
+		router.add (users, groups);
+
+		for ( int i = 0; i < 10; i++ ) {
+			router.route (GET, "/groups/abc");
+		}
+		assertThat (tasks, hasSize (1));
+
+		tasks.get (0).run ();
+		users.calls = 0;
+
+		assertThat (router.route (GET, "/groups/abc"), is (groups));
+		assertThat (users.calls, is (0));
+	}
+
+	@Test
+	public void it_should_keep_the_first_route_winning_when_ordering_by_use () {
+		CustomRoute me = new CustomRoute ("me", "/users/", "/users/me");
+		CustomRoute any = new CustomRoute ("any", "/users", "/users/me", "/users/abc");
+		CustomRoute groups = new CustomRoute ("groups", "/groups/", "/groups/abc");
+
+		UrlRouter router = new UrlRouter ().enableAdaptiveOrdering (0, TimeUnit.SECONDS, Runnable::run);
+		router.add (me, groups, any);
+
+		for ( int i = 0; i < 10; i++ ) {
+			router.route (GET, "/users/abc");
+		}
+
+		assertThat (router.route (GET, "/users/me"), is (me));
+		assertThat (router.route (GET, "/users/abc"), is (any));
+		assertThat (router.route (GET, "/groups/abc"), is (groups));
+	}
+
+	@Test
+	public void it_should_route_on_the_type_of_parts () {
+		UrlRouter router = new UrlRouter ();
+		router.add (
+			new SimpleRoute ("by id", "/users/:id<long>", null),
+			new SimpleRoute ("by uuid", "/users/:id<uuid>", null),
+			new SimpleRoute ("by name", "/users/:name", null)
+		);
+
+		assertThat (router.route (GET, "/users/12"), is (router.find ("by id")));
+		assertThat (router.route (GET, "/users/0f8fad5b-d9cb-469f-a165-70867728950e"), is (router.find ("by uuid")));
+		assertThat (router.route (GET, "/users/abc"), is (router.find ("by name")));
+	}
+
+	@Test
+	public void it_should_not_route_parts_of_the_wrong_type () {
+		UrlRouter router = new UrlRouter ();
+		router.add (new SimpleRoute ("by id", "/users/:id<long>", null));
+
+		assertThat (router.route (GET, "/users/abc"), nullValue ());
+	}
+
+	private static class CustomRoute extends UrlRoute<Object> {
+		private final String identifier;
+		private final String prefix;
+		private final List<String> urls;
+		private int calls = 0;
+
+		public CustomRoute (String identifier, String prefix, String ... urls) {
+			this.identifier = identifier;
+			this.prefix = prefix;
+			this.urls = Arrays.asList (urls);
+		}
+
+		@Override public String getIdentifier () { return identifier; }
+		@Override public boolean matches (HttpRequest.Method method, String url) { calls++; return urls.contains (url); }
+		@Override public boolean matches (HttpRequest.Method method, String url, String [] parts) { return matches (method, url); }
+		@Override public ParameterBag extractMatches (String url, String [] parts) { return new ParameterBag (); }
+		@Override public Object getHandler () { return null; }
+		@Override public String linkTo (Map<String, String> params) { return urls.get (0); }
+		@Override public String getPrefix () { return prefix; }
+	}
+
 }
@@ -0,0 +1,274 @@
+package org.tutske.rest.filters;
+
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+import static org.tutske.rest.util.Requests.*;
+
+import org.junit.Test;
+import org.tutske.rest.HttpRequest;
+import org.tutske.rest.data.RawContent;
+import org.tutske.rest.data.RestObject;
+import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.exceptions.GatewayTimeoutException;
+import org.tutske.rest.exceptions.ResponseException;
+import org.tutske.rest.internals.Chain;
+import org.tutske.rest.internals.CompletionStages;
+import org.tutske.rest.internals.ContentSerializer;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class CoalescingFilterTest {
+
+	private final ContentSerializer serializer = serializer ();
+
+	private final CoalescingFilter filter = new CoalescingFilter (serializer);
+	private final ExecutorService executor = Executors.newCachedThreadPool ();
+	private final CountDownLatch release = new CountDownLatch (1);
+	private final AtomicInteger calls = new AtomicInteger ();
+
+	@Test
+	public void it_should_serialize_the_response_when_alone () throws Exception {
+		RestStructure result = filter.call (request ("GET", "/users/1"), chain (calls));
+
+		assertThat (result, instanceOf (RawContent.class));
+		assertThat (((RawContent) result).getContent (), containsString ("\"call\":1"));
+		assertThat (filter.inFlight (), is (0));
+	}
+
+	@Test
+	public void it_should_let_identical_requests_wait_for_the_first () throws Exception {
+		Future<RestStructure> leader = executor.submit (() -> filter.call (request ("GET", "/users/1"), blocking ()));
+		awaitFlights (1);
+
+		List<Future<RestStructure>> followers = new ArrayList<> ();
+		for ( int i = 0; i < 5; i++ ) {
+			followers.add (executor.submit (() -> filter.call (request ("GET", "/users/1"), blocking ())));
+		}
+		awaitWaiting (5);
+		release.countDown ();
+
+		String content = ((RawContent) leader.get (5, TimeUnit.SECONDS)).getContent ();
+		for ( Future<RestStructure> follower : followers ) {
+			assertThat (((RawContent) follower.get (5, TimeUnit.SECONDS)).getContent (), is (content));
+		}
+		assertThat (calls.get (), is (1));
+	}
+
+	@Test
+	public void it_should_not_let_different_requests_wait () throws Exception {
+		Future<RestStructure> first = executor.submit (() -> filter.call (request ("GET", "/users/1"), blocking ()));
+		awaitFlights (1);
+
+		filter.call (request ("GET", "/users/2"), chain (calls));
+		release.countDown ();
+		first.get (5, TimeUnit.SECONDS);
+
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_handle_requests_beyond_the_max_waiters_on_their_own () throws Exception {
+		filter.setMaxWaiters (0);
+		Future<RestStructure> first = executor.submit (() -> filter.call (request ("GET", "/users/1"), blocking ()));
+		awaitFlights (1);
+
+		filter.call (request ("GET", "/users/1"), chain (calls));
+		release.countDown ();
+		first.get (5, TimeUnit.SECONDS);
+
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test (expected = GatewayTimeoutException.class)
+	public void it_should_time_out_waiting_requests () throws Exception {
+		filter.setTimeout (10, TimeUnit.MILLISECONDS);
+		executor.submit (() -> filter.call (request ("GET", "/users/1"), blocking ()));
+		awaitFlights (1);
+
+		try {
+			filter.call (request ("GET", "/users/1"), chain (calls));
+		} finally {
+			release.countDown ();
+		}
+	}
+
+	@Test
+	public void it_should_give_waiting_requests_the_same_failure () throws Exception {
+		executor.submit (() -> filter.call (request ("GET", "/users/1"), new Chain<> ((request) -> {
+			release.await ();
+			throw new ResponseException ("Wrong Request");
+		})));
+		awaitFlights (1);
+
+		Future<RestStructure> follower = executor.submit (() -> filter.call (request ("GET", "/users/1"), chain (calls)));
+		awaitWaiting (1);
+		release.countDown ();
+
+		try {
+			follower.get (5, TimeUnit.SECONDS);
+			fail ("Expected the waiting request to fail as well");
+		} catch (ExecutionException exception) {
+			assertThat (exception.getCause (), instanceOf (ResponseException.class));
+		}
+		assertThat (calls.get (), is (0));
+	}
+
+	@Test
+	public void it_should_not_coalesce_other_methods () throws Exception {
+		filter.call (request ("POST", "/users/1"), chain (calls));
+		assertThat (filter.inFlight (), is (0));
+		assertThat (calls.get (), is (1));
+	}
+
+	@Test
+	public void it_should_not_let_requests_of_different_principals_wait () throws Exception {
+		filter.setPerPrincipal ("principal");
+		HttpRequest leader = request ("GET", "/users/1");
+		leader.context ().put ("principal", new Principal ("john"));
+		Future<RestStructure> first = executor.submit (() -> filter.call (leader, blocking ()));
+		awaitFlights (1);
+
+		HttpRequest other = request ("GET", "/users/1");
+		other.context ().put ("principal", new Principal ("jane"));
+		filter.call (other, chain (calls));
+		release.countDown ();
+		first.get (5, TimeUnit.SECONDS);
+
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_not_coalesce_conditional_requests () throws Exception {
+		Future<RestStructure> first = executor.submit (() -> filter.call (request ("GET", "/users/1"), blocking ()));
+		awaitFlights (1);
+
+		HttpRequest conditional = request ("GET", "/users/1");
+		when (conditional.getServletRequest ().getHeader ("If-None-Match")).thenReturn ("W/\"abc\"");
+		filter.call (conditional, chain (calls));
+		release.countDown ();
+		first.get (5, TimeUnit.SECONDS);
+
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_let_waiting_requests_run_on_their_own_when_the_first_is_not_ok () throws Exception {
+		HttpRequest leader = request ("GET", "/users/1");
+		when (leader.getServletResponse ().getStatus ()).thenReturn (HttpServletResponse.SC_NOT_MODIFIED);
+		Future<RestStructure> first = executor.submit (() -> filter.call (leader, blocking ()));
+		awaitFlights (1);
+
+		HttpRequest follower = request ("GET", "/users/1");
+		Future<RestStructure> second = executor.submit (() -> filter.call (follower, chain (calls)));
+		awaitWaiting (1);
+		release.countDown ();
+		first.get (5, TimeUnit.SECONDS);
+
+		assertThat (second.get (5, TimeUnit.SECONDS), instanceOf (RestObject.class));
+		verify (follower.getServletResponse (), never ()).setStatus (anyInt ());
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_give_waiting_requests_the_headers_of_the_first () throws Exception {
+		HttpRequest leader = request ("GET", "/users/1");
+		when (leader.getServletResponse ().getHeaderNames ()).thenReturn (Arrays.asList ("ETag"));
+		when (leader.getServletResponse ().getHeaders ("ETag")).thenReturn (Arrays.asList ("W/\"abc\""));
+		Future<RestStructure> first = executor.submit (() -> filter.call (leader, blocking ()));
+		awaitFlights (1);
+
+		HttpRequest follower = request ("GET", "/users/1");
+		Future<RestStructure> second = executor.submit (() -> filter.call (follower, chain (calls)));
+		awaitWaiting (1);
+		release.countDown ();
+		second.get (5, TimeUnit.SECONDS);
+
+		verify (follower.getServletResponse ()).addHeader ("ETag", "W/\"abc\"");
+	}
+
+	@Test
+	public void it_should_not_give_waiting_requests_the_cookies_of_the_first () throws Exception {
+		HttpRequest leader = request ("GET", "/users/1");
+		when (leader.getServletResponse ().containsHeader ("Set-Cookie")).thenReturn (true);
+		when (leader.getServletResponse ().getHeaderNames ()).thenReturn (Arrays.asList ("Set-Cookie"));
+		when (leader.getServletResponse ().getHeaders ("Set-Cookie")).thenReturn (Arrays.asList ("session=john"));
+		Future<RestStructure> first = executor.submit (() -> filter.call (leader, blocking ()));
+		awaitFlights (1);
+
+		HttpRequest follower = request ("GET", "/users/1");
+		Future<RestStructure> second = executor.submit (() -> filter.call (follower, chain (calls)));
+		awaitWaiting (1);
+		release.countDown ();
+		first.get (5, TimeUnit.SECONDS);
+
+		assertThat (second.get (5, TimeUnit.SECONDS), instanceOf (RestObject.class));
+		verify (follower.getServletResponse (), never ()).addHeader (eq ("Set-Cookie"), anyString ());
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_let_async_requests_wait_without_holding_on_to_a_thread () throws Exception {
+		CompletableFuture<RestStructure> future = new CompletableFuture<> ();
+		filter.callAsync (request ("GET", "/users/1"), new Chain<> ((r) -> future));
+		CompletionStage<RestStructure> follower = filter.callAsync (
+			request ("GET", "/users/1"), new Chain<> ((r) -> CompletionStages.failed (new RuntimeException ()))
+		);
+
+		assertThat (follower.toCompletableFuture ().isDone (), is (false));
+		assertThat (filter.waiting (), is (1));
+
+		future.complete (new RestObject () {{ v ("call", 1); }});
+
+		RestStructure result = follower.toCompletableFuture ().get (5, TimeUnit.SECONDS);
+		assertThat (((RawContent) result).getContent (), containsString ("\"call\":1"));
+		assertThat (filter.inFlight (), is (0));
+		assertThat (filter.waiting (), is (0));
+	}
+
+	private void awaitFlights (int flights) throws InterruptedException {
+		for ( int i = 0; i < 500 && filter.inFlight () < flights; i++ ) { Thread.sleep (2); }
+		assertThat (filter.inFlight (), is (flights));
+	}
+
+	private void awaitWaiting (int waiting) throws InterruptedException {
+		for ( int i = 0; i < 500 && filter.waiting () < waiting; i++ ) { Thread.sleep (2); }
+		assertThat (filter.waiting (), is (waiting));
+	}
+
+	private Chain<HttpRequest, RestStructure> blocking () {
+		return new Chain<> ((request) -> {
+			release.await ();
+			int call = calls.incrementAndGet ();
+			return new RestObject () {{ v ("call", call); }};
+		});
+	}
+
+	private static class Principal {
+		private final String name;
+
+		public Principal (String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString () {
+			return "principal";
+		}
+	}
+
+}
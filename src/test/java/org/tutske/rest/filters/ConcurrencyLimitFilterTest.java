@@ -0,0 +1,97 @@
+package org.tutske.rest.filters;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Test;
+import org.tutske.rest.HttpRequest;
+import org.tutske.rest.data.RestObject;
+import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.exceptions.ServiceUnavailableException;
+import org.tutske.rest.internals.Chain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+
+public class ConcurrencyLimitFilterTest {
+
+	private long now = 0;
+	private final HttpRequest request = mock (HttpRequest.class);
+
+	@Test
+	public void it_should_let_requests_through_below_the_limit () throws Exception {
+		ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter (2, 1, 10);
+		RestStructure result = filter.call (request, new Chain<> ((r) -> {
+			assertThat (filter.getInFlight (), is (1));
+			return new RestObject ();
+		}));
+
+		assertThat (result, notNullValue ());
+		assertThat (filter.getInFlight (), is (0));
+	}
+
+	@Test (expected = ServiceUnavailableException.class)
+	public void it_should_turn_requests_away_above_the_limit () throws Exception {
+		ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter (1, 1, 10);
+		filter.call (request, new Chain<> ((r) -> filter.call (request, new Chain<> ((rr) -> new RestObject ()))));
+	}
+
+	@Test
+	public void it_should_count_async_requests_until_they_complete () throws Exception {
+		ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter (2, 1, 10);
+		CompletableFuture<RestStructure> future = new CompletableFuture<> ();
+
+		filter.callAsync (request, new Chain<> ((r) -> future));
+		assertThat (filter.getInFlight (), is (1));
+
+		future.complete (new RestObject ());
+		assertThat (filter.getInFlight (), is (0));
+	}
+
+	@Test
+	public void it_should_raise_the_limit_while_latency_stays_the_same () throws Exception {
+		ConcurrencyLimitFilter filter = filter (4);
+		for ( int i = 0; i < 20; i++ ) { round (filter, 1); }
+		assertThat (filter.getLimit (), greaterThan (4));
+	}
+
+	@Test
+	public void it_should_lower_the_limit_when_latency_goes_up () throws Exception {
+		ConcurrencyLimitFilter filter = filter (20);
+		for ( int i = 0; i < 20; i++ ) { round (filter, 1); }
+		int limit = filter.getLimit ();
+
+		for ( int i = 0; i < 5; i++ ) { round (filter, 20); }
+		assertThat (filter.getLimit (), lessThan (limit));
+	}
+
+	@Test
+	public void it_should_not_go_below_the_min_limit () throws Exception {
+		ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter (20, 10, 100).setNanos (() -> now);
+		for ( int i = 0; i < 20; i++ ) { round (filter, 1); }
+		for ( int i = 0; i < 10; i++ ) { round (filter, 1000); }
+		assertThat (filter.getLimit (), is (10));
+	}
+
+	private ConcurrencyLimitFilter filter (int limit) {
+		return new ConcurrencyLimitFilter (limit, 2, 100).setNanos (() -> now);
+	}
+
+	private void round (ConcurrencyLimitFilter filter, long millis) throws Exception {
+		List<CompletableFuture<RestStructure>> futures = new ArrayList<> ();
+		for ( int i = filter.getLimit (); i > 0; i-- ) {
+			CompletableFuture<RestStructure> future = new CompletableFuture<> ();
+			filter.callAsync (request, new Chain<> ((r) -> future));
+			futures.add (future);
+		}
+
+		now += millis * 1000000;
+		for ( CompletableFuture<RestStructure> future : futures ) {
+			future.complete (new RestObject ());
+		}
+	}
+
+}
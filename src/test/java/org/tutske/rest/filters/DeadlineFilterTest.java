@@ -0,0 +1,123 @@
+package org.tutske.rest.filters;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+import static org.tutske.rest.util.Requests.*;
+
+import org.junit.Test;
+import org.tutske.rest.Deadline;
+import org.tutske.rest.HttpRequest;
+import org.tutske.rest.data.RestObject;
+import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.exceptions.GatewayTimeoutException;
+import org.tutske.rest.exceptions.InputException;
+import org.tutske.rest.internals.Chain;
+import org.tutske.rest.internals.CompletionStages;
+import org.tutske.rest.util.Requests;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+
+public class DeadlineFilterTest {
+
+	@Test
+	public void it_should_give_requests_the_deadline_of_the_route () throws Exception {
+		HttpRequest request = request (null);
+		new DeadlineFilter (5, TimeUnit.SECONDS).call (request, chain ());
+
+		assertThat (request.getDeadline (), notNullValue ());
+		assertThat (request.getDeadline ().remaining (TimeUnit.MILLISECONDS), greaterThan (4000L));
+		assertThat (request.context ().get ("deadline"), is (request.getDeadline ()));
+	}
+
+	@Test
+	public void it_should_take_the_deadline_from_the_header_when_it_is_earlier () throws Exception {
+		HttpRequest request = request ("2s");
+		new DeadlineFilter (5, TimeUnit.SECONDS).call (request, chain ());
+
+		assertThat (request.getDeadline ().remaining (TimeUnit.MILLISECONDS), lessThanOrEqualTo (2000L));
+	}
+
+	@Test
+	public void it_should_not_let_the_header_extend_the_deadline_of_the_route () throws Exception {
+		HttpRequest request = request ("60000");
+		new DeadlineFilter (5, TimeUnit.SECONDS).call (request, chain ());
+
+		assertThat (request.getDeadline ().remaining (TimeUnit.MILLISECONDS), lessThanOrEqualTo (5000L));
+	}
+
+	@Test
+	public void it_should_leave_requests_without_header_alone_without_a_timeout () throws Exception {
+		HttpRequest request = request (null);
+		new DeadlineFilter ().call (request, chain ());
+		assertThat (request.getDeadline (), nullValue ());
+	}
+
+	@Test (expected = GatewayTimeoutException.class)
+	public void it_should_time_out_when_the_deadline_passed_before_the_chain_returned () throws Exception {
+		new DeadlineFilter (10, TimeUnit.MILLISECONDS).call (request (null), new Chain<> ((request) -> {
+			Thread.sleep (20);
+			return new RestObject ();
+		}));
+	}
+
+	@Test (expected = GatewayTimeoutException.class)
+	public void it_should_not_call_the_chain_when_the_deadline_already_passed () throws Exception {
+		new DeadlineFilter ().call (request ("0"), new Chain<> ((request) -> {
+			throw new AssertionError ("Should not be called");
+		}));
+	}
+
+	@Test
+	public void it_should_time_out_async_requests_when_the_deadline_passed () throws Exception {
+		CompletableFuture<RestStructure> future = new CompletableFuture<> ();
+		CompletionStage<RestStructure> stage = new DeadlineFilter (10, TimeUnit.MILLISECONDS)
+			.callAsync (request (null), new Chain<> ((request) -> future));
+
+		Thread.sleep (20);
+		future.complete (new RestObject ());
+
+		try {
+			CompletionStages.await (stage);
+		} catch (GatewayTimeoutException exception) {
+			return;
+		}
+		throw new AssertionError ("Expected a gateway timeout");
+	}
+
+	@Test (expected = InputException.class)
+	public void it_should_reject_invalid_headers () throws Exception {
+		new DeadlineFilter ().call (request ("soon"), chain ());
+	}
+
+	@Test (expected = InputException.class)
+	public void it_should_reject_negative_timeouts () throws Exception {
+		new DeadlineFilter ().call (request ("-5s"), chain ());
+	}
+
+	@Test (expected = InputException.class)
+	public void it_should_reject_timeouts_that_do_not_fit_in_a_long () throws Exception {
+		new DeadlineFilter ().call (request ("9223372036854776s"), chain ());
+	}
+
+	@Test
+	public void it_should_allow_very_long_timeouts () throws Exception {
+		RestStructure result = new DeadlineFilter ().call (request ("9223372036854775807ms"), chain ());
+		assertThat (result, instanceOf (RestObject.class));
+	}
+
+	@Test
+	public void it_should_tell_the_remaining_time () {
+		Deadline deadline = Deadline.after (1, TimeUnit.MINUTES);
+		assertThat (deadline.remaining (TimeUnit.SECONDS), allOf (greaterThan (58L), lessThanOrEqualTo (60L)));
+		assertThat (deadline.isExpired (), is (false));
+	}
+
+	private HttpRequest request (String timeout) {
+		return header (Requests.request ("GET", "/"), "X-Request-Timeout", timeout);
+	}
+
+}
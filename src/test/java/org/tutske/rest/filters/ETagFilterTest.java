@@ -0,0 +1,157 @@
+package org.tutske.rest.filters;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+import static org.tutske.rest.util.Requests.*;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.tutske.rest.HttpRequest;
+import org.tutske.rest.data.RestObject;
+import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.internals.Chain;
+import org.tutske.rest.internals.ContentSerializer;
+import org.tutske.rest.util.Requests;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+
+public class ETagFilterTest {
+
+	private final ContentSerializer serializer = serializer ();
+
+	private final ETagFilter filter = new ETagFilter (serializer);
+
+	@Test
+	public void it_should_give_responses_an_etag () throws Exception {
+		assertThat (etag ("john").startsWith ("W/\""), is (true));
+	}
+
+	@Test
+	public void it_should_give_the_same_etag_for_the_same_content () throws Exception {
+		assertThat (etag ("john"), is (etag ("john")));
+		assertThat (etag ("john"), not (etag ("jane")));
+	}
+
+	@Test
+	public void it_should_answer_not_modified_when_the_etag_matches () throws Exception {
+		HttpRequest request = request ("GET", "\"other\", " + etag ("john"));
+		filter.call (request, chain ("john"));
+		verify (request.getServletResponse ()).setStatus (304);
+	}
+
+	@Test
+	public void it_should_answer_not_modified_for_any_etag () throws Exception {
+		HttpRequest request = request ("GET", "*");
+		filter.call (request, chain ("john"));
+		verify (request.getServletResponse ()).setStatus (304);
+	}
+
+	@Test
+	public void it_should_not_answer_not_modified_when_the_content_changed () throws Exception {
+		HttpRequest request = request ("GET", etag ("jane"));
+		filter.call (request, chain ("john"));
+		verify (request.getServletResponse (), never ()).setStatus (304);
+	}
+
+	@Test
+	public void it_should_use_the_version_from_the_controller () throws Exception {
+		HttpRequest request = request ("GET", null);
+		filter.call (request, versioned ());
+
+		ArgumentCaptor<String> etag = ArgumentCaptor.forClass (String.class);
+		verify (request.getServletResponse ()).setHeader (eq ("ETag"), etag.capture ());
+		assertThat (etag.getValue ().startsWith ("W/\"v42-"), is (true));
+	}
+
+	@Test
+	public void it_should_give_different_etags_to_different_representations () throws Exception {
+		assertThat (etag ("john", "application/json"), not (etag ("john", "application/xml")));
+	}
+
+	@Test
+	public void it_should_give_different_version_etags_to_different_representations () throws Exception {
+		HttpRequest json = request ("GET", null, "application/json");
+		HttpRequest xml = request ("GET", null, "application/xml");
+		ArgumentCaptor<String> first = ArgumentCaptor.forClass (String.class);
+		ArgumentCaptor<String> second = ArgumentCaptor.forClass (String.class);
+
+		filter.call (json, versioned ());
+		filter.call (xml, versioned ());
+
+		verify (json.getServletResponse ()).setHeader (eq ("ETag"), first.capture ());
+		verify (xml.getServletResponse ()).setHeader (eq ("ETag"), second.capture ());
+		assertThat (first.getValue (), not (second.getValue ()));
+	}
+
+	@Test
+	public void it_should_vary_on_the_accept_header () throws Exception {
+		HttpRequest request = request ("GET", null);
+		filter.call (request, chain ("john"));
+		verify (request.getServletResponse ()).addHeader ("Vary", "Accept");
+	}
+
+	@Test
+	public void it_should_leave_other_methods_alone () throws Exception {
+		HttpRequest request = request ("POST", "*");
+		filter.call (request, chain ("john"));
+		verify (request.getServletResponse (), never ()).setHeader (eq ("ETag"), anyString ());
+	}
+
+	@Test
+	public void it_should_leave_unsuccessful_responses_alone () throws Exception {
+		HttpRequest request = request ("GET", "*");
+		when (request.getServletResponse ().getStatus ()).thenReturn (201);
+		filter.call (request, chain ("john"));
+		verify (request.getServletResponse (), never ()).setHeader (eq ("ETag"), anyString ());
+	}
+
+	@Test
+	public void it_should_tag_the_response_once_the_async_chain_completes () throws Exception {
+		String expected = etag ("john");
+		CompletableFuture<RestStructure> future = new CompletableFuture<> ();
+		HttpRequest request = request ("GET", null);
+		CompletionStage<RestStructure> stage = filter.callAsync (request, new Chain<> ((r) -> future));
+
+		verify (request.getServletResponse (), never ()).setHeader (eq ("ETag"), anyString ());
+		future.complete (new RestObject () {{ v ("name", "john"); }});
+
+		assertThat (stage.toCompletableFuture ().isDone (), is (true));
+		verify (request.getServletResponse ()).setHeader ("ETag", expected);
+	}
+
+	private String etag (String name) throws Exception {
+		return etag (name, null);
+	}
+
+	private String etag (String name, String accept) throws Exception {
+		HttpRequest request = request ("GET", null, accept);
+		filter.call (request, chain (name));
+
+		ArgumentCaptor<String> etag = ArgumentCaptor.forClass (String.class);
+		verify (request.getServletResponse ()).setHeader (eq ("ETag"), etag.capture ());
+		return etag.getValue ();
+	}
+
+	private Chain<HttpRequest, RestStructure> chain (String name) {
+		return new Chain<> ((request) -> new RestObject () {{ v ("name", name); }});
+	}
+
+	private Chain<HttpRequest, RestStructure> versioned () {
+		return new Chain<> ((r) -> {
+			r.context ().put ("version", 42);
+			return new RestObject ();
+		});
+	}
+
+	private HttpRequest request (String method, String match) {
+		return request (method, match, null);
+	}
+
+	private HttpRequest request (String method, String match, String accept) {
+		return header (header (Requests.request (method, "/users/1"), "If-None-Match", match), "Accept", accept);
+	}
+
+}
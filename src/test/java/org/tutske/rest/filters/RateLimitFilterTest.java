@@ -0,0 +1,100 @@
+package org.tutske.rest.filters;
+
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+import static org.tutske.rest.util.Requests.*;
+
+import org.junit.Test;
+import org.tutske.rest.HttpRequest;
+import org.tutske.rest.exceptions.TooManyRequestsException;
+import org.tutske.rest.util.Requests;
+import org.tutske.utils.Clock;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+
+public class RateLimitFilterTest {
+
+	private long now = 1000000;
+	private final Clock clock = () -> new Date (now);
+	private final RateLimitFilter filter = new RateLimitFilter (10, 1, TimeUnit.SECONDS, 3).setClock (clock);
+
+	@Test
+	public void it_should_let_requests_through_up_to_the_capacity () throws Exception {
+		for ( int i = 0; i < 3; i++ ) {
+			filter.call (request ("10.0.0.1", null), chain ());
+		}
+	}
+
+	@Test (expected = TooManyRequestsException.class)
+	public void it_should_turn_requests_away_beyond_the_capacity () throws Exception {
+		for ( int i = 0; i < 4; i++ ) {
+			filter.call (request ("10.0.0.1", null), chain ());
+		}
+	}
+
+	@Test
+	public void it_should_tell_when_to_retry () throws Exception {
+		for ( int i = 0; i < 3; i++ ) {
+			filter.call (request ("10.0.0.1", null), chain ());
+		}
+
+		try {
+			filter.call (request ("10.0.0.1", null), chain ());
+			fail ("Expected the request to be turned away");
+		} catch (TooManyRequestsException exception) {
+			assertThat (exception.getStatusCode (), is (429));
+			assertThat (exception.getHeaders (), hasEntry ("Retry-After", "1"));
+		}
+	}
+
+	@Test
+	public void it_should_refill_the_bucket_over_time () throws Exception {
+		for ( int i = 0; i < 3; i++ ) {
+			filter.call (request ("10.0.0.1", null), chain ());
+		}
+		now += 100;
+		filter.call (request ("10.0.0.1", null), chain ());
+	}
+
+	@Test
+	public void it_should_keep_buckets_per_client () throws Exception {
+		for ( int i = 0; i < 3; i++ ) {
+			filter.call (request ("10.0.0.1", null), chain ());
+			filter.call (request ("10.0.0.2", null), chain ());
+		}
+		assertThat (filter.size (), is (2));
+	}
+
+	@Test
+	public void it_should_keep_buckets_per_principal_rather_than_per_address () throws Exception {
+		for ( int i = 0; i < 3; i++ ) {
+			filter.call (request ("10.0.0.1", "john"), chain ());
+		}
+		filter.call (request ("10.0.0.1", "jane"), chain ());
+		filter.call (request ("10.0.0.1", null), chain ());
+
+		assertThat (filter.size (), is (3));
+	}
+
+	@Test
+	public void it_should_drop_buckets_that_are_full_again () throws Exception {
+		filter.call (request ("10.0.0.1", null), chain ());
+		filter.call (request ("10.0.0.2", null), chain ());
+		now += 5000;
+		filter.call (request ("10.0.0.3", null), chain ());
+
+		assertThat (filter.size (), is (1));
+	}
+
+	private HttpRequest request (String address, String principal) {
+		HttpRequest request = Requests.request ("GET", "/");
+		when (request.getServletRequest ().getRemoteAddr ()).thenReturn (address);
+		if ( principal != null ) { request.context ().put ("principal", principal); }
+		return request;
+	}
+
+}
@@ -0,0 +1,200 @@
+package org.tutske.rest.filters;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+import static org.tutske.rest.util.Requests.*;
+
+import org.junit.Test;
+import org.tutske.rest.HttpRequest;
+import org.tutske.rest.data.RawContent;
+import org.tutske.rest.data.RestObject;
+import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.internals.Chain;
+import org.tutske.rest.internals.ContentSerializer;
+import org.tutske.utils.Clock;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class ResponseCacheFilterTest {
+
+	private final ContentSerializer serializer = serializer ();
+
+	private final AtomicInteger calls = new AtomicInteger ();
+
+	private long now = 1000000;
+	private final Clock clock = () -> new Date (now);
+	private final ResponseCacheFilter filter = new ResponseCacheFilter (serializer, 10, TimeUnit.SECONDS)
+		.setClock (clock);
+
+	@Test
+	public void it_should_serialize_the_response_of_a_miss () throws Exception {
+		RestStructure result = filter.call (request ("GET", "/users/1", null), chain (calls));
+
+		assertThat (result, instanceOf (RawContent.class));
+		assertThat (((RawContent) result).getContentType (), is ("application/json"));
+		assertThat (((RawContent) result).getContent (), containsString ("\"call\":1"));
+	}
+
+	@Test
+	public void it_should_give_the_kept_response_on_a_hit () throws Exception {
+		filter.call (request ("GET", "/users/1", null), chain (calls));
+		RawContent result = (RawContent) filter.call (request ("GET", "/users/1", null), chain (calls));
+
+		assertThat (result.getContent (), containsString ("\"call\":1"));
+		assertThat (calls.get (), is (1));
+		assertThat (filter.hits (), is (1L));
+		assertThat (filter.misses (), is (1L));
+	}
+
+	@Test
+	public void it_should_keep_responses_per_url () throws Exception {
+		filter.call (request ("GET", "/users/1", null), chain (calls));
+		filter.call (request ("GET", "/users/2", null), chain (calls));
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_not_care_about_the_order_of_query_parameters () throws Exception {
+		filter.call (request ("GET", "/users", "a=1&b=2"), chain (calls));
+		filter.call (request ("GET", "/users", "b=2&a=1"), chain (calls));
+		filter.call (request ("GET", "/users", "a=1&b=3"), chain (calls));
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_keep_repeated_query_parameters_apart () throws Exception {
+		filter.call (request ("GET", "/users", "a=1"), chain (calls));
+		filter.call (request ("GET", "/users", "a=1&a=1"), chain (calls));
+		filter.call (request ("GET", "/users", "a=1&b=2&a=1"), chain (calls));
+		assertThat (calls.get (), is (3));
+	}
+
+	@Test
+	public void it_should_keep_the_order_of_the_values_of_a_query_parameter () throws Exception {
+		filter.call (request ("GET", "/users", "a=1&a=2"), chain (calls));
+		filter.call (request ("GET", "/users", "a=2&a=1"), chain (calls));
+		filter.call (request ("GET", "/users", "a=1&b=3&a=2"), chain (calls));
+		filter.call (request ("GET", "/users", "b=3&a=1&a=2"), chain (calls));
+		assertThat (calls.get (), is (3));
+	}
+
+	@Test
+	public void it_should_not_keep_other_methods () throws Exception {
+		filter.call (request ("POST", "/users/1", null), chain (calls));
+		filter.call (request ("POST", "/users/1", null), chain (calls));
+		assertThat (calls.get (), is (2));
+		assertThat (filter.size (), is (0L));
+	}
+
+	@Test
+	public void it_should_not_keep_responses_with_other_statuses () throws Exception {
+		HttpRequest request = request ("GET", "/users/1", null);
+		when (request.getServletResponse ().getStatus ()).thenReturn (202);
+
+		filter.call (request, chain (calls));
+
+		assertThat (filter.size (), is (0L));
+	}
+
+	@Test
+	public void it_should_call_the_chain_when_the_response_expired () throws Exception {
+		filter.call (request ("GET", "/users/1", null), chain (calls));
+		now += 10000;
+		RawContent result = (RawContent) filter.call (request ("GET", "/users/1", null), chain (calls));
+
+		assertThat (calls.get (), is (2));
+		assertThat (result.getContent (), containsString ("\"call\":2"));
+	}
+
+	@Test
+	public void it_should_give_stale_responses_while_another_request_refreshes () throws Exception {
+		filter.setStaleWhileRevalidate (10, TimeUnit.SECONDS);
+		filter.call (request ("GET", "/users/1", null), chain (calls));
+		now += 15000;
+
+		Chain<HttpRequest, RestStructure> refreshing = new Chain<> ((request) -> {
+			RawContent stale = (RawContent) filter.call (request ("GET", "/users/1", null), chain (calls));
+			assertThat (stale.getContent (), containsString ("\"call\":1"));
+			return chain (calls).call (request);
+		});
+
+		RawContent result = (RawContent) filter.call (request ("GET", "/users/1", null), refreshing);
+		assertThat (result.getContent (), containsString ("\"call\":2"));
+
+		result = (RawContent) filter.call (request ("GET", "/users/1", null), chain (calls));
+		assertThat (result.getContent (), containsString ("\"call\":2"));
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_evict_the_least_recently_used_responses_when_full () throws Exception {
+		filter.call (request ("GET", "/users/1", null), chain (calls));
+		long size = filter.bytes ();
+		filter.setMaxBytes (2 * size);
+
+		filter.call (request ("GET", "/users/2", null), chain (calls));
+		filter.call (request ("GET", "/users/1", null), chain (calls));
+		filter.call (request ("GET", "/users/3", null), chain (calls));
+
+		assertThat (filter.size (), is (2L));
+		assertThat (filter.evictions (), is (1L));
+		assertThat (filter.bytes (), lessThanOrEqualTo (2 * size));
+
+		filter.call (request ("GET", "/users/1", null), chain (calls));
+		assertThat (calls.get (), is (3));
+	}
+
+	@Test
+	public void it_should_stay_within_its_size_when_used_from_many_threads () throws Exception {
+		filter.call (request ("GET", "/users/0", null), chain (calls));
+		long size = filter.bytes ();
+		filter.setMaxBytes (20 * size);
+
+		List<HttpRequest> requests = new ArrayList<> ();
+		for ( int i = 0; i < 800; i++ ) {
+			requests.add (request ("GET", "/users/" + (i % 100), null));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool (8);
+		List<Future<RestStructure>> results = new ArrayList<> ();
+		for ( HttpRequest request : requests ) {
+			results.add (executor.submit (() -> filter.call (request, chain (calls))));
+		}
+		for ( Future<RestStructure> result : results ) {
+			assertThat (result.get (5, TimeUnit.SECONDS), instanceOf (RawContent.class));
+		}
+		executor.shutdown ();
+
+		assertThat (filter.bytes (), lessThanOrEqualTo (20 * size));
+		assertThat (filter.size (), allOf (greaterThan (0L), lessThanOrEqualTo (20L)));
+		assertThat (filter.hits () + filter.misses (), is (801L));
+	}
+
+	@Test
+	public void it_should_keep_the_responses_of_async_chains () throws Exception {
+		CompletableFuture<RestStructure> future = new CompletableFuture<> ();
+		filter.callAsync (request ("GET", "/users/1", null), new Chain<> ((r) -> future));
+		assertThat (filter.size (), is (0L));
+
+		future.complete (new RestObject () {{ v ("call", 1); }});
+		CompletionStage<RestStructure> hit = filter.callAsync (
+			request ("GET", "/users/1", null), new Chain<> ((r) -> new CompletableFuture<> ())
+		);
+
+		RestStructure result = hit.toCompletableFuture ().getNow (null);
+		assertThat (((RawContent) result).getContent (), containsString ("\"call\":1"));
+		assertThat (filter.hits (), is (1L));
+	}
+
+}
@@ -1,13 +1,18 @@
 package org.tutske.rest.internals;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.mockito.Mockito.*;
 
 import org.junit.Test;
 import org.tutske.rest.Filter;
 import org.tutske.rest.ThrowingFunction;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 
 public class ChainTest {
@@ -52,4 +57,51 @@ public class ChainTest {
 		chain.call (new Object ());
 	}
 
+	@Test
+	public void it_should_share_the_filters_between_chains () throws Exception {
+		Filter<Object, Object> append = (object, chain) -> chain.call (object + "-filter");
+		Filter<Object, Object> [] filters = new Filter [] { append, append };
+
+		Object first = new Chain<> (destination, filters).call ("first");
+		Object second = new Chain<> (destination, filters).call ("second");
+
+		assertThat (first, is ("first-filter-filter"));
+		assertThat (second, is ("second-filter-filter"));
+	}
+
+	@Test
+	public void it_should_call_combined_filters_in_order () throws Exception {
+		Filter<Object, Object> a = (object, chain) -> chain.call (object + "a");
+		Filter<Object, Object> b = (object, chain) -> chain.call (object + "b");
+		Filter<Object, Object> c = (object, chain) -> chain.call (object + "c");
+
+		Chain<Object, Object> chain = new Chain<> (destination, Arrays.asList (Filter.combine (a, b), c));
+
+		assertThat (chain.call (""), is ("abc"));
+	}
+
+	@Test
+	public void it_should_call_combined_filters_on_the_chain_they_are_part_of () throws Exception {
+		List<Chain<Object, Object>> chains = new ArrayList<> ();
+		Filter<Object, Object> a = (object, chain) -> { chains.add (chain); return chain.call (object + "a"); };
+		Filter<Object, Object> b = (object, chain) -> { chains.add (chain); return chain.call (object + "b"); };
+		Filter<Object, Object> c = (object, chain) -> { chains.add (chain); return chain.call (object + "c"); };
+
+		Chain<Object, Object> chain = new Chain<> (destination, Arrays.asList (Filter.combine (a, Filter.combine (b)), c));
+
+		assertThat (chain.call (""), is ("abc"));
+		assertThat (chains, everyItem (sameInstance (chain)));
+	}
+
+	@Test
+	public void it_should_call_combined_filters_that_are_called_directly () throws Exception {
+		Filter<Object, Object> a = (object, chain) -> chain.call (object + "a");
+		Filter<Object, Object> b = (object, chain) -> chain.call (object + "b");
+
+		Filter<Object, Object> combined = Filter.combine (a, b);
+		Chain<Object, Object> chain = new Chain<> (destination, new Filter [] { combined });
+
+		assertThat (chain.call (""), is ("ab"));
+	}
+
 }
@@ -0,0 +1,165 @@
+package org.tutske.rest.internals;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+
+public class CompressionTest {
+
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+	private final ByteArrayOutputStream chars = new ByteArrayOutputStream ();
+	private final HttpServletRequest request = mock (HttpServletRequest.class);
+	private final HttpServletResponse response = mock (HttpServletResponse.class);
+	private final Compression compression = new Compression (64, 6, "application/json");
+
+	@Before
+	public void setup () throws Exception {
+		when (response.getWriter ()).thenReturn (new PrintWriter (chars));
+		when (response.getCharacterEncoding ()).thenReturn ("UTF-8");
+		when (response.getOutputStream ()).thenReturn (new ServletOutputStream () {
+			@Override public void write (int b) { bytes.write (b); }
+			@Override public boolean isReady () { return true; }
+			@Override public void setWriteListener (WriteListener listener) {}
+		});
+	}
+
+	@Test
+	public void it_should_pick_gzip_when_accepted () {
+		assertThat (compression.negotiate ("gzip, deflate, br"), is ("gzip"));
+	}
+
+	@Test
+	public void it_should_pick_the_encoding_with_the_highest_quality () {
+		assertThat (compression.negotiate ("gzip;q=0.5, deflate"), is ("deflate"));
+	}
+
+	@Test
+	public void it_should_not_pick_encodings_that_are_refused () {
+		assertThat (compression.negotiate ("gzip;q=0, *"), is ("deflate"));
+		assertThat (compression.negotiate ("identity"), nullValue ());
+		assertThat (compression.negotiate (null), nullValue ());
+	}
+
+	@Test
+	public void it_should_gzip_long_responses () throws Exception {
+		when (request.getHeader ("Accept-Encoding")).thenReturn ("gzip");
+		String content = write ("application/json", 100);
+
+		verify (response).setHeader ("Content-Encoding", "gzip");
+		assertThat (read (new GZIPInputStream (new ByteArrayInputStream (bytes.toByteArray ()))), is (content));
+		assertThat (bytes.size (), lessThan (content.length ()));
+	}
+
+	@Test
+	public void it_should_deflate_long_responses () throws Exception {
+		when (request.getHeader ("Accept-Encoding")).thenReturn ("deflate");
+		String content = write ("application/json", 100);
+
+		verify (response).setHeader ("Content-Encoding", "deflate");
+		assertThat (read (new InflaterInputStream (new ByteArrayInputStream (bytes.toByteArray ()))), is (content));
+	}
+
+	@Test
+	public void it_should_reuse_deflaters () throws Exception {
+		when (request.getHeader ("Accept-Encoding")).thenReturn ("gzip");
+		write ("application/json", 100);
+		bytes.reset ();
+		String content = write ("application/json", 200);
+
+		assertThat (read (new GZIPInputStream (new ByteArrayInputStream (bytes.toByteArray ()))), is (content));
+	}
+
+	@Test
+	public void it_should_write_json_as_utf_8_when_no_charset_was_set () throws Exception {
+		when (request.getHeader ("Accept-Encoding")).thenReturn ("gzip");
+		when (response.getContentType ()).thenReturn ("application/json");
+		when (response.getCharacterEncoding ()).thenReturn ("ISO-8859-1");
+
+		String content = "{\"name\":\"Zoë Øresund — 東京 ☃\",\"padding\":\"" + new String (new char [80]).replace ('\0', 'x') + "\"}";
+		try ( Compression.Output output = compression.open (request, response, "application/json") ) {
+			output.writer ().write (content);
+		}
+
+		verify (response).setCharacterEncoding ("UTF-8");
+		assertThat (read (new GZIPInputStream (new ByteArrayInputStream (bytes.toByteArray ()))), is (content));
+	}
+
+	@Test
+	public void it_should_keep_a_charset_that_was_set_explicitly () throws Exception {
+		when (request.getHeader ("Accept-Encoding")).thenReturn ("gzip");
+		when (response.getContentType ()).thenReturn ("application/json;charset=utf-16");
+		when (response.getCharacterEncoding ()).thenReturn ("UTF-16");
+		String content = write ("application/json", 100);
+
+		verify (response, never ()).setCharacterEncoding (anyString ());
+		assertThat (read (new GZIPInputStream (new ByteArrayInputStream (bytes.toByteArray ())), "UTF-16"), is (content));
+	}
+
+	@Test
+	public void it_should_send_short_responses_as_they_are () throws Exception {
+		when (request.getHeader ("Accept-Encoding")).thenReturn ("gzip");
+		String content = write ("application/json", 2);
+
+		verify (response, never ()).setHeader (eq ("Content-Encoding"), anyString ());
+		assertThat (new String (bytes.toByteArray (), "UTF-8"), is (content));
+	}
+
+	@Test
+	public void it_should_leave_other_content_types_alone () throws Exception {
+		when (request.getHeader ("Accept-Encoding")).thenReturn ("gzip");
+		String content = write ("text/plain", 100);
+
+		verify (response, never ()).setHeader (eq ("Content-Encoding"), anyString ());
+		verify (response, never ()).addHeader ("Vary", "Accept-Encoding");
+		assertThat (new String (chars.toByteArray (), "UTF-8"), is (content));
+	}
+
+	@Test
+	public void it_should_vary_on_the_accepted_encoding () throws Exception {
+		write ("application/json", 100);
+		verify (response).addHeader ("Vary", "Accept-Encoding");
+		assertThat (chars.size (), greaterThan (0));
+	}
+
+	private String write (String type, int repeat) throws Exception {
+		StringBuilder content = new StringBuilder ("[");
+		for ( int i = 0; i < repeat; i++ ) {
+			content.append ("{\"id\":").append (i).append (",\"name\":\"Jeroen\"},");
+		}
+		content.append ("]");
+
+		try ( Compression.Output output = compression.open (request, response, type) ) {
+			output.writer ().write (content.toString ());
+		}
+		return content.toString ();
+	}
+
+	private String read (InputStream stream) throws Exception {
+		return read (stream, "UTF-8");
+	}
+
+	private String read (InputStream stream, String charset) throws Exception {
+		ByteArrayOutputStream result = new ByteArrayOutputStream ();
+		byte [] buffer = new byte [1024];
+		for ( int read = stream.read (buffer); read >= 0; read = stream.read (buffer) ) {
+			result.write (buffer, 0, read);
+		}
+		return new String (result.toByteArray (), charset);
+	}
+
+}
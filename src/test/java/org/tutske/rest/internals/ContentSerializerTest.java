@@ -106,6 +106,111 @@ public class ContentSerializerTest {
 		assertThat (contentType, is ("application/xml"));
 	}
 
+	@Test
+	public void it_should_pick_the_type_with_the_highest_quality () {
+		ContentSerializer serializer = new ContentSerializer (new HashMap<String, Serializer> () {{
+			put ("application/json", json);
+			put ("application/xml", xml);
+		}});
+		String contentType = serializer.contentType ("application/json; q=0.2, application/xml; q=0.3");
+		assertThat (contentType, is ("application/xml"));
+	}
+
+	@Test
+	public void it_should_prefer_specific_types_over_wildcards_with_the_same_quality () {
+		ContentSerializer serializer = new ContentSerializer ("application/json", new HashMap<String, Serializer> () {{
+			put ("application/json", json);
+			put ("application/xml", xml);
+		}});
+		String contentType = serializer.contentType ("*/*, application/xml");
+		assertThat (contentType, is ("application/xml"));
+	}
+
+	@Test
+	public void it_should_prefer_the_default_type_when_a_wildcard_matches () {
+		ContentSerializer serializer = new ContentSerializer ("application/xml", new HashMap<String, Serializer> () {{
+			put ("application/json", json);
+			put ("application/xml", xml);
+		}});
+		assertThat (serializer.contentType ("application/*"), is ("application/xml"));
+		assertThat (serializer.contentType ("*/*"), is ("application/xml"));
+	}
+
+	@Test
+	public void it_should_not_pick_types_with_a_quality_of_zero () {
+		ContentSerializer serializer = new ContentSerializer ("application/xml", new HashMap<String, Serializer> () {{
+			put ("application/json", json);
+			put ("application/xml", xml);
+		}});
+		String contentType = serializer.contentType ("application/xml; q=0, */*; q=0.1");
+		assertThat (contentType, is ("application/json"));
+	}
+
+	@Test
+	public void it_should_leave_the_quality_out_of_the_attributes () {
+		ArgumentCaptor<Map<String, String>> attributes = (ArgumentCaptor) ArgumentCaptor.forClass (Map.class);
+		Serializer jsonp = mock (Serializer.class);
+
+		ContentSerializer serializer = new ContentSerializer (new HashMap<String, Serializer> () {{
+			put ("application/javascript", jsonp);
+		}});
+
+		serializer.serialize ("application/javascript; callback=method; q=0.5; ext=value", new RestObject ());
+
+		verify (jsonp).serialize (any (), attributes.capture ());
+		assertThat (attributes.getValue (), hasEntry ("callback", "method"));
+		assertThat (attributes.getValue ().entrySet (), hasSize (1));
+	}
+
+	@Test
+	public void it_should_tell_the_mime_type_with_its_attributes () {
+		ContentSerializer serializer = new ContentSerializer (new HashMap<String, Serializer> () {{
+			put ("application/javascript", json);
+		}});
+		String mime = serializer.negotiate ("application/javascript; callback=\"method\"; q=0.9");
+		assertThat (mime, is ("application/javascript; callback=method"));
+	}
+
+	@Test
+	public void it_should_reuse_the_negotiation_for_the_same_accept_header () {
+		ContentSerializer serializer = new ContentSerializer ("application/json", new HashMap<String, Serializer> () {{
+			put ("application/json", json);
+			put ("application/xml", xml);
+		}});
+
+		ContentSerializer.Negotiation first = serializer.negotiation ("application/xml, application/json; q=0.5");
+		ContentSerializer.Negotiation second = serializer.negotiation ("application/xml, application/json; q=0.5");
+
+		assertThat (second, sameInstance (first));
+		assertThat (serializer.negotiation (null), sameInstance (serializer.negotiation (null)));
+	}
+
+	@Test
+	public void it_should_keep_negotiating_once_the_cache_is_full () {
+		ContentSerializer serializer = new ContentSerializer ("application/json", new HashMap<String, Serializer> () {{
+			put ("application/json", json);
+			put ("application/xml", xml);
+		}});
+
+		for ( int i = 0; i < 1000; i++ ) {
+			serializer.negotiation ("application/xml; id=" + i);
+		}
+
+		assertThat (serializer.negotiate ("application/xml; id=last"), is ("application/xml; id=last"));
+	}
+
+	@Test
+	public void it_should_serialize_through_the_negotiation () {
+		ContentSerializer serializer = new ContentSerializer (new HashMap<String, Serializer> () {{
+			put ("application/json", json);
+		}});
+
+		ContentSerializer.Negotiation negotiation = serializer.negotiation ("application/json");
+
+		assertThat (negotiation.getContentType (), is ("application/json"));
+		assertThat (negotiation.serialize (new RestObject ()), is ("{}"));
+	}
+
 	@Test
 	public void it_should_pass_attributes_down_to_the_serializers () {
 		ArgumentCaptor<Map<String, String>> attributes = (ArgumentCaptor) ArgumentCaptor.forClass (Map.class);
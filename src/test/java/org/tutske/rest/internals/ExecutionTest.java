@@ -0,0 +1,75 @@
+package org.tutske.rest.internals;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class ExecutionTest {
+
+	@Test
+	public void it_should_run_tasks_directly_by_default () {
+		List<Thread> threads = new ArrayList<> ();
+		Execution.direct ().execute (() -> threads.add (Thread.currentThread ()));
+		assertThat (threads, contains (Thread.currentThread ()));
+	}
+
+	@Test
+	public void it_should_run_tasks_on_the_executor () throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor ();
+		List<Thread> threads = new ArrayList<> ();
+
+		Execution.executor (executor).execute (() -> threads.add (Thread.currentThread ()));
+		executor.shutdown ();
+		executor.awaitTermination (5, TimeUnit.SECONDS);
+
+		assertThat (threads, hasSize (1));
+		assertThat (threads.get (0), not (Thread.currentThread ()));
+	}
+
+	@Test
+	public void it_should_not_run_more_tasks_at_once_than_it_has_permits () throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool (8);
+		Execution execution = Execution.executor (executor).bounded (2);
+		AtomicInteger running = new AtomicInteger ();
+		AtomicInteger most = new AtomicInteger ();
+
+		for ( int i = 0; i < 32; i++ ) {
+			execution.execute (() -> {
+				most.accumulateAndGet (running.incrementAndGet (), Math::max);
+				try { Thread.sleep (2); }
+				catch (InterruptedException ignore) {}
+				running.decrementAndGet ();
+			});
+		}
+		executor.shutdown ();
+		executor.awaitTermination (5, TimeUnit.SECONDS);
+
+		assertThat (most.get (), lessThanOrEqualTo (2));
+		assertThat (execution.availablePermits (), is (2));
+	}
+
+	@Test (expected = RuntimeException.class)
+	public void it_should_not_bound_direct_executions () {
+		Execution.direct ().bounded (2);
+	}
+
+	@Test
+	public void it_should_either_run_on_virtual_threads_or_tell_they_are_not_available () {
+		try {
+			Execution execution = Execution.virtualThreads ();
+			assertThat (execution.isDirect (), is (false));
+		} catch (RuntimeException exception) {
+			assertThat (exception.getMessage (), containsString ("java 21"));
+		}
+	}
+
+}
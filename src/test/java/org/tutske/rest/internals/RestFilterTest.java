@@ -3,14 +3,19 @@ package org.tutske.rest.internals;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.*;
+import static org.tutske.rest.HttpRequest.Method.*;
 
 import org.junit.Test;
 import org.tutske.rest.ControllerFunction;
 import org.tutske.rest.Filter;
 import org.tutske.rest.HttpRequest;
+import org.tutske.rest.RequestPath;
+import org.tutske.rest.UrlRoute;
 import org.tutske.rest.UrlRoute.SimpleRoute;
 import org.tutske.rest.data.RestObject;
 
+import java.util.EnumSet;
+
 
 public class RestFilterTest {
 
@@ -173,4 +178,77 @@ public class RestFilterTest {
 		verify (filter, never ()).call (any (), any ());
 	}
 
+	@Test
+	public void it_should_apply_filters_without_methods_to_requests_of_every_method () throws Exception {
+		Filter<HttpRequest, RestObject> filter = mock (Filter.class);
+		UrlRoute<?> route = new SimpleRoute<> ("dummy", "/dummy", EnumSet.of (POST), destination);
+
+		filters.add (new SimpleRoute<> ("dummy", "/dummy", filter));
+		filters.createChain (POST, route, new RequestPath ("/dummy"), destination).call (mock (HttpRequest.class));
+
+		verify (filter).call (any (), any ());
+	}
+
+	@Test
+	public void it_should_apply_filters_with_methods_only_to_requests_of_those_methods () throws Exception {
+		Filter<HttpRequest, RestObject> filter = mock (Filter.class);
+		UrlRoute<?> route = new SimpleRoute<> ("dummy", "/dummy", EnumSet.of (GET, POST), destination);
+
+		filters.add (new SimpleRoute<> ("dummy", "/dummy", EnumSet.of (POST), filter));
+		filters.createChain (GET, route, new RequestPath ("/dummy"), destination).call (mock (HttpRequest.class));
+		verify (filter, never ()).call (any (), any ());
+
+		filters.createChain (POST, route, new RequestPath ("/dummy"), destination).call (mock (HttpRequest.class));
+		verify (filter).call (any (), any ());
+	}
+
+	@Test
+	public void it_should_apply_filters_on_parameter_routes () throws Exception {
+		Filter<HttpRequest, RestObject> filter = mock (Filter.class);
+		UrlRoute<?> route = new SimpleRoute<> ("user", "/users/me", destination);
+
+		filters.add (new SimpleRoute<> ("users", "/users/:id", filter));
+		filters.createChain (GET, route, new RequestPath ("/users/me"), destination).call (mock (HttpRequest.class));
+
+		verify (filter).call (any (), any ());
+	}
+
+	@Test
+	public void it_should_only_apply_filters_for_specific_urls_of_a_route_when_the_url_matches () throws Exception {
+		Filter<HttpRequest, RestObject> filter = mock (Filter.class);
+		UrlRoute<?> route = new SimpleRoute<> ("user", "/users/:id", destination);
+
+		filters.add (new SimpleRoute<> ("me", "/users/me", filter));
+
+		filters.createChain (GET, route, new RequestPath ("/users/abc"), destination).call (mock (HttpRequest.class));
+		verify (filter, never ()).call (any (), any ());
+
+		filters.createChain (GET, route, new RequestPath ("/users/me"), destination).call (mock (HttpRequest.class));
+		verify (filter).call (any (), any ());
+	}
+
+	@Test
+	public void it_should_apply_filters_on_tail_routes_to_longer_routes () throws Exception {
+		Filter<HttpRequest, RestObject> filter = mock (Filter.class);
+		UrlRoute<?> route = new SimpleRoute<> ("groups", "/admin/users/:id/groups", destination);
+
+		filters.add (new SimpleRoute<> ("admin", "/admin/::rest", filter));
+		filters.createChain (GET, route, new RequestPath ("/admin/users/abc/groups"), destination)
+			.call (mock (HttpRequest.class));
+
+		verify (filter).call (any (), any ());
+	}
+
+	@Test
+	public void it_should_pick_up_filters_that_are_added_later () throws Exception {
+		Filter<HttpRequest, RestObject> filter = mock (Filter.class);
+		UrlRoute<?> route = new SimpleRoute<> ("dummy", "/dummy", destination);
+
+		filters.createChain (GET, route, new RequestPath ("/dummy"), destination).call (mock (HttpRequest.class));
+		filters.add (new SimpleRoute<> ("dummy", "/dummy", filter));
+		filters.createChain (GET, route, new RequestPath ("/dummy"), destination).call (mock (HttpRequest.class));
+
+		verify (filter).call (any (), any ());
+	}
+
 }
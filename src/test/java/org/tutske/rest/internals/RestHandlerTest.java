@@ -3,19 +3,38 @@ package org.tutske.rest.internals;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.intThat;
+import static org.mockito.Matchers.longThat;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.tutske.rest.AsyncControllerFunction;
 import org.tutske.rest.ControllerFunction;
 import org.tutske.rest.HttpRequest;
 import org.tutske.rest.UrlRoute.ControllerRoute;
+import org.tutske.rest.UrlRoute.SimpleRoute;
 import org.tutske.rest.UrlRouter;
+import org.tutske.rest.data.RawContent;
+import org.tutske.rest.data.RestArray;
 import org.tutske.rest.data.RestObject;
+import org.tutske.rest.data.RestStructure;
 import org.tutske.rest.exceptions.ResponseException;
+import org.tutske.rest.filters.CoalescingFilter;
+import org.tutske.rest.filters.DeadlineFilter;
+import org.tutske.rest.filters.ETagFilter;
+import org.tutske.rest.filters.ResponseCacheFilter;
 import org.tutske.rest.util.RoundTrip;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 
 public class RestHandlerTest {
 
@@ -127,6 +146,269 @@ public class RestHandlerTest {
 		verify (trip.response, atLeast (1)).setStatus (201);
 	}
 
+	@Test
+	public void it_should_return_method_not_allowed_when_the_url_only_has_routes_for_other_methods () throws Exception {
+		router.add (new ControllerRoute ("create", "/create", EnumSet.of (HttpRequest.Method.POST, HttpRequest.Method.PUT), RestHandlerTest::dummy));
+
+		handler = new RestHandler (router);
+		trip.get (handler, "/create");
+
+		verify (trip.response).setStatus (405);
+		verify (trip.response).setHeader ("Allow", "OPTIONS, POST, PUT");
+		verify (trip.base).setHandled (true);
+	}
+
+	@Test
+	public void it_should_answer_options_requests_for_known_urls_with_the_allowed_methods () throws Exception {
+		router.add (new ControllerRoute ("create", "/create", EnumSet.of (HttpRequest.Method.POST), RestHandlerTest::dummy));
+
+		handler = new RestHandler (router);
+		when (trip.request.getMethod ()).thenReturn ("OPTIONS");
+		handler.handle ("/dummy", trip.base, trip.request, trip.response);
+
+		verify (trip.response).setStatus (200);
+		verify (trip.response).setHeader ("Allow", "HEAD, OPTIONS, GET");
+		verify (trip.base).setHandled (true);
+		assertThat (trip.output (), is (""));
+	}
+
+	@Test
+	public void it_should_serve_head_requests_from_get_routes () throws Exception {
+		handler = new RestHandler (router);
+		when (trip.request.getMethod ()).thenReturn ("HEAD");
+		handler.handle ("/dummy", trip.base, trip.request, trip.response);
+
+		verify (trip.response).setStatus (200);
+		verify (trip.base).setHandled (true);
+	}
+
+	@Test
+	public void it_should_leave_options_requests_for_unknown_urls_alone () throws Exception {
+		handler = new RestHandler (router);
+		when (trip.request.getMethod ()).thenReturn ("OPTIONS");
+		handler.handle ("/unknown", trip.base, trip.request, trip.response);
+
+		verify (trip.response, never ()).setStatus (anyInt ());
+		verify (trip.base, never ()).setHandled (true);
+	}
+
+	@Test
+	public void it_should_write_the_response_when_an_async_controller_completes () throws Exception {
+		CompletableFuture<RestStructure> future = new CompletableFuture<> ();
+		AsyncContext context = startAsync ();
+		router.add (new ControllerRoute ("async", "/async", (AsyncControllerFunction) (request) -> future));
+
+		handler = new RestHandler (router);
+		trip.get (handler, "/async");
+
+		verify (trip.base).setHandled (true);
+		verify (context, never ()).complete ();
+
+		future.complete (dummy (null));
+
+		assertThat (trip.output (), containsString ("Hello World"));
+		verify (trip.response).setStatus (200);
+		verify (context).complete ();
+	}
+
+	@Test
+	public void it_should_return_an_error_code_when_an_async_controller_fails () throws Exception {
+		AsyncContext context = startAsync ();
+		router.add (new ControllerRoute ("async", "/async", (AsyncControllerFunction) (request) -> {
+			return CompletionStages.failed (new ResponseException ("Wrong Request"));
+		}));
+
+		handler = new RestHandler (router);
+		trip.get (handler, "/async");
+
+		verify (trip.response).setStatus (codeRange (400));
+		verify (context).complete ();
+	}
+
+	@Test
+	public void it_should_return_a_gateway_timeout_when_an_async_controller_takes_too_long () throws Exception {
+		AsyncContext context = startAsync ();
+		router.add (new ControllerRoute ("async", "/async", (AsyncControllerFunction) (request) -> {
+			return new CompletableFuture<> ();
+		}));
+
+		handler = new RestHandler (router).setAsyncTimeout (5, TimeUnit.SECONDS);
+		trip.get (handler, "/async");
+
+		ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass (AsyncListener.class);
+		verify (context).setTimeout (5000);
+		verify (context).addListener (listener.capture ());
+		listener.getValue ().onTimeout (null);
+
+		verify (trip.response).setStatus (504);
+		verify (context).complete ();
+	}
+
+	@Test
+	public void it_should_give_the_result_of_async_controllers_to_synchronous_callers () throws Exception {
+		AsyncControllerFunction controller = (request) -> CompletionStages.completed (dummy (request));
+		assertThat (controller.apply (null), hasKey ("greeting"));
+	}
+
+	@Test
+	public void it_should_complain_when_synchronous_callers_get_something_else_than_an_object () throws Exception {
+		AsyncControllerFunction controller = (request) -> CompletionStages.completed (new RestArray ());
+		try {
+			controller.apply (null);
+		} catch (RuntimeException exception) {
+			assertThat (exception.getMessage (), containsString ("RestArray"));
+			return;
+		}
+		throw new AssertionError ("Expected the controller to complain");
+	}
+
+	@Test
+	public void it_should_time_out_async_controllers_at_the_deadline_of_the_request () throws Exception {
+		AsyncContext context = startAsync ();
+		router.add (new ControllerRoute ("async", "/async", (AsyncControllerFunction) (request) -> {
+			return new CompletableFuture<> ();
+		}));
+
+		FilterCollection<HttpRequest, RestStructure> filters = new FilterCollection<> ();
+		filters.add (new SimpleRoute<> ("deadline", "/async", new DeadlineFilter (200, TimeUnit.MILLISECONDS)));
+
+		handler = new RestHandler (router, filters, new ContentSerializer ("default") {{
+			put ("default", new JsonSerializer ());
+		}});
+		trip.get (handler, "/async");
+
+		verify (context).setTimeout (30000);
+		verify (context).setTimeout (longThat (allOf (greaterThan (0L), lessThanOrEqualTo (200L))));
+	}
+
+	@Test
+	public void it_should_run_sync_filters_around_async_controllers () throws Exception {
+		AsyncContext context = startAsync ();
+		router.add (new ControllerRoute ("async", "/async", (AsyncControllerFunction) (request) -> {
+			return CompletionStages.completed (new RestObject () {{ v ("filtered", request.context ().get ("filtered")); }});
+		}));
+
+		FilterCollection<HttpRequest, RestStructure> filters = new FilterCollection<> ();
+		filters.add (new SimpleRoute<> ("filter", "/async", (request, chain) -> {
+			request.context ().put ("filtered", "yes");
+			return chain.call (request);
+		}));
+
+		handler = new RestHandler (router, filters, new ContentSerializer ("default") {{
+			put ("default", new JsonSerializer ());
+		}});
+		trip.get (handler, "/async");
+
+		assertThat (trip.output (), containsString ("yes"));
+		verify (context).complete ();
+	}
+
+	@Test
+	public void it_should_not_wait_for_async_controllers_behind_the_filters_of_the_library () throws Exception {
+		AsyncContext context = startAsync ();
+		CompletableFuture<RestStructure> future = new CompletableFuture<> ();
+		router.add (new ControllerRoute ("async", "/async", (AsyncControllerFunction) (request) -> future));
+
+		ContentSerializer serializer = new ContentSerializer ("default") {{
+			put ("default", new JsonSerializer ());
+		}};
+		FilterCollection<HttpRequest, RestStructure> filters = new FilterCollection<> ();
+		filters.add (
+			new SimpleRoute<> ("etag", "/async", new ETagFilter (serializer)),
+			new SimpleRoute<> ("cache", "/async", new ResponseCacheFilter (serializer, 1, TimeUnit.SECONDS)),
+			new SimpleRoute<> ("coalesce", "/async", new CoalescingFilter (serializer))
+		);
+
+		handler = new RestHandler (router, filters, serializer);
+		when (trip.request.getRequestURI ()).thenReturn ("/async");
+		trip.get (handler, "/async");
+
+		verify (context, never ()).complete ();
+		future.complete (dummy (null));
+
+		assertThat (trip.output (), containsString ("Hello World"));
+		verify (context).complete ();
+	}
+
+	@Test
+	public void it_should_handle_requests_on_the_configured_execution () throws Exception {
+		AsyncContext context = startAsync ();
+		List<Runnable> tasks = new ArrayList<> ();
+
+		handler = new RestHandler (router).setExecution (Execution.executor (tasks::add));
+		trip.get (handler, "/dummy");
+
+		verify (trip.base).setHandled (true);
+		verify (trip.response, never ()).setStatus (anyInt ());
+		assertThat (tasks, hasSize (1));
+
+		tasks.get (0).run ();
+
+		assertThat (trip.output (), containsString ("Hello World"));
+		verify (trip.response).setStatus (200);
+		verify (context).complete ();
+	}
+
+	@Test
+	public void it_should_write_raw_content_as_it_is () throws Exception {
+		FilterCollection<HttpRequest, RestStructure> filters = new FilterCollection<> ();
+		filters.add (new SimpleRoute<> ("raw", "/dummy", (request, chain) -> {
+			return new RawContent ("text/plain", "Hello Raw World!");
+		}));
+
+		handler = new RestHandler (router, filters, new ContentSerializer ("default") {{
+			put ("default", new JsonSerializer ());
+		}});
+		trip.get (handler, "/dummy");
+
+		assertThat (trip.output (), is ("Hello Raw World!"));
+		verify (trip.response).setContentType ("text/plain");
+		verify (trip.response).setStatus (200);
+	}
+
+	@Test
+	public void it_should_not_write_a_body_for_not_modified_responses () throws Exception {
+		router.add (new ControllerRoute ("not-modified", "/not-modified", (request) -> {
+			when (trip.response.getStatus ()).thenReturn (304);
+			return dummy (request);
+		}));
+
+		handler = new RestHandler (router);
+		trip.get (handler, "/not-modified");
+
+		verify (trip.response).setStatus (304);
+		verify (trip.response, never ()).getWriter ();
+		verify (trip.base).setHandled (true);
+	}
+
+	@Test
+	public void it_should_not_time_out_sync_controllers_on_an_execution_by_default () throws Exception {
+		AsyncContext context = startAsync ();
+
+		handler = new RestHandler (router).setExecution (Execution.executor ((task) -> {}));
+		trip.get (handler, "/dummy");
+
+		verify (context).setTimeout (0);
+	}
+
+	@Test
+	public void it_should_time_out_sync_controllers_on_an_execution_when_asked_to () throws Exception {
+		AsyncContext context = startAsync ();
+
+		handler = new RestHandler (router)
+			.setAsyncTimeout (5, TimeUnit.SECONDS)
+			.setExecution (Execution.executor ((task) -> {}));
+		trip.get (handler, "/dummy");
+
+		verify (context).setTimeout (5000);
+	}
+
+	private AsyncContext startAsync () {
+		AsyncContext context = mock (AsyncContext.class);
+		when (trip.request.startAsync ()).thenReturn (context);
+		return context;
+	}
+
 	private Integer codeRange (int lower) {
 		return intThat (allOf (
 			greaterThanOrEqualTo (lower),
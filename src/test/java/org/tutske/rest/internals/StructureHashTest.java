@@ -0,0 +1,63 @@
+package org.tutske.rest.internals;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+import org.tutske.rest.data.RestArray;
+import org.tutske.rest.data.RestObject;
+
+
+public class StructureHashTest {
+
+	@Test
+	public void it_should_hash_equal_structures_the_same () {
+		assertThat (StructureHash.of (user ("john", 1)), is (StructureHash.of (user ("john", 1))));
+	}
+
+	@Test
+	public void it_should_hash_different_values_differently () {
+		assertThat (StructureHash.of (user ("john", 1)), not (StructureHash.of (user ("jane", 1))));
+		assertThat (StructureHash.of (user ("john", 1)), not (StructureHash.of (user ("john", 2))));
+	}
+
+	@Test
+	public void it_should_tell_numbers_and_strings_apart () {
+		RestObject number = new RestObject () {{ v ("id", 1); }};
+		RestObject string = new RestObject () {{ v ("id", "1"); }};
+		assertThat (StructureHash.of (number), not (StructureHash.of (string)));
+	}
+
+	@Test
+	public void it_should_include_keys () {
+		RestObject first = new RestObject () {{ v ("a", "value"); }};
+		RestObject second = new RestObject () {{ v ("b", "value"); }};
+		assertThat (StructureHash.of (first), not (StructureHash.of (second)));
+	}
+
+	@Test
+	public void it_should_include_tags_and_attributes () {
+		RestObject plain = new RestObject () {{ v ("a", "value"); }};
+		RestObject tagged = new RestObject ("user") {{ v ("a", "value"); }};
+		RestObject attributed = new RestObject () {{ v ("a", "value"); attribute ("version", 2); }};
+
+		assertThat (StructureHash.of (plain), not (StructureHash.of (tagged)));
+		assertThat (StructureHash.of (plain), not (StructureHash.of (attributed)));
+	}
+
+	@Test
+	public void it_should_include_the_nesting_of_arrays () {
+		RestArray flat = new RestArray () {{ v ("a", "b"); }};
+		RestArray nested = new RestArray () {{ v (new RestArray () {{ v ("a"); }}, "b"); }};
+		assertThat (StructureHash.of (flat), not (StructureHash.of (nested)));
+	}
+
+	private RestObject user (String name, int id) {
+		return new RestObject ("user") {{
+			v ("id", id);
+			v ("name", name);
+			v ("roles", new RestArray ("roles", "role") {{ v ("admin", "user"); }});
+		}};
+	}
+
+}
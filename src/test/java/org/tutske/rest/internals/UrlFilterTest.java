@@ -1,12 +1,16 @@
 package org.tutske.rest.internals;
 
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.fail;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.*;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.tutske.rest.ControllerFunction;
 import org.tutske.rest.HttpRequest;
+import org.tutske.rest.RequestPath;
 import org.tutske.rest.RestFilterCollection;
 import org.tutske.rest.UrlRoute;
 import org.tutske.rest.UrlRoute.ControllerRoute;
@@ -16,6 +20,9 @@ import org.tutske.rest.data.RestStructure;
 import org.tutske.rest.UrlRoute.SimpleRoute;
 import org.tutske.rest.util.RoundTrip;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 
@@ -50,7 +57,7 @@ public class UrlFilterTest {
 
 		trip.get (handler, "/");
 
-		verify (route).matches (any (), any (), any ());
+		verify (route).matches (any (), any (RequestPath.class));
 	}
 
 	@Test
@@ -123,4 +130,44 @@ public class UrlFilterTest {
 		verify (consumer).accept ("second");
 	}
 
+	@Test
+	public void it_should_only_hold_on_to_routes_weakly () {
+		UrlRoute<ControllerFunction> route = new ControllerRoute ("gone", "/gone", UrlFilterTest::dummy);
+		filters.filters (HttpRequest.Method.GET, route, new RequestPath ("/gone"));
+		assertThat (filters.resolvedKey (route), instanceOf (WeakReference.class));
+	}
+
+	@Test
+	public void it_should_forget_the_filters_of_routes_that_are_gone () {
+		filters.add (new SimpleRoute<> ("root", "/:any", (r, c) -> c.call (r)));
+
+		UrlRoute<ControllerFunction> gone = new ControllerRoute ("gone", "/gone", UrlFilterTest::dummy);
+		UrlRoute<ControllerFunction> other = new ControllerRoute ("other", "/other", UrlFilterTest::dummy);
+		filters.filters (HttpRequest.Method.GET, gone, new RequestPath ("/gone"));
+		assertThat (filters.resolvedRoutes (), is (1));
+
+		filters.resolvedKey (gone).clear ();
+		filters.filters (HttpRequest.Method.GET, other, new RequestPath ("/other"));
+
+		assertThat (filters.resolvedRoutes (), is (1));
+		assertThat (filters.resolvedKey (other).get (), is (other));
+	}
+
+	@Test
+	public void it_should_keep_the_filters_of_many_routes_apart () {
+		filters.add (new SimpleRoute<> ("root", "/:any", (r, c) -> c.call (r)));
+
+		List<UrlRoute<ControllerFunction>> routes = new ArrayList<> ();
+		for ( int i = 0; i < 100; i++ ) {
+			UrlRoute<ControllerFunction> route = new ControllerRoute ("route", "/" + i, UrlFilterTest::dummy);
+			filters.filters (HttpRequest.Method.GET, route, new RequestPath ("/" + i));
+			routes.add (route);
+		}
+
+		assertThat (filters.resolvedRoutes (), is (100));
+		for ( UrlRoute<ControllerFunction> route : routes ) {
+			assertThat (filters.resolvedKey (route).get (), is (route));
+		}
+	}
+
 }
@@ -0,0 +1,120 @@
+package org.tutske.rest.internals;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+import org.tutske.rest.data.RestArray;
+import org.tutske.rest.data.RestObject;
+import org.tutske.rest.data.RestStructure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+public class XmlSerializerTest {
+
+	private final Serializer serializer = new XmlSerializer ();
+
+	@Test
+	public void it_should_pretty_print_the_xml () {
+		assertThat (serializer.serialize (user ("john")), is ("" +
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+			"<user id=\"1\">\n" +
+			"\t<name>john</name>\n" +
+			"\t<roles>\n" +
+			"\t\t<role>admin</role>\n" +
+			"\t\t<role>user</role>\n" +
+			"\t</roles>\n" +
+			"</user>\n"
+		));
+	}
+
+	@Test
+	public void it_should_leave_out_whitespace_in_compact_mode () {
+		assertThat (new XmlSerializer (true).serialize (user ("john")), is ("" +
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+			"<user id=\"1\"><name>john</name><roles><role>admin</role><role>user</role></roles></user>"
+		));
+	}
+
+	@Test
+	public void it_should_escape_text_and_attributes () {
+		RestObject object = new RestObject ("response") {{
+			attribute ("title", "\"quoted\" & <tagged>");
+			v ("text", "a < b & c > \"d\"");
+		}};
+
+		String xml = serializer.serialize (object);
+
+		assertThat (xml, containsString ("title=\"&quot;quoted&quot; &amp; &lt;tagged&gt;\""));
+		assertThat (xml, containsString ("<text>a &lt; b &amp; c &gt; \"d\"</text>"));
+	}
+
+	@Test
+	public void it_should_indent_nested_structures_with_tags_of_their_own () {
+		RestObject object = new RestObject ("response") {{
+			v ("owner", user ("john"));
+			v ("after", "value");
+		}};
+
+		String xml = serializer.serialize (object);
+
+		assertThat (xml, containsString ("\t<owner>\n\t\t<user id=\"1\">\n\t\t\t<name>john</name>\n"));
+		assertThat (xml, containsString ("\t</owner>\n\t<after>value</after>\n"));
+		assertThat (xml.indexOf ("<?xml"), is (xml.lastIndexOf ("<?xml")));
+	}
+
+	@Test
+	public void it_should_indent_deeply_nested_structures () {
+		RestObject root = new RestObject ("root");
+		RestObject current = root;
+		for ( int i = 0; i < 40; i++ ) {
+			RestObject next = new RestObject ();
+			current.put ("level", next);
+			current = next;
+		}
+		current.put ("leaf", "value");
+
+		String xml = serializer.serialize (root);
+		StringBuilder tabs = new StringBuilder ();
+		for ( int i = 0; i < 41; i++ ) { tabs.append ('\t'); }
+
+		assertThat (xml, containsString ("\n" + tabs + "<leaf>value</leaf>\n"));
+	}
+
+	@Test
+	public void it_should_give_the_same_output_when_shared_between_threads () throws Exception {
+		String expected = serializer.serialize (large ());
+		ExecutorService executor = Executors.newFixedThreadPool (8);
+
+		List<Future<String>> results = new ArrayList<> ();
+		for ( int i = 0; i < 32; i++ ) {
+			results.add (executor.submit (() -> serializer.serialize (large ())));
+		}
+		for ( Future<String> result : results ) {
+			assertThat (result.get (), is (expected));
+		}
+		executor.shutdown ();
+	}
+
+	private RestStructure large () {
+		return new RestArray ("users", "user") {{
+			for ( int i = 0; i < 200; i++ ) {
+				add (new RestObject () {{ v ("name", "john"); v ("roles", list ("admin", "user")); }});
+			}
+		}};
+	}
+
+	private RestObject user (String name) {
+		return new RestObject ("user") {{
+			attribute ("id", 1);
+			v ("name", name);
+			v ("roles", new RestArray (".", "role") {{ v ("admin", "user"); }});
+		}};
+	}
+
+}
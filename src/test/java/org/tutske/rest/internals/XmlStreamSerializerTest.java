@@ -0,0 +1,192 @@
+package org.tutske.rest.internals;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+import org.tutske.rest.data.RestArray;
+import org.tutske.rest.data.RestObject;
+import org.tutske.rest.data.RestStructure;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+public class XmlStreamSerializerTest {
+
+	private final Serializer dom = new XmlDomSerializer ();
+	private final Serializer stream = new XmlStreamSerializer ();
+
+	@Test
+	public void it_should_indent_the_xml () {
+		assertThat (stream.serialize (user ("john")), is ("" +
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+			"<user id=\"1\">\n" +
+			"    <name>john</name>\n" +
+			"    <roles>\n" +
+			"        <role>admin</role>\n" +
+			"        <role>user</role>\n" +
+			"    </roles>\n" +
+			"</user>\n"
+		));
+	}
+
+	@Test
+	public void it_should_give_the_same_output_as_the_dom_serializer () {
+		assertThat (stream.serialize (user ("john")), is (dom.serialize (user ("john"))));
+	}
+
+	@Test
+	public void it_should_give_the_same_output_as_the_dom_serializer_for_nested_tags () {
+		RestObject object = new RestObject ("response") {{
+			attribute ("version", 2);
+			attribute ("kind", "list");
+			v ("owner", user ("john"));
+			v ("empty", new RestObject ());
+			v ("users", new RestArray ("users", "user") {{ v (user ("jane"), user ("jim")); }});
+			v ("blank", "");
+			v ("after", "value");
+		}};
+
+		assertThat (stream.serialize (object), is (dom.serialize (object)));
+	}
+
+	@Test
+	public void it_should_give_the_same_output_as_the_dom_serializer_for_untagged_arrays () {
+		RestObject object = new RestObject ("response") {{
+			v ("text", new RestArray () {{ v ("first", "second"); }});
+			v ("single", new RestArray () {{ v ("only"); }});
+			v ("merged", new RestArray () {{
+				v (new RestObject () {{ v ("a", 1); }});
+				v (new RestObject () {{ v ("b", 2); }});
+			}});
+		}};
+
+		assertThat (stream.serialize (object), is (dom.serialize (object)));
+	}
+
+	@Test
+	public void it_should_give_the_same_output_as_the_dom_serializer_for_special_characters () {
+		RestObject object = new RestObject ("response") {{
+			attribute ("title", "\"quoted\" & <tagged>");
+			v ("text", "a < b & c > \"d\"");
+		}};
+
+		assertThat (stream.serialize (object), is (dom.serialize (object)));
+	}
+
+	@Test
+	public void it_should_give_the_same_output_as_the_dom_serializer_for_every_fixture () {
+		for ( Map.Entry<String, RestStructure> fixture : fixtures ().entrySet () ) {
+			String expected = dom.serialize (fixture.getValue ());
+			assertThat (fixture.getKey (), stream.serialize (fixture.getValue ()), is (expected));
+		}
+	}
+
+	@Test
+	public void it_should_write_carriage_returns_in_text_as_references () {
+		RestObject object = new RestObject ("response") {{ v ("text", "first\r\nsecond"); }};
+		assertThat (stream.serialize (object), containsString ("<text>first&#13;\nsecond</text>"));
+	}
+
+	@Test
+	public void it_should_write_a_single_empty_text_as_an_empty_element () {
+		RestObject object = new RestObject ("response") {{ v ("list", new RestArray () {{ v (""); }}); }};
+		assertThat (stream.serialize (object), containsString ("<list/>"));
+	}
+
+	@Test
+	public void it_should_write_the_same_to_a_writer_as_to_a_string () {
+		StringWriter writer = new StringWriter ();
+		stream.serialize (user ("john"), Collections.emptyMap (), writer);
+		assertThat (writer.toString (), is (stream.serialize (user ("john"))));
+	}
+
+	@Test (expected = RuntimeException.class)
+	public void it_should_not_serialize_structures_without_a_tag () {
+		stream.serialize (new RestObject ());
+	}
+
+	@Test
+	public void it_should_give_the_same_output_when_the_dom_serializer_is_shared_between_threads () throws Exception {
+		String expected = stream.serialize (large ());
+		ExecutorService executor = Executors.newFixedThreadPool (8);
+
+		List<Future<String>> results = new ArrayList<> ();
+		for ( int i = 0; i < 32; i++ ) {
+			results.add (executor.submit (() -> dom.serialize (large ())));
+		}
+		for ( Future<String> result : results ) {
+			assertThat (result.get (), is (expected));
+		}
+		executor.shutdown ();
+	}
+
+	private Map<String, RestStructure> fixtures () {
+		Map<String, RestStructure> fixtures = new LinkedHashMap<> ();
+		fixtures.put ("user", user ("john"));
+		fixtures.put ("empty", new RestObject ("response"));
+		fixtures.put ("nested", new RestObject ("response") {{
+			attribute ("version", 2);
+			v ("owner", user ("john"));
+			v ("empty", new RestObject ());
+			v ("users", new RestArray ("users", "user") {{ v (user ("jane"), user ("jim")); }});
+			v ("blank", "");
+		}});
+		fixtures.put ("untagged arrays", new RestObject ("response") {{
+			v ("text", new RestArray () {{ v ("first", "second"); }});
+			v ("single", new RestArray () {{ v ("only"); }});
+			v ("merged", new RestArray () {{
+				v (new RestObject () {{ v ("a", 1); }});
+				v (new RestObject () {{ v ("b", 2); }});
+			}});
+		}});
+		fixtures.put ("empty text", new RestObject ("response") {{
+			v ("single", new RestArray () {{ v (""); }});
+			v ("double", new RestArray () {{ v ("", ""); }});
+			v ("mixed", new RestArray () {{ v ("", "value"); }});
+			v ("tagged", new RestArray (".", "item") {{ v (""); }});
+		}});
+		fixtures.put ("special characters", new RestObject ("response") {{
+			attribute ("title", "\"quoted\" & <tagged>");
+			v ("text", "a < b & c > \"d\" ]]>");
+		}});
+		fixtures.put ("line breaks", new RestObject ("response") {{
+			v ("cr", "first\rsecond");
+			v ("crlf", "first\r\nsecond");
+			v ("tab", "first\tsecond\nthird");
+			v ("list", new RestArray () {{ v ("first\r", "\rsecond"); }});
+			v ("only", new RestArray () {{ v ("\r"); }});
+		}});
+		fixtures.put ("unicode", new RestObject ("response") {{
+			v ("accents", "Zo\u00eb \u00d8resund \u00a0\u2028");
+			v ("controls", "\u007f\u0085\u009f");
+			v ("astral", "smile \ud83d\ude00 please");
+		}});
+		return fixtures;
+	}
+
+	private RestStructure large () {
+		return new RestArray ("users", "user") {{
+			for ( int i = 0; i < 200; i++ ) {
+				add (new RestObject () {{ v ("name", "john"); v ("roles", list ("admin", "user")); }});
+			}
+		}};
+	}
+
+	private RestObject user (String name) {
+		return new RestObject ("user") {{
+			attribute ("id", 1);
+			v ("name", name);
+			v ("roles", new RestArray (".", "role") {{ v ("admin", "user"); }});
+		}};
+	}
+
+}
@@ -0,0 +1,63 @@
+package org.tutske.rest.util;
+
+import static org.mockito.Mockito.*;
+
+import org.tutske.rest.HttpRequest;
+import org.tutske.rest.ParameterBag;
+import org.tutske.rest.data.RestObject;
+import org.tutske.rest.data.RestStructure;
+import org.tutske.rest.internals.Chain;
+import org.tutske.rest.internals.ContentSerializer;
+import org.tutske.rest.internals.JsonSerializer;
+import org.tutske.rest.internals.XmlSerializer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class Requests {
+
+	public static ContentSerializer serializer () {
+		return new ContentSerializer ("application/json") {{
+			put ("application/json", new JsonSerializer ());
+			put ("application/xml", new XmlSerializer ());
+		}};
+	}
+
+	public static HttpRequest request (String method, String uri) {
+		return request (method, uri, null);
+	}
+
+	/**
+	 * Request on mocked servlet objects, further headers and such can be stubbed on
+	 * `getServletRequest` and `getServletResponse`.
+	 */
+	public static HttpRequest request (String method, String uri, String query) {
+		HttpServletRequest request = mock (HttpServletRequest.class);
+		when (request.getMethod ()).thenReturn (method);
+		when (request.getRequestURI ()).thenReturn (uri);
+		when (request.getQueryString ()).thenReturn (query);
+		return new HttpRequest (request, mock (HttpServletResponse.class), new ParameterBag<> ());
+	}
+
+	public static HttpRequest header (HttpRequest request, String name, String value) {
+		when (request.getServletRequest ().getHeader (name)).thenReturn (value);
+		return request;
+	}
+
+	public static Chain<HttpRequest, RestStructure> chain () {
+		return chain (new AtomicInteger ());
+	}
+
+	/**
+	 * Chain that counts how often it is called, and answers with the number of the call.
+	 */
+	public static Chain<HttpRequest, RestStructure> chain (AtomicInteger calls) {
+		return new Chain<> ((request) -> {
+			int call = calls.incrementAndGet ();
+			return new RestObject () {{ v ("call", call); }};
+		});
+	}
+
+}